@@ -0,0 +1,96 @@
+package com.myapp.news.benchmarks;
+
+import com.myapp.news.repositories.CommentCursor;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.StoredComment;
+import com.myapp.news.repositories.UserRepository;
+import com.myapp.news.storage.JsonFileStorage;
+import com.myapp.news.utils.ArticleJsonFileHandler;
+import com.myapp.news.utils.CommentJsonFileHandler;
+import com.myapp.news.utils.NewsMetrics;
+import com.myapp.news.utils.SnowflakeIdGenerator;
+import com.myapp.news.utils.UserJsonFileHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Article comment pages as served by getCommentsByArticleId, on the hot article: the first
+ * page, a deep offset page, and the same deep position reached with a cursor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ArticleCommentPaginationBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"1000", "100000", "1000000"})
+    private int commentCount;
+
+    private Path dataDir;
+    private JsonFileStorage storage;
+    private CommentRepository repository;
+    private long deepOffset;
+    private CommentCursor deepCursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = BenchmarkData.tempDir();
+        CommentJsonFileHandler handler = new CommentJsonFileHandler(dataDir.toString(), "binary", NewsMetrics.detached());
+        handler.writeComments(BenchmarkData.comments(commentCount));
+
+        // Picked up as the unsegmented snapshot of an older version and split into segments
+        storage = new JsonFileStorage(dataDir.toString(), 16, "binary", "always", 0, 1, NewsMetrics.detached(), handler,
+                new UserJsonFileHandler(dataDir.toString()), new ArticleJsonFileHandler(dataDir.toString()));
+        storage.open();
+        SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(0, 5000);
+        UserRepository userRepository = new UserRepository(storage, idGenerator);
+        userRepository.registerAll(BenchmarkData.users(BenchmarkData.AUTHOR_COUNT));
+        repository = new CommentRepository(storage, userRepository, idGenerator);
+        repository.load();
+
+        int hotCount = repository.countByArticleId(BenchmarkData.HOT_ARTICLE_ID);
+        deepOffset = Math.max(1, hotCount / 2);
+        List<StoredComment> beforeDeepPage = repository.findByArticleId(BenchmarkData.HOT_ARTICLE_ID, deepOffset - 1, 1);
+        deepCursor = beforeDeepPage.isEmpty() ? null : beforeDeepPage.get(0).cursor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storage.close();
+        BenchmarkData.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public List<StoredComment> firstPage() {
+        return repository.findByArticleId(BenchmarkData.HOT_ARTICLE_ID, 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<StoredComment> deepOffsetPage() {
+        return repository.findByArticleId(BenchmarkData.HOT_ARTICLE_ID, deepOffset, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<StoredComment> deepCursorPage() {
+        return repository.findByArticleIdAfter(BenchmarkData.HOT_ARTICLE_ID, deepCursor, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public int count() {
+        return repository.countByArticleId(BenchmarkData.HOT_ARTICLE_ID);
+    }
+}
@@ -0,0 +1,115 @@
+package com.myapp.news.benchmarks;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.NewsArticle;
+import com.myapp.news.dtos.User;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic datasets shaped like comments.json: a fixed pool of authors, a few hot
+ * articles holding most of the comments, and the usual four reaction types.
+ */
+final class BenchmarkData {
+
+    static final long HOT_ARTICLE_ID = 1;
+    static final int AUTHOR_COUNT = 1000;
+
+    private static final String[] REACTION_TYPES = {"like", "love", "sad", "angry"};
+    private static final long START_MILLIS = 1692541800000L; // 2023-08-20T14:30:00Z
+
+    private BenchmarkData() {
+    }
+
+    static List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            User user = new User();
+            user.setUserId(i);
+            user.setAvatarUrl("https://example.com/user" + i + "_avatar.jpg");
+            user.setUserProfilePicUrl("https://example.com/user" + i + "_profilepic.jpg");
+            user.setUserName("user" + i);
+            user.setEmailAddress("user" + i + "@example.com");
+            users.add(user);
+        }
+        return users;
+    }
+
+    static List<NewsArticle> articles(int count) {
+        List<NewsArticle> articles = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            NewsArticle article = new NewsArticle();
+            article.setNewsArticleId(i);
+            article.setTitle("Article " + i);
+            article.setContent("Body of article " + i + ". ".repeat(20));
+            article.setPostedOn(new Date(START_MILLIS));
+            article.setLastModified(new Date(START_MILLIS));
+            articles.add(article);
+        }
+        return articles;
+    }
+
+    /**
+     * Comments as stored, spread over {@code count / 100} articles, with a quarter of them on
+     * {@link #HOT_ARTICLE_ID}. Authors are ids of {@link #users(int) users(AUTHOR_COUNT)}.
+     */
+    static List<Comment> comments(int count) {
+        Random random = new Random(42);
+        int articleCount = Math.max(1, count / 100);
+
+        List<Comment> comments = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            Comment comment = new Comment();
+            comment.setCommentId(i);
+            comment.setNewsArticleId(random.nextInt(4) == 0 ? HOT_ARTICLE_ID : 1 + random.nextInt(articleCount));
+            comment.setAuthorId(1L + random.nextInt(AUTHOR_COUNT));
+            comment.setText("Comment " + i + " on this article, with a typical amount of text.");
+            comment.setCommentedOn(new Date(START_MILLIS + i * 1000L));
+
+            Map<String, Long> reactions = new HashMap<>();
+            for (String type : REACTION_TYPES) {
+                reactions.put(type, (long) random.nextInt(20));
+            }
+            comment.setReactions(reactions);
+            comments.add(comment);
+        }
+        return comments;
+    }
+
+    /**
+     * The comments as the API shows them, with their authors joined.
+     */
+    static List<Comment> responseComments(int count) {
+        List<User> authors = users(AUTHOR_COUNT);
+        List<Comment> comments = comments(count);
+        for (Comment comment : comments) {
+            comment.setAuthor(authors.get((int) (comment.getAuthorId() - 1)));
+        }
+        return comments;
+    }
+
+    static Path tempDir() throws IOException {
+        return Files.createTempDirectory("news-bench");
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.myapp.news.benchmarks;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.utils.CommentJsonFileHandler;
+import com.myapp.news.utils.NewsMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full snapshot read and write through {@link CommentJsonFileHandler}, for both snapshot formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CommentFileBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int commentCount;
+
+    @Param({"json", "binary"})
+    private String format;
+
+    private Path dataDir;
+    private CommentJsonFileHandler handler;
+    private List<Comment> comments;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = BenchmarkData.tempDir();
+        handler = new CommentJsonFileHandler(dataDir.toString(), format, NewsMetrics.detached());
+        comments = BenchmarkData.comments(commentCount);
+        handler.writeComments(comments);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public List<Comment> readComments() throws IOException {
+        return handler.readComments();
+    }
+
+    @Benchmark
+    public void writeComments() throws IOException {
+        handler.writeComments(comments);
+    }
+}
@@ -0,0 +1,55 @@
+package com.myapp.news.benchmarks;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.repositories.StoredComment;
+import com.myapp.news.utils.CommentJsonFileHandler;
+import com.myapp.news.utils.NewsMetrics;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Retained heap per resident comment, measured with JOL: the {@link Comment} DTOs as the JSON
+ * snapshot parses them, against the {@link StoredComment}s the repository keeps. Index
+ * structures are left out, they are the same for both. Run with {@code ./gradlew commentFootprint}.
+ */
+public final class CommentFootprint {
+
+    private static final long GIGABYTE = 1L << 30;
+
+    private CommentFootprint() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        Path dataDir = BenchmarkData.tempDir();
+        try {
+            // Parsed back from JSON, so that strings are duplicated the way they are at startup
+            CommentJsonFileHandler handler = new CommentJsonFileHandler(dataDir.toString(), "json", NewsMetrics.detached());
+            handler.writeComments(BenchmarkData.comments(count));
+            List<Comment> comments = handler.readComments();
+
+            List<StoredComment> storedComments = new ArrayList<>(comments.size());
+            for (Comment comment : comments) {
+                storedComments.add(StoredComment.of(comment));
+            }
+
+            double dtoBytes = bytesPerComment(comments);
+            double storedBytes = bytesPerComment(storedComments);
+            System.out.printf("comments:          %d%n", count);
+            System.out.printf("Comment DTO:       %.1f bytes/comment, %,d comments/GB%n", dtoBytes, (long) (GIGABYTE / dtoBytes));
+            System.out.printf("StoredComment:     %.1f bytes/comment, %,d comments/GB%n", storedBytes, (long) (GIGABYTE / storedBytes));
+            System.out.printf("ratio:             %.2fx%n", dtoBytes / storedBytes);
+        } finally {
+            BenchmarkData.deleteRecursively(dataDir);
+        }
+    }
+
+    private static double bytesPerComment(List<?> comments) {
+        return (double) GraphLayout.parseInstance(comments).totalSize() / comments.size();
+    }
+}
@@ -0,0 +1,97 @@
+package com.myapp.news.benchmarks;
+
+import com.myapp.news.dtos.NewsArticle;
+import com.myapp.news.dtos.User;
+import com.myapp.news.repositories.NewsArticleRepository;
+import com.myapp.news.repositories.UserRepository;
+import com.myapp.news.storage.InMemoryStorage;
+import com.myapp.news.utils.CommentJsonFileHandler;
+import com.myapp.news.utils.NewsMetrics;
+import com.myapp.news.utils.SnowflakeIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Id lookups behind UserController.getUserById and NewsArticleController.getNewsArticleById,
+ * single-threaded and under contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IdLookupBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int entryCount;
+
+    private Path dataDir;
+    private UserRepository userRepository;
+    private NewsArticleRepository newsArticleRepository;
+    private long[] articleIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = BenchmarkData.tempDir();
+        // Lookups never touch the store; keep the setup from rewriting a file per article
+        InMemoryStorage storage = new InMemoryStorage(new CommentJsonFileHandler(dataDir.toString(), "json", NewsMetrics.detached()));
+        SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(0, 5000);
+        userRepository = new UserRepository(storage, idGenerator);
+        userRepository.registerAll(BenchmarkData.users(entryCount));
+
+        newsArticleRepository = new NewsArticleRepository(storage, idGenerator);
+        articleIds = new long[entryCount];
+        int i = 0;
+        for (NewsArticle article : BenchmarkData.articles(entryCount)) {
+            articleIds[i++] = newsArticleRepository.create(article).getNewsArticleId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteRecursively(dataDir);
+    }
+
+    private long randomUserId() {
+        return 1 + ThreadLocalRandom.current().nextInt(entryCount);
+    }
+
+    private long randomArticleId() {
+        return articleIds[ThreadLocalRandom.current().nextInt(entryCount)];
+    }
+
+    @Benchmark
+    public Optional<User> userById() {
+        return userRepository.findById(randomUserId());
+    }
+
+    @Benchmark
+    public Optional<NewsArticle> articleById() {
+        return newsArticleRepository.findById(randomArticleId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Optional<User> userByIdContended() {
+        return userRepository.findById(randomUserId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Optional<NewsArticle> articleByIdContended() {
+        return newsArticleRepository.findById(randomArticleId());
+    }
+}
@@ -0,0 +1,66 @@
+package com.myapp.news.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.NewsArticle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson cost of the response bodies: a single comment, a single article, and a page of
+ * comments, serialized and parsed back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JacksonSerializationBenchmark {
+
+    @Param({"20", "1000"})
+    private int pageSize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Comment comment;
+    private NewsArticle article;
+    private List<Comment> page;
+    private byte[] commentJson;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        page = BenchmarkData.responseComments(pageSize);
+        comment = page.get(0);
+        article = BenchmarkData.articles(1).get(0);
+        commentJson = objectMapper.writeValueAsBytes(comment);
+    }
+
+    @Benchmark
+    public byte[] serializeComment() throws IOException {
+        return objectMapper.writeValueAsBytes(comment);
+    }
+
+    @Benchmark
+    public Comment deserializeComment() throws IOException {
+        return objectMapper.readValue(commentJson, Comment.class);
+    }
+
+    @Benchmark
+    public byte[] serializeArticle() throws IOException {
+        return objectMapper.writeValueAsBytes(article);
+    }
+
+    @Benchmark
+    public byte[] serializeCommentPage() throws IOException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
@@ -0,0 +1,51 @@
+package com.myapp.news.loadtest;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The booted application and the ids of the data it was seeded with. Like production, a quarter
+ * of the traffic on articles goes to one hot article, the first one seeded.
+ */
+final class LoadTarget {
+
+    private static final String[] REACTION_TYPES = {"like", "love", "sad", "angry"};
+
+    private final String baseUrl;
+    private final Duration timeout;
+    private final long[] articleIds;
+    private final int userCount;
+    private final long[] commentIds;
+
+    LoadTarget(String baseUrl, Duration timeout, long[] articleIds, int userCount, long[] commentIds) {
+        this.baseUrl = baseUrl;
+        this.timeout = timeout;
+        this.articleIds = articleIds;
+        this.userCount = userCount;
+        this.commentIds = commentIds;
+    }
+
+    String baseUrl() {
+        return baseUrl;
+    }
+
+    Duration timeout() {
+        return timeout;
+    }
+
+    long randomArticleId(ThreadLocalRandom random) {
+        return articleIds[random.nextInt(4) == 0 ? 0 : random.nextInt(articleIds.length)];
+    }
+
+    long randomUserId(ThreadLocalRandom random) {
+        return 1 + random.nextInt(userCount);
+    }
+
+    long randomCommentId(ThreadLocalRandom random) {
+        return commentIds[random.nextInt(commentIds.length)];
+    }
+
+    String randomReaction(ThreadLocalRandom random) {
+        return REACTION_TYPES[random.nextInt(REACTION_TYPES.length)];
+    }
+}
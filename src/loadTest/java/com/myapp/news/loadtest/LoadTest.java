@@ -0,0 +1,322 @@
+package com.myapp.news.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.myapp.news.NewsApplication;
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.NewsArticle;
+import com.myapp.news.dtos.User;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.NewsArticleRepository;
+import com.myapp.news.repositories.StoredComment;
+import com.myapp.news.repositories.UserRepository;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Boots the application on a random port against a fresh data directory, seeds it, and drives a
+ * weighted mix of API requests at a fixed arrival rate. Pacing is open-loop: requests are started
+ * on schedule whether or not earlier ones have finished, and latency is measured from the scheduled
+ * start, so a stalled server shows up in the tail instead of slowing the generator down. Requests
+ * that would exceed {@code loadTest.maxInFlight} are not sent and count as errors.
+ *
+ * <p>Run with {@code ./gradlew loadTest}; settings are {@code -PloadTest.*} properties (see
+ * {@link #main}). The summary is written as JSON to the path given as the first argument.
+ */
+public final class LoadTest {
+
+    private static final String DEFAULT_MIX = "listArticles=2,getArticle=15,articleComments=30,commentsCursor=15,"
+            + "trending=3,getComment=10,getUser=5,createComment=10,updateComment=3,addReaction=7";
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(5);
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path output = Path.of(args.length > 0 ? args[0] : "build/results/loadtest/result.json");
+        int rate = intProperty("loadTest.rate", 500);
+        int warmupSeconds = intProperty("loadTest.warmup", 10);
+        int durationSeconds = intProperty("loadTest.duration", 60);
+        int maxInFlight = intProperty("loadTest.maxInFlight", 2000);
+        int articleCount = intProperty("loadTest.articles", 100);
+        int userCount = intProperty("loadTest.users", 1000);
+        int commentCount = intProperty("loadTest.comments", 100_000);
+        String mixSpec = System.getProperty("loadTest.mix", DEFAULT_MIX);
+        Map<Operation, Integer> mix = parseMix(mixSpec);
+
+        Path dataDir = Files.createTempDirectory("news-loadtest");
+        ConfigurableApplicationContext context = SpringApplication.run(NewsApplication.class,
+                "--server.port=0", "--comments.data.dir=" + dataDir, "--logging.level.root=WARN");
+        try {
+            int port = context.getEnvironment().getProperty("local.server.port", Integer.class);
+            LoadTarget target = seed(context, "http://localhost:" + port, articleCount, userCount, commentCount);
+
+            System.out.printf("Seeded %d articles, %d users, %d comments; %d req/s for %ds after %ds warm-up%n",
+                    articleCount, userCount, commentCount, rate, durationSeconds, warmupSeconds);
+            Map<Operation, OperationStats> stats = run(target, mix, rate, warmupSeconds, durationSeconds, maxInFlight);
+
+            Map<String, Object> config = new LinkedHashMap<>();
+            config.put("rate", rate);
+            config.put("warmupSeconds", warmupSeconds);
+            config.put("durationSeconds", durationSeconds);
+            config.put("maxInFlight", maxInFlight);
+            config.put("articles", articleCount);
+            config.put("users", userCount);
+            config.put("comments", commentCount);
+            config.put("mix", mixSpec);
+            writeReport(output, config, stats, durationSeconds);
+            System.out.println("Results written to " + output.toAbsolutePath());
+        } finally {
+            context.close();
+            deleteRecursively(dataDir);
+        }
+    }
+
+    private static LoadTarget seed(ConfigurableApplicationContext context, String baseUrl, int articleCount,
+                                   int userCount, int commentCount) throws IOException {
+        List<User> users = new ArrayList<>(userCount);
+        for (int i = 1; i <= userCount; i++) {
+            User user = new User();
+            user.setUserId(i);
+            user.setUserName("user" + i);
+            user.setEmailAddress("user" + i + "@example.com");
+            users.add(user);
+        }
+        context.getBean(UserRepository.class).registerAll(users);
+
+        NewsArticleRepository articles = context.getBean(NewsArticleRepository.class);
+        long[] articleIds = new long[articleCount];
+        for (int i = 1; i <= articleCount; i++) {
+            NewsArticle article = new NewsArticle();
+            article.setTitle("Article " + i);
+            article.setContent("Body of article " + i + ". ".repeat(20));
+            article.setPostedOn(new Date());
+            articleIds[i - 1] = articles.create(article).getNewsArticleId();
+        }
+
+        CommentRepository comments = context.getBean(CommentRepository.class);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] commentIds = new long[commentCount];
+        int seeded = 0;
+        while (seeded < commentCount) {
+            List<Comment> batch = new ArrayList<>();
+            for (int i = 0; i < 1000 && seeded + i < commentCount; i++) {
+                Comment comment = new Comment();
+                comment.setNewsArticleId(articleIds[random.nextInt(4) == 0 ? 0 : random.nextInt(articleCount)]);
+                comment.setAuthorId(1L + random.nextInt(userCount));
+                comment.setText("Seeded comment with a typical amount of text.");
+                batch.add(comment);
+            }
+            for (Optional<StoredComment> created : comments.createAll(batch)) {
+                commentIds[seeded++] = created.get().getCommentId();
+            }
+        }
+        return new LoadTarget(baseUrl, Duration.ofSeconds(30), articleIds, userCount, commentIds);
+    }
+
+    private static Map<Operation, OperationStats> run(LoadTarget target, Map<Operation, Integer> mix, int rate,
+                                                      int warmupSeconds, int durationSeconds, int maxInFlight)
+            throws InterruptedException {
+        Operation[] operations = mix.keySet().toArray(new Operation[0]);
+        int[] cumulativeWeights = new int[operations.length];
+        int totalWeight = 0;
+        Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+        for (int i = 0; i < operations.length; i++) {
+            totalWeight += mix.get(operations[i]);
+            cumulativeWeights[i] = totalWeight;
+            stats.put(operations[i], new OperationStats());
+        }
+
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(clientExecutor)
+                .build();
+        AtomicInteger inFlight = new AtomicInteger();
+
+        // Progress every 10 seconds, for watching long soak runs
+        Recorder progress = new Recorder(HIGHEST_LATENCY_MICROS, 3);
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        long startNanos = System.nanoTime();
+        reporter.scheduleAtFixedRate(() -> {
+            Histogram interval = progress.getIntervalHistogram();
+            System.out.printf("%5ds  %8.1f req/s  p50 %8.2f ms  p99 %8.2f ms  in flight %d%n",
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos),
+                    interval.getTotalCount() / 10.0,
+                    interval.getValueAtPercentile(50) / 1000.0,
+                    interval.getValueAtPercentile(99) / 1000.0,
+                    inFlight.get());
+        }, 10, 10, TimeUnit.SECONDS);
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long measureFrom = startNanos + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long i = 0; ; i++) {
+            long intended = startNanos + i * intervalNanos;
+            if (intended >= end) {
+                break;
+            }
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Operation operation = pick(operations, cumulativeWeights, random.nextInt(totalWeight));
+            OperationStats operationStats = intended >= measureFrom ? stats.get(operation) : null;
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                inFlight.decrementAndGet();
+                if (operationStats != null) {
+                    operationStats.dropped.increment();
+                }
+                continue;
+            }
+            client.sendAsync(operation.request(target, random), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        long latencyMicros = Math.min(HIGHEST_LATENCY_MICROS,
+                                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended));
+                        inFlight.decrementAndGet();
+                        progress.recordValue(latencyMicros);
+                        if (operationStats != null) {
+                            operationStats.latencyMicros.recordValue(latencyMicros);
+                            if (error != null || response.statusCode() >= 400) {
+                                operationStats.errors.increment();
+                            }
+                        }
+                    });
+        }
+
+        // Let the last requests finish; whatever is still running after the timeout is not counted
+        long drainDeadline = System.nanoTime() + target.timeout().toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        reporter.shutdownNow();
+        clientExecutor.shutdownNow();
+        return stats;
+    }
+
+    private static Operation pick(Operation[] operations, int[] cumulativeWeights, int roll) {
+        for (int i = 0; i < operations.length; i++) {
+            if (roll < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private static void writeReport(Path output, Map<String, Object> config, Map<Operation, OperationStats> stats,
+                                    int durationSeconds) throws IOException {
+        Histogram total = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+        long errors = 0;
+        long dropped = 0;
+        Map<String, Object> operations = new LinkedHashMap<>();
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            OperationStats operationStats = entry.getValue();
+            total.add(operationStats.latencyMicros);
+            errors += operationStats.errors.sum();
+            dropped += operationStats.dropped.sum();
+            operations.put(entry.getKey().key(), summary(operationStats.latencyMicros,
+                    operationStats.errors.sum(), operationStats.dropped.sum(), durationSeconds));
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("finishedAt", Instant.now().toString());
+        report.put("javaVersion", System.getProperty("java.version"));
+        report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        report.put("config", config);
+        report.putAll(summary(total, errors, dropped, durationSeconds));
+        report.put("operations", operations);
+
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(output.toFile(), report);
+    }
+
+    private static Map<String, Object> summary(Histogram latencyMicros, long errors, long dropped, int durationSeconds) {
+        long completed = latencyMicros.getTotalCount();
+        long attempted = completed + dropped;
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", completed);
+        summary.put("errors", errors);
+        summary.put("dropped", dropped);
+        summary.put("errorRate", attempted == 0 ? 0 : (double) (errors + dropped) / attempted);
+        summary.put("throughput", (double) completed / durationSeconds);
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            latency.put(PERCENTILE_NAMES[i], latencyMicros.getValueAtPercentile(PERCENTILES[i]) / 1000.0);
+        }
+        latency.put("max", latencyMicros.getMaxValue() / 1000.0);
+        latency.put("mean", latencyMicros.getMean() / 1000.0);
+        summary.put("latencyMillis", latency);
+        return summary;
+    }
+
+    private static Map<Operation, Integer> parseMix(String spec) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Mix entries are operation=weight, not " + entry);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                mix.put(Operation.byKey(parts[0].trim()), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no operation with a positive weight");
+        }
+        return mix;
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        String value = System.getProperty(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static final class OperationStats {
+        private final ConcurrentHistogram latencyMicros = new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, 3);
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+    }
+}
@@ -0,0 +1,109 @@
+package com.myapp.news.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The requests of the traffic mix. Names are the keys of the {@code loadTest.mix} property.
+ */
+enum Operation {
+
+    LIST_ARTICLES("listArticles") {
+        @Override
+        HttpRequest request(LoadTarget target, ThreadLocalRandom random) {
+            return get(target, "/api/articles");
+        }
+    },
+    GET_ARTICLE("getArticle") {
+        @Override
+        HttpRequest request(LoadTarget target, ThreadLocalRandom random) {
+            return get(target, "/api/articles/" + target.randomArticleId(random));
+        }
+    },
+    ARTICLE_COMMENTS("articleComments") {
+        @Override
+        HttpRequest request(LoadTarget target, ThreadLocalRandom random) {
+            return get(target, "/api/articles/" + target.randomArticleId(random) + "/comments?page=" + (1 + random.nextInt(3)) + "&size=20");
+        }
+    },
+    COMMENTS_CURSOR("commentsCursor") {
+        @Override
+        HttpRequest request(LoadTarget target, ThreadLocalRandom random) {
+            return get(target, "/api/articles/" + target.randomArticleId(random) + "/comments?limit=20&replies=3");
+        }
+    },
+    TRENDING("trending") {
+        @Override
+        HttpRequest request(LoadTarget target, ThreadLocalRandom random) {
+            return get(target, "/api/articles/trending?window=1h&limit=10");
+        }
+    },
+    GET_COMMENT("getComment") {
+        @Override
+        HttpRequest request(LoadTarget target, ThreadLocalRandom random) {
+            return get(target, "/api/comments/" + target.randomCommentId(random));
+        }
+    },
+    GET_USER("getUser") {
+        @Override
+        HttpRequest request(LoadTarget target, ThreadLocalRandom random) {
+            return get(target, "/api/users/" + target.randomUserId(random));
+        }
+    },
+    CREATE_COMMENT("createComment") {
+        @Override
+        HttpRequest request(LoadTarget target, ThreadLocalRandom random) {
+            String body = "{\"newsArticleId\":" + target.randomArticleId(random)
+                    + ",\"author\":{\"userId\":" + target.randomUserId(random) + "}"
+                    + ",\"text\":\"Load test comment with a typical amount of text.\"}";
+            return json(target, "/api/comments").POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        }
+    },
+    UPDATE_COMMENT("updateComment") {
+        @Override
+        HttpRequest request(LoadTarget target, ThreadLocalRandom random) {
+            String body = "{\"text\":\"Edited load test comment " + random.nextInt(1000) + ".\"}";
+            return json(target, "/api/comments/" + target.randomCommentId(random))
+                    .PUT(HttpRequest.BodyPublishers.ofString(body)).build();
+        }
+    },
+    ADD_REACTION("addReaction") {
+        @Override
+        HttpRequest request(LoadTarget target, ThreadLocalRandom random) {
+            return json(target, "/api/comments/" + target.randomCommentId(random) + "/reactions/" + target.randomReaction(random))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build();
+        }
+    };
+
+    private final String key;
+
+    Operation(String key) {
+        this.key = key;
+    }
+
+    String key() {
+        return key;
+    }
+
+    abstract HttpRequest request(LoadTarget target, ThreadLocalRandom random);
+
+    static Operation byKey(String key) {
+        for (Operation operation : values()) {
+            if (operation.key.equals(key)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation " + key);
+    }
+
+    private static HttpRequest get(LoadTarget target, String path) {
+        return HttpRequest.newBuilder(URI.create(target.baseUrl() + path)).timeout(target.timeout()).GET().build();
+    }
+
+    private static HttpRequest.Builder json(LoadTarget target, String path) {
+        return HttpRequest.newBuilder(URI.create(target.baseUrl() + path))
+                .timeout(target.timeout())
+                .header("Content-Type", "application/json");
+    }
+}
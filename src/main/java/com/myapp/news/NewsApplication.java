@@ -5,6 +5,8 @@ package com.myapp.news;
 //import com.google.firebase.FirebaseOptions;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 //import org.springframework.context.ApplicationContext;
 //
 //import java.io.File;
@@ -14,7 +16,9 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 //import java.util.List;
 //import java.util.Objects;
 
-@SpringBootApplication
+// The data source of the h2 storage backend is set up by EmbeddedDatabaseConfig, and only for that backend
+@SpringBootApplication(exclude = DataSourceAutoConfiguration.class)
+@EnableScheduling
 public class NewsApplication {
 
 	// For Heroku
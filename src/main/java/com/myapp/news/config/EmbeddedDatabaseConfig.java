@@ -0,0 +1,51 @@
+package com.myapp.news.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.file.Paths;
+
+/**
+ * The embedded database of the {@code h2} storage backend ({@code news.storage.backend=h2}). It
+ * lives in {@code comments.data.dir} next to the files of the JSON backend. The other backends
+ * need no data source, so none is configured automatically.
+ */
+@Configuration
+@ConditionalOnProperty(name = "news.storage.backend", havingValue = "h2")
+public class EmbeddedDatabaseConfig {
+
+    @Bean
+    public DataSource dataSource(@Value("${comments.data.dir}") String dataDir,
+                                 @Value("${news.storage.h2.options}") String options) {
+        String file = Paths.get(dataDir).toAbsolutePath().resolve("news").toString();
+        return DataSourceBuilder.create()
+                .driverClassName("org.h2.Driver")
+                .url("jdbc:h2:file:" + file + options)
+                .username("sa")
+                .password("")
+                .build();
+    }
+
+    @Bean
+    public PlatformTransactionManager transactionManager(DataSource dataSource) {
+        return new DataSourceTransactionManager(dataSource);
+    }
+
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
+    @Bean
+    public TransactionTemplate transactionTemplate(PlatformTransactionManager transactionManager) {
+        return new TransactionTemplate(transactionManager);
+    }
+}
@@ -0,0 +1,44 @@
+package com.myapp.news.config;
+
+import com.myapp.news.utils.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Opt-in virtual thread mode ({@code news.virtual-threads.enabled=true}, Java 21+). Tomcat runs
+ * each request on its own virtual thread, so requests blocked on comment file I/O no longer hold
+ * a platform thread from a fixed pool. The scheduled storage work (journal compaction, reaction
+ * flushes) also runs on virtual threads. The storage layer guards its I/O with
+ * {@link java.util.concurrent.locks.ReentrantLock} rather than {@code synchronized}, so a
+ * blocked writer does not pin its carrier thread.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "news.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    public VirtualThreadConfig() {
+        if (!VirtualThreads.isSupported()) {
+            throw new IllegalStateException("news.virtual-threads.enabled requires Java 21 or later, running on "
+                    + System.getProperty("java.version"));
+        }
+        log.info("Serving requests and storage tasks on virtual threads");
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(VirtualThreads.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.setThreadFactory(VirtualThreads.threadFactory("news-storage-"));
+        return scheduler;
+    }
+}
@@ -3,7 +3,17 @@ package com.myapp.news.controllers;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.myapp.news.dtos.Comment;
-import com.myapp.news.utils.CommentJsonFileHandler;
+import com.myapp.news.dtos.CommentBatchResult;
+import com.myapp.news.dtos.CommentSlice;
+import com.myapp.news.repositories.CommentCursor;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.ResourceVersion;
+import com.myapp.news.repositories.StagedWrite;
+import com.myapp.news.repositories.StoredComment;
+import com.myapp.news.services.AsyncWriteService;
+import com.myapp.news.services.CommentService;
+import com.myapp.news.services.ExportService;
+import com.myapp.news.services.ReactionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -16,14 +26,22 @@ import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import static com.myapp.news.utils.CommentJsonFileHandler.filterCommentsByArticleId;
@@ -32,15 +50,25 @@ import static com.myapp.news.utils.CommentJsonFileHandler.filterCommentsByArticl
 @RequestMapping("/api/comments")
 public class CommentController {
 
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final int MAX_IDS = 100;
+    private static final int MAX_REPLY_LIMIT = 100;
+
+    @Autowired
+    private CommentRepository commentRepository;
+    @Autowired
+    private ReactionService reactionService;
+    @Autowired
+    private CommentService commentService;
     @Autowired
-    private CommentJsonFileHandler jsonFileHandler;
+    private ExportService exportService;
+    @Autowired
+    private AsyncWriteService asyncWriteService;
     private final ObjectMapper objectMapper;
     private final String commentsFilePath;
 
     private final List<Comment> commentList = new ArrayList<>();
 
-    private long commentIdCounter = 50;
-
     public CommentController(ObjectMapper objectMapper, @Value("${comments.file.path}") String commentsFilePath) {
         this.objectMapper = objectMapper;
         this.commentsFilePath = commentsFilePath;
@@ -58,22 +86,53 @@ public class CommentController {
             @PathVariable long commentId,
             @RequestHeader(name = "Accept-Version", required = false) String apiVersion) throws IOException {
 
-        // Read the comments from the local JSON file or your data source
-        List<Comment> comments = jsonFileHandler.readCommentsFromJsonFile();
-
-        // Find the comment with the specified commentId
-        Optional<Comment> foundComment = comments.stream()
-                .filter(comment -> comment.getCommentId() == commentId)
-                .findFirst();
+        // Look the comment up in the resident store
+        Optional<StoredComment> foundComment = commentRepository.findById(commentId);
 
         // If the comment is found, return it; otherwise, return a 404 response
         if (foundComment.isPresent()) {
-            return ResponseEntity.ok(foundComment.get());
+            return ResponseEntity.ok(commentService.toResponse(foundComment.get()));
         } else {
             return ResponseEntity.notFound().build();
         }
     }
 
+    @GetMapping(params = "ids")
+    @Operation(summary = "Get comments by Comment IDs", description = "Retrieve several comments in one request, in the order of the comma-separated ids. Unknown ids are left out.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Comments found", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = List.class, type = "Comment"))
+            }),
+            @ApiResponse(responseCode = "400", description = "No ids, or more than 100")
+    })
+    public ResponseEntity<List<Comment>> getCommentsByIds(@RequestParam List<Long> ids) {
+        if (ids.isEmpty() || ids.size() > MAX_IDS || ids.contains(null)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(commentService.toResponses(commentRepository.findAllById(ids)));
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Export comments", description = "Stream comments as newline-delimited JSON, optionally only those of one article and those posted in [from, to). "
+            + "The body is gzip-compressed when the client accepts it.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Comments streamed", content = {
+                    @Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = Comment.class))
+            }),
+            @ApiResponse(responseCode = "400", description = "from is not before to")
+    })
+    public ResponseEntity<StreamingResponseBody> exportComments(
+            @RequestParam(required = false) Long articleId,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean gzip = NdjsonExports.acceptsGzip(acceptEncoding);
+        return NdjsonExports.response(exportService.exportComments(articleId, from, to, gzip), gzip);
+    }
 
     @PostMapping
     @Operation(summary = "Create a new comment", description = "Create a new comment associated with a news article.")
@@ -81,18 +140,78 @@ public class CommentController {
             @ApiResponse(responseCode = "201", description = "Comment created", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = Comment.class))
             }),
-            @ApiResponse(responseCode = "403", description = "Insufficient privileges")
+            @ApiResponse(responseCode = "400", description = "Text missing, parent comment missing or on another article, or unknown author"),
+            @ApiResponse(responseCode = "403", description = "Insufficient privileges"),
+            @ApiResponse(responseCode = "202", description = "Write accepted, with ack=accepted"),
+            @ApiResponse(responseCode = "503", description = "Write buffer full; retry after the Retry-After delay")
     })
-    public ResponseEntity<Comment> createComment(@RequestBody Comment newComment) {
-        try {
-            List<Comment> comments = jsonFileHandler.readComments();
-            newComment.setCommentId(commentIdCounter++);
-            comments.add(newComment);
-            jsonFileHandler.writeComments(comments);
-            return ResponseEntity.status(HttpStatus.CREATED).body(newComment);
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    public CompletableFuture<ResponseEntity<Comment>> createComment(@RequestBody Comment newComment,
+                                                                    @RequestParam(required = false) String ack) {
+        if (commentService.checkNew(newComment) != null) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+        // Still rejected if the parent is deleted before the comment is stored
+        return asyncWriteService.submit(ack, () -> commentRepository.stageCreate(newComment)
+                .map(createdComment -> createdComment
+                        .map(comment -> ResponseEntity.status(HttpStatus.CREATED).body(commentService.toResponse(comment)))
+                        .orElseGet(() -> ResponseEntity.badRequest().build())));
+    }
+
+    @PostMapping("/batch")
+    @Operation(summary = "Create several comments", description = "Create up to 1000 comments with a single write. The result lists, per submitted comment, whether it was created.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Batch processed", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = List.class, type = "CommentBatchResult"))
+            }),
+            @ApiResponse(responseCode = "400", description = "Empty batch, or more than 1000 comments"),
+            @ApiResponse(responseCode = "403", description = "Insufficient privileges"),
+            @ApiResponse(responseCode = "202", description = "Write accepted, with ack=accepted"),
+            @ApiResponse(responseCode = "503", description = "Write buffer full; retry after the Retry-After delay")
+    })
+    public CompletableFuture<ResponseEntity<List<CommentBatchResult>>> createComments(@RequestBody List<Comment> newComments,
+                                                                                      @RequestParam(required = false) String ack) {
+        if (newComments.isEmpty() || newComments.size() > MAX_BATCH_SIZE) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+
+        // Reject the unusable entries up front; the rest are created together
+        List<CommentBatchResult> results = new ArrayList<>(newComments.size());
+        List<Comment> accepted = new ArrayList<>(newComments.size());
+        for (int i = 0; i < newComments.size(); i++) {
+            Comment newComment = newComments.get(i);
+            CommentBatchResult result = new CommentBatchResult();
+            result.setIndex(i);
+            String error = commentService.checkNew(newComment);
+            if (error != null) {
+                result.setStatus(HttpStatus.BAD_REQUEST.value());
+                result.setError(error);
+            } else {
+                result.setStatus(HttpStatus.CREATED.value());
+                result.setComment(newComment);
+                accepted.add(newComment);
+            }
+            results.add(result);
         }
+
+        return asyncWriteService.submit(ack, () -> commentRepository.stageCreateAll(accepted).map(created -> {
+            // The created comments come back in the order they were accepted
+            Iterator<Optional<StoredComment>> createdComments = created.iterator();
+            for (CommentBatchResult result : results) {
+                if (result.getComment() == null) {
+                    continue;
+                }
+                Optional<StoredComment> createdComment = createdComments.next();
+                if (createdComment.isPresent()) {
+                    result.setComment(commentService.toResponse(createdComment.get()));
+                } else {
+                    // Its parent was deleted after the entry was checked
+                    result.setStatus(HttpStatus.BAD_REQUEST.value());
+                    result.setError("Parent comment " + result.getComment().getParentCommentId() + " does not exist");
+                    result.setComment(null);
+                }
+            }
+            return ResponseEntity.ok(results);
+        }));
     }
 
     @PutMapping("/{commentId}")
@@ -102,31 +221,19 @@ public class CommentController {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = Comment.class))
             }),
             @ApiResponse(responseCode = "404", description = "Comment not found"),
-            @ApiResponse(responseCode = "403", description = "Insufficient privileges")
+            @ApiResponse(responseCode = "403", description = "Insufficient privileges"),
+            @ApiResponse(responseCode = "202", description = "Write accepted, with ack=accepted"),
+            @ApiResponse(responseCode = "503", description = "Write buffer full; retry after the Retry-After delay")
     })
-    public ResponseEntity<Comment> updateComment(
+    public CompletableFuture<ResponseEntity<Comment>> updateComment(
             @PathVariable long commentId,
-            @RequestBody Comment updatedComment) {
-        try {
-            List<Comment> comments = jsonFileHandler.readComments();
-
-            // Find the existing comment by its commentId
-            Optional<Comment> existingComment = comments.stream()
-                    .filter(comment -> comment.getCommentId() == commentId)
-                    .findFirst();
-
-            if (existingComment.isPresent()) {
-                // Update the content of the existing comment
-                Comment foundComment = existingComment.get();
-                foundComment.setText(updatedComment.getText());
-                jsonFileHandler.writeComments(comments);
-                return ResponseEntity.ok(foundComment);
-            } else {
-                return ResponseEntity.notFound().build();
-            }
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
+            @RequestBody Comment updatedComment,
+            @RequestParam(required = false) String ack) {
+        // Update the content of the existing comment, if there is one
+        return asyncWriteService.submit(ack, () -> commentRepository.stageUpdateText(commentId, updatedComment.getText())
+                .map(existingComment -> existingComment
+                        .map(comment -> ResponseEntity.ok(commentService.toResponse(comment)))
+                        .orElseGet(() -> ResponseEntity.notFound().build())));
     }
 
     @DeleteMapping("/{commentId}")
@@ -134,28 +241,89 @@ public class CommentController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "Comment deleted"),
             @ApiResponse(responseCode = "404", description = "Comment not found"),
-            @ApiResponse(responseCode = "403", description = "Insufficient privileges")
+            @ApiResponse(responseCode = "403", description = "Insufficient privileges"),
+            @ApiResponse(responseCode = "202", description = "Write accepted, with ack=accepted"),
+            @ApiResponse(responseCode = "503", description = "Write buffer full; retry after the Retry-After delay")
+    })
+    public CompletableFuture<ResponseEntity<Void>> deleteComment(@PathVariable long commentId,
+                                                                 @RequestParam(required = false) String ack) {
+        return asyncWriteService.submit(ack, () -> commentRepository.stageDelete(commentId)
+                .map(deleted -> deleted
+                        ? ResponseEntity.noContent().<Void>build()
+                        : ResponseEntity.notFound().<Void>build()));
+    }
+
+    @GetMapping("/{commentId}/replies")
+    @Operation(summary = "Get replies to a comment",
+            description = "Retrieve the direct replies to a comment, newest first, that follow the given <commentedOn>,<commentId> cursor. Each reply carries its own reply count.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Replies found", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = CommentSlice.class))
+            }),
+            @ApiResponse(responseCode = "304", description = "Replies unchanged since the given ETag or date"),
+            @ApiResponse(responseCode = "400", description = "Malformed cursor or limit"),
+            @ApiResponse(responseCode = "404", description = "Comment not found")
     })
-    public ResponseEntity<Void> deleteComment(@PathVariable long commentId) {
+    public ResponseEntity<CommentSlice> getReplies(
+            @PathVariable long commentId,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") int limit,
+            WebRequest request) {
+
+        if (limit < 1 || limit > MAX_REPLY_LIMIT) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        CommentCursor cursor;
         try {
-            List<Comment> comments = jsonFileHandler.readComments();
+            cursor = after == null ? null : CommentCursor.parse(after);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
 
-            Optional<Comment> commentToRemove = comments.stream()
-                    .filter(comment -> comment.getCommentId() == commentId)
-                    .findFirst();
+        Optional<StoredComment> parent = commentRepository.findById(commentId);
+        if (parent.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
 
-            if (commentToRemove.isPresent()) {
-                comments.remove(commentToRemove.get());
+        // Replies change with the article's comment stream, so they share its version
+        ResourceVersion version = commentRepository.commentsVersion(parent.get().getNewsArticleId());
+        if (request.checkNotModified(version.toETag(), version.settledLastModified())) {
+            return null;
+        }
 
-                jsonFileHandler.writeComments(comments);
+        List<StoredComment> replies = commentRepository.findRepliesAfter(commentId, cursor, limit);
 
-                return ResponseEntity.noContent().build();
-            } else {
-                return ResponseEntity.notFound().build();
-            }
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        CommentSlice slice = new CommentSlice();
+        slice.setContent(commentService.withReplies(replies, 0));
+        slice.setLimit(limit);
+        if (replies.size() == limit) {
+            slice.setNextCursor(replies.get(replies.size() - 1).cursor().toString());
         }
+        return ResponseEntity.ok(slice);
+    }
+
+    @PostMapping("/{commentId}/reactions/{type}")
+    @Operation(summary = "React to a comment", description = "Increment the count of a reaction type on a comment. Counts are persisted in periodic batches.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Reaction counted", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = Map.class))
+            }),
+            @ApiResponse(responseCode = "400", description = "Not one of the configured reaction types"),
+            @ApiResponse(responseCode = "404", description = "Comment not found")
+    })
+    public ResponseEntity<Map<String, Long>> addReaction(@PathVariable long commentId, @PathVariable String type) {
+        if (!reactionService.isValidType(type)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Optional<StoredComment> comment = commentRepository.findById(commentId);
+        if (comment.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        reactionService.increment(comment.get(), type);
+        return ResponseEntity.ok(reactionService.reactionsOf(comment.get()));
     }
 
 
@@ -1,47 +1,84 @@
 package com.myapp.news.controllers;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.CommentSlice;
 import com.myapp.news.dtos.NewsArticle;
-import com.myapp.news.utils.CommentJsonFileHandler;
+import com.myapp.news.dtos.TrendingArticle;
+import com.myapp.news.repositories.CommentCursor;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.NewsArticleRepository;
+import com.myapp.news.repositories.ResourceVersion;
+import com.myapp.news.repositories.StagedWrite;
+import com.myapp.news.services.AsyncWriteService;
+import com.myapp.news.services.CommentPageCache;
+import com.myapp.news.services.CommentService;
+import com.myapp.news.services.CommentStreamService;
+import com.myapp.news.services.ExportService;
+import com.myapp.news.services.TrendingService;
+import com.myapp.news.utils.NewsMetrics;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Date;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 
 @RestController
 @RequestMapping("/api/articles")
 public class NewsArticleController {
 
-    private final List<NewsArticle> newsArticleList = new ArrayList<>();
-    private long articleIdCounter = 1;
+    private static final int MAX_COMMENT_LIMIT = 100;
+    private static final int MAX_IDS = 100;
+    private static final int MAX_INLINE_REPLIES = 10;
 
-    @Value("${comments.file.path}")
-    private String commentsFilePath;
+    @Autowired
+    private NewsArticleRepository newsArticleRepository;
 
-    private static final ObjectMapper objectMapper = new ObjectMapper()
-            .enable(SerializationFeature.INDENT_OUTPUT);
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private CommentService commentService;
+
+    @Autowired
+    private CommentPageCache commentPageCache;
+
+    @Autowired
+    private CommentStreamService commentStreamService;
+
+    @Autowired
+    private ExportService exportService;
+
+    @Autowired
+    private TrendingService trendingService;
+
+    @Autowired
+    private AsyncWriteService asyncWriteService;
+
+    @Autowired
+    private NewsMetrics metrics;
+
+    @Autowired
+    private ObjectMapper objectMapper;
 
     @PostMapping
     @Operation(summary = "Create a new news article", description = "Create a new news article and assign a unique articleId.")
@@ -49,14 +86,16 @@ public class NewsArticleController {
             @ApiResponse(responseCode = "201", description = "News article created", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = NewsArticle.class))
             }),
-            @ApiResponse(responseCode = "403", description = "Insufficient privileges")
+            @ApiResponse(responseCode = "403", description = "Insufficient privileges"),
+            @ApiResponse(responseCode = "202", description = "Write accepted, with ack=accepted"),
+            @ApiResponse(responseCode = "503", description = "Write buffer full; retry after the Retry-After delay")
     })
-    public ResponseEntity<NewsArticle> createNewsArticle(@RequestBody NewsArticle newNewsArticle) {
-        newNewsArticle.setNewsArticleId(articleIdCounter++);
-        newNewsArticle.setPostedOn(new Date());
-        newNewsArticle.setLastModified(new Date());
-        newsArticleList.add(newNewsArticle);
-        return ResponseEntity.status(HttpStatus.CREATED).body(newNewsArticle);
+    public CompletableFuture<ResponseEntity<NewsArticle>> createNewsArticle(@RequestBody NewsArticle newNewsArticle,
+                                                                            @RequestParam(required = false) String ack) {
+        return asyncWriteService.submit(ack, () -> {
+            NewsArticle createdNewsArticle = newsArticleRepository.create(newNewsArticle);
+            return StagedWrite.done(ResponseEntity.status(HttpStatus.CREATED).body(createdNewsArticle));
+        });
     }
 
     @GetMapping
@@ -64,8 +103,67 @@ public class NewsArticleController {
     @ApiResponse(responseCode = "200", description = "List of news articles", content = {
             @Content(mediaType = "application/json", schema = @Schema(implementation = List.class, type = "NewsArticle"))
     })
-    public ResponseEntity<List<NewsArticle>> getAllNewsArticles() {
-        return ResponseEntity.ok(newsArticleList);
+    @ApiResponse(responseCode = "304", description = "News articles unchanged since the given ETag or date")
+    public ResponseEntity<List<NewsArticle>> getAllNewsArticles(WebRequest request) {
+        // Answer unchanged polls with a 304 before copying or serializing anything
+        ResourceVersion version = newsArticleRepository.listVersion();
+        if (request.checkNotModified(version.toETag(), version.settledLastModified())) {
+            return null;
+        }
+        return ResponseEntity.ok(newsArticleRepository.findAll());
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Export news articles", description = "Stream news articles as newline-delimited JSON, optionally only those posted in [from, to). "
+            + "The body is gzip-compressed when the client accepts it.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "News articles streamed", content = {
+                    @Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = NewsArticle.class))
+            }),
+            @ApiResponse(responseCode = "400", description = "from is not before to")
+    })
+    public ResponseEntity<StreamingResponseBody> exportNewsArticles(
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean gzip = NdjsonExports.acceptsGzip(acceptEncoding);
+        return NdjsonExports.response(exportService.exportArticles(from, to, gzip), gzip);
+    }
+
+    @GetMapping("/trending")
+    @Operation(summary = "Get trending news articles",
+            description = "The articles with the most comment and reaction activity in the window (15m, 1h or 24h by default), recent activity weighing more. Rankings are refreshed every few seconds.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Trending articles, best first", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = List.class, type = "TrendingArticle"))
+            }),
+            @ApiResponse(responseCode = "400", description = "Unknown window, or a limit outside 1 to 100")
+    })
+    public ResponseEntity<List<TrendingArticle>> getTrendingNewsArticles(
+            @RequestParam(defaultValue = "1h") String window,
+            @RequestParam(defaultValue = "10") int limit) {
+        if (!trendingService.windows().contains(window) || limit < 1 || limit > trendingService.maxLimit()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(trendingService.trending(window, limit));
+    }
+
+    @GetMapping(params = "ids")
+    @Operation(summary = "Get news articles by IDs", description = "Retrieve several news articles in one request, in the order of the comma-separated ids. Unknown ids are left out.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "News articles found", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = List.class, type = "NewsArticle"))
+            }),
+            @ApiResponse(responseCode = "400", description = "No ids, or more than 100")
+    })
+    public ResponseEntity<List<NewsArticle>> getNewsArticlesByIds(@RequestParam List<Long> ids) {
+        if (ids.isEmpty() || ids.size() > MAX_IDS || ids.contains(null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(newsArticleRepository.findAllById(ids));
     }
 
     @GetMapping("/{articleId}")
@@ -74,15 +172,21 @@ public class NewsArticleController {
             @ApiResponse(responseCode = "200", description = "News article found", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = NewsArticle.class))
             }),
+            @ApiResponse(responseCode = "304", description = "News article unchanged since the given ETag or date"),
             @ApiResponse(responseCode = "404", description = "News article not found"),
     })
-    public ResponseEntity<NewsArticle> getNewsArticleById(@PathVariable long articleId) {
-        Optional<NewsArticle> newsArticle = newsArticleList.stream()
-                .filter(article -> article.getNewsArticleId() == articleId)
-                .findFirst();
+    public ResponseEntity<NewsArticle> getNewsArticleById(@PathVariable long articleId, WebRequest request) {
+        Optional<NewsArticle> newsArticle = newsArticleRepository.findById(articleId);
+        if (newsArticle.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
 
-        return newsArticle.map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+        NewsArticle article = newsArticle.get();
+        if (request.checkNotModified(ResourceVersion.toETag(article.getVersion()),
+                ResourceVersion.settledLastModified(article.getLastModified()))) {
+            return null;
+        }
+        return ResponseEntity.ok(article);
     }
 
     @PutMapping("/{articleId}")
@@ -93,22 +197,21 @@ public class NewsArticleController {
             }),
             @ApiResponse(responseCode = "404", description = "News article not found"),
             @ApiResponse(responseCode = "403", description = "Insufficient privileges"),
-            @ApiResponse(responseCode = "400", description = "Invalid News article")
+            @ApiResponse(responseCode = "400", description = "Invalid News article"),
+            @ApiResponse(responseCode = "202", description = "Write accepted, with ack=accepted"),
+            @ApiResponse(responseCode = "503", description = "Write buffer full; retry after the Retry-After delay")
     })
-    public ResponseEntity<NewsArticle> updateNewsArticle(@PathVariable long articleId, @RequestBody NewsArticle updatedNewsArticle) {
-        Optional<NewsArticle> newsArticleToUpdate = newsArticleList.stream()
-                .filter(article -> article.getNewsArticleId() == articleId)
-                .findFirst();
-
-        if (newsArticleToUpdate.isPresent()) {
-            NewsArticle existingNewsArticle = newsArticleToUpdate.get();
-            existingNewsArticle.setTitle(updatedNewsArticle.getTitle());
-            existingNewsArticle.setContent(updatedNewsArticle.getContent());
-            existingNewsArticle.setLastModified(new Date());
-            return ResponseEntity.ok(existingNewsArticle);
-        } else {
-            return ResponseEntity.notFound().build();
-        }
+    public CompletableFuture<ResponseEntity<NewsArticle>> updateNewsArticle(@PathVariable long articleId, @RequestBody NewsArticle updatedNewsArticle,
+                                                                            @RequestParam(required = false) String ack) {
+        return asyncWriteService.submit(ack, () -> {
+            Optional<NewsArticle> newsArticleToUpdate = newsArticleRepository.update(articleId, updatedNewsArticle);
+
+            if (newsArticleToUpdate.isPresent()) {
+                return StagedWrite.done(ResponseEntity.ok(newsArticleToUpdate.get()));
+            } else {
+                return StagedWrite.done(ResponseEntity.notFound().build());
+            }
+        });
     }
 
     @DeleteMapping("/{articleId}")
@@ -118,60 +221,166 @@ public class NewsArticleController {
             @ApiResponse(responseCode = "404", description = "News article not found"),
             @ApiResponse(responseCode = "400", description = "Invalid News article "),
             @ApiResponse(responseCode = "403", description = "Insufficient privileges"),
+            @ApiResponse(responseCode = "202", description = "Write accepted, with ack=accepted"),
+            @ApiResponse(responseCode = "503", description = "Write buffer full; retry after the Retry-After delay")
     })
-    public ResponseEntity<Void> deleteNewsArticle(@PathVariable long articleId) {
-        Optional<NewsArticle> newsArticleToDelete = newsArticleList.stream()
-                .filter(article -> article.getNewsArticleId() == articleId)
-                .findFirst();
-
-        if (newsArticleToDelete.isPresent()) {
-            newsArticleList.remove(newsArticleToDelete.get());
-            return ResponseEntity.noContent().build();
-        } else {
-            return ResponseEntity.notFound().build();
-        }
+    public CompletableFuture<ResponseEntity<Void>> deleteNewsArticle(@PathVariable long articleId,
+                                                                     @RequestParam(required = false) String ack) {
+        return asyncWriteService.submit(ack, () -> {
+            if (newsArticleRepository.delete(articleId)) {
+                return StagedWrite.done(ResponseEntity.noContent().build());
+            } else {
+                return StagedWrite.done(ResponseEntity.notFound().build());
+            }
+        });
     }
 
     @GetMapping("/{articleId}/comments")
-    @Operation(summary = "Get comments by News Article ID", description = "Retrieve comments by the ID of the associated news article.")
+    @Operation(summary = "Get comments by News Article ID",
+            description = "Retrieve comments by the ID of the associated news article. With replies=K, only top-level comments are paged, each with its reply count and first K replies.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Comments found", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = Page.class))
             }),
+            @ApiResponse(responseCode = "304", description = "Comments unchanged since the given ETag or date"),
+            @ApiResponse(responseCode = "400", description = "More than 10 inline replies requested"),
             @ApiResponse(responseCode = "404", description = "Comments not found")
     })
-    public ResponseEntity<Page<Comment>> getCommentsByArticleId(
+    public ResponseEntity<byte[]> getCommentsByArticleId(
             @PathVariable long articleId,
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "3") int size,
             @RequestParam(defaultValue = "commentedOn") String sortBy,
-            @RequestHeader(defaultValue = "V1",name = "Accept-Version", required = false) String apiVersion) throws IOException {
+            @RequestParam(required = false) Integer replies,
+            @RequestHeader(defaultValue = "V1",name = "Accept-Version", required = false) String apiVersion,
+            WebRequest request) throws IOException {
 
-        // Read the comments from the local JSON file
-        List<Comment> comments = readCommentsFromJsonFile();
-        List<Comment> filteredComments = filterCommentsByArticleId(comments, articleId);
-        // Create a PageRequest for pagination and sorting
-        PageRequest pageRequest = PageRequest.of(page - 1, size);
-        filteredComments.sort((c1, c2) -> c2.getCommentedOn().compareTo(c1.getCommentedOn()));
+        if (replies != null && (replies < 0 || replies > MAX_INLINE_REPLIES)) {
+            return ResponseEntity.badRequest().build();
+        }
 
-        // Create a Page object with the specified page, size, and sorted comments
-        int start = (int) pageRequest.getOffset();
-        int end = Math.min((start + pageRequest.getPageSize()), filteredComments.size());
-        Page<Comment> commentPage = new PageImpl<>(filteredComments.subList(start, end), pageRequest, filteredComments.size());
+        // Answer unchanged polls with a 304 before loading or serializing the page
+        ResourceVersion version = commentRepository.commentsVersion(articleId);
+        if (request.checkNotModified(version.toETag(), version.settledLastModified())) {
+            return null;
+        }
 
-        return ResponseEntity.ok(commentPage);
-    }
+        metrics.recordArticleComments(commentRepository.countByArticleId(articleId));
+
+        // Serve the page as rendered for an earlier request, if the comments have not changed since
+        CommentPageCache.Key key = new CommentPageCache.Key(articleId,
+                "page=" + page + "&size=" + size + "&sortBy=" + sortBy + "&replies=" + replies, apiVersion);
+        byte[] body = commentPageCache.get(key, version);
+        if (body == null) {
+            // Create a PageRequest for pagination; the article index is already sorted newest first
+            PageRequest pageRequest = PageRequest.of(page - 1, size);
 
-    private List<Comment> filterCommentsByArticleId(List<Comment> comments, long newsArticleId) {
-        return comments.stream()
-                .filter(comment -> comment.getNewsArticleId() == newsArticleId)
-                .collect(Collectors.toList());
+            // Create a Page object from just the requested slice of the article's comments
+            List<Comment> pageContent;
+            int totalComments;
+            if (replies == null) {
+                pageContent = commentService.toResponses(
+                        commentRepository.findByArticleId(articleId, pageRequest.getOffset(), pageRequest.getPageSize()));
+                totalComments = commentRepository.countByArticleId(articleId);
+            } else {
+                pageContent = commentService.withReplies(
+                        commentRepository.findTopLevelByArticleId(articleId, pageRequest.getOffset(), pageRequest.getPageSize()),
+                        replies);
+                totalComments = commentRepository.countTopLevelByArticleId(articleId);
+            }
+            Page<Comment> commentPage = new PageImpl<>(pageContent, pageRequest, totalComments);
+
+            body = objectMapper.writeValueAsBytes(commentPage);
+            commentPageCache.put(key, version, body);
+        }
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 
-    public List<Comment> readCommentsFromJsonFile() throws IOException {
-        Resource resource = new ClassPathResource(commentsFilePath);
-        return objectMapper.readValue(resource.getInputStream(), new TypeReference<List<Comment>>() {});
+    @GetMapping(value = "/{articleId}/comments", params = "limit")
+    @Operation(summary = "Get comments by News Article ID after a cursor",
+            description = "Retrieve the article's comments, newest first, that follow the given <commentedOn>,<commentId> cursor. With replies=K, only top-level comments are returned, each with its reply count and first K replies.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Comments found", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = CommentSlice.class))
+            }),
+            @ApiResponse(responseCode = "304", description = "Comments unchanged since the given ETag or date"),
+            @ApiResponse(responseCode = "400", description = "Malformed cursor, limit or inline reply count")
+    })
+    public ResponseEntity<byte[]> getCommentsByArticleIdAfter(
+            @PathVariable long articleId,
+            @RequestParam(required = false) String after,
+            @RequestParam int limit,
+            @RequestParam(required = false) Integer replies,
+            @RequestHeader(defaultValue = "V1",name = "Accept-Version", required = false) String apiVersion,
+            WebRequest request) throws IOException {
+
+        if (limit < 1 || limit > MAX_COMMENT_LIMIT || (replies != null && (replies < 0 || replies > MAX_INLINE_REPLIES))) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        CommentCursor cursor;
+        try {
+            cursor = after == null ? null : CommentCursor.parse(after);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        ResourceVersion version = commentRepository.commentsVersion(articleId);
+        if (request.checkNotModified(version.toETag(), version.settledLastModified())) {
+            return null;
+        }
+
+        metrics.recordArticleComments(commentRepository.countByArticleId(articleId));
+
+        // Keyed by the parsed cursor, so equivalent spellings of it share an entry
+        CommentPageCache.Key key = new CommentPageCache.Key(articleId,
+                "after=" + (cursor == null ? "" : cursor) + "&limit=" + limit + "&replies=" + replies, apiVersion);
+        byte[] body = commentPageCache.get(key, version);
+        if (body == null) {
+            List<Comment> comments = replies == null
+                    ? commentService.toResponses(commentRepository.findByArticleIdAfter(articleId, cursor, limit))
+                    : commentService.withReplies(commentRepository.findTopLevelByArticleIdAfter(articleId, cursor, limit), replies);
+
+            CommentSlice slice = new CommentSlice();
+            slice.setContent(comments);
+            slice.setLimit(limit);
+            if (comments.size() == limit) {
+                slice.setNextCursor(CommentCursor.of(comments.get(comments.size() - 1)).toString());
+            }
+
+            body = objectMapper.writeValueAsBytes(slice);
+            commentPageCache.put(key, version, body);
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 
+    @GetMapping(value = "/{articleId}/comments/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream comment changes of a News Article",
+            description = "Server-Sent Events for the article's comments: created, updated, deleted and reactions, each carrying the comment as the API shows it. "
+                    + "A resync event means changes were dropped and the comments should be reloaded. Event ids are the comments' ETags; "
+                    + "reconnecting with a stale Last-Event-ID starts with a resync.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Stream opened", content = {
+                    @Content(mediaType = "text/event-stream")
+            }),
+            @ApiResponse(responseCode = "404", description = "News article not found"),
+            @ApiResponse(responseCode = "503", description = "Too many open streams on this node")
+    })
+    public ResponseEntity<SseEmitter> streamComments(
+            @PathVariable long articleId,
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
+
+        if (newsArticleRepository.findById(articleId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        SseEmitter emitter = commentStreamService.subscribe(articleId, lastEventId);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        // Proxies must pass events through as they are written
+        return ResponseEntity.ok().header("X-Accel-Buffering", "no").body(emitter);
+    }
 
 }
@@ -0,0 +1,52 @@
+package com.myapp.news.controllers;
+
+import com.myapp.news.dtos.SearchResults;
+import com.myapp.news.services.SearchService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/search")
+public class SearchController {
+
+    private static final int MAX_PAGE_SIZE = 100;
+    // Deepest rank that can be paged to; keeps the ranking heap small
+    private static final int MAX_RESULTS = 1000;
+
+    @Autowired
+    private SearchService searchService;
+
+    @GetMapping
+    @Operation(summary = "Search articles and comments",
+            description = "Full-text search over article titles and contents and comment texts. Hits match any of the query's words and are ranked best first.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Search results", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = SearchResults.class))
+            }),
+            @ApiResponse(responseCode = "400", description = "Invalid type, page or size, or a page beyond the first 1000 hits")
+    })
+    public ResponseEntity<SearchResults> search(
+            @RequestParam String q,
+            @RequestParam(required = false) String type,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "10") int size) {
+
+        if (type != null && !type.equals(SearchService.ARTICLE) && !type.equals(SearchService.COMMENT)) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (page < 1 || size < 1 || size > MAX_PAGE_SIZE || (long) page * size > MAX_RESULTS) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        SearchResults results = searchService.search(q, type, (page - 1) * size, size);
+        results.setPage(page);
+        results.setSize(size);
+        return ResponseEntity.ok(results);
+    }
+}
@@ -1,25 +1,41 @@
 package com.myapp.news.controllers;
 
 import com.myapp.news.dtos.User;
+import com.myapp.news.repositories.StagedWrite;
+import com.myapp.news.repositories.UserRepository;
+import com.myapp.news.services.AsyncWriteService;
+import com.myapp.news.services.ExportService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/users")
 public class UserController {
 
-    private final List<User> userList = new ArrayList<>();
-    private long userIdCounter = 1;
+    private static final int MAX_IDS = 100;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ExportService exportService;
+
+    @Autowired
+    private AsyncWriteService asyncWriteService;
 
     // Create a new user
     @PostMapping
@@ -29,12 +45,16 @@ public class UserController {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = User.class))
             }),
             @ApiResponse(responseCode = "400", description = "Invalid user object"),
-            @ApiResponse(responseCode = "403", description = "Insufficient privileges")
+            @ApiResponse(responseCode = "403", description = "Insufficient privileges"),
+            @ApiResponse(responseCode = "202", description = "Write accepted, with ack=accepted"),
+            @ApiResponse(responseCode = "503", description = "Write buffer full; retry after the Retry-After delay")
     })
-    public ResponseEntity<User> createUser(@RequestBody User newUser) {
-        newUser.setUserId(userIdCounter++);
-        userList.add(newUser);
-        return ResponseEntity.status(HttpStatus.CREATED).body(newUser);
+    public CompletableFuture<ResponseEntity<User>> createUser(@RequestBody User newUser,
+                                                              @RequestParam(required = false) String ack) {
+        return asyncWriteService.submit(ack, () -> {
+            User createdUser = userRepository.create(newUser);
+            return StagedWrite.done(ResponseEntity.status(HttpStatus.CREATED).body(createdUser));
+        });
     }
 
     // Retrieve all users
@@ -46,7 +66,37 @@ public class UserController {
     @ApiResponse(responseCode = "403", description = "Insufficient privileges")
     @ApiResponse(responseCode = "404", description = "User not found")
     public ResponseEntity<List<User>> getAllUsers() {
-        return ResponseEntity.ok(userList);
+        return ResponseEntity.ok(userRepository.findAll());
+    }
+
+    // Stream all users as newline-delimited JSON
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Export users", description = "Stream all users as newline-delimited JSON. The body is gzip-compressed when the client accepts it.")
+    @ApiResponse(responseCode = "200", description = "Users streamed", content = {
+            @Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = User.class))
+    })
+    @ApiResponse(responseCode = "403", description = "Insufficient privileges")
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean gzip = NdjsonExports.acceptsGzip(acceptEncoding);
+        return NdjsonExports.response(exportService.exportUsers(gzip), gzip);
+    }
+
+    // Retrieve several users by ID
+    @GetMapping(params = "ids")
+    @Operation(summary = "Get users by IDs", description = "Retrieve several users in one request, in the order of the comma-separated ids. Unknown ids are left out.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Users found", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = List.class, type = "User"))
+            }),
+            @ApiResponse(responseCode = "400", description = "No ids, or more than 100"),
+            @ApiResponse(responseCode = "403", description = "Insufficient privileges")
+    })
+    public ResponseEntity<List<User>> getUsersByIds(@RequestParam List<Long> ids) {
+        if (ids.isEmpty() || ids.size() > MAX_IDS || ids.contains(null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(userRepository.findAllById(ids));
     }
 
     // Retrieve a user by ID
@@ -60,9 +110,7 @@ public class UserController {
             @ApiResponse(responseCode = "403", description = "Insufficient privileges")
     })
     public ResponseEntity<User> getUserById(@PathVariable long userId) {
-        Optional<User> user = userList.stream()
-                .filter(u -> u.getUserId() == userId)
-                .findFirst();
+        Optional<User> user = userRepository.findById(userId);
 
         return user.map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
@@ -77,23 +125,21 @@ public class UserController {
             }),
             @ApiResponse(responseCode = "404", description = "User not found"),
             @ApiResponse(responseCode = "400", description = "Invalid user object"),
-            @ApiResponse(responseCode = "403", description = "Insufficient privileges")
+            @ApiResponse(responseCode = "403", description = "Insufficient privileges"),
+            @ApiResponse(responseCode = "202", description = "Write accepted, with ack=accepted"),
+            @ApiResponse(responseCode = "503", description = "Write buffer full; retry after the Retry-After delay")
     })
-    public ResponseEntity<User> updateUser(@PathVariable long userId, @RequestBody User updatedUser) {
-        Optional<User> userToUpdate = userList.stream()
-                .filter(u -> u.getUserId() == userId)
-                .findFirst();
-
-        if (userToUpdate.isPresent()) {
-            User existingUser = userToUpdate.get();
-            existingUser.setAvatarUrl(updatedUser.getAvatarUrl());
-            existingUser.setUserProfilePicUrl(updatedUser.getUserProfilePicUrl());
-            existingUser.setUserName(updatedUser.getUserName());
-            existingUser.setEmailAddress(updatedUser.getEmailAddress());
-            return ResponseEntity.ok(existingUser);
-        } else {
-            return ResponseEntity.notFound().build();
-        }
+    public CompletableFuture<ResponseEntity<User>> updateUser(@PathVariable long userId, @RequestBody User updatedUser,
+                                                              @RequestParam(required = false) String ack) {
+        return asyncWriteService.submit(ack, () -> {
+            Optional<User> userToUpdate = userRepository.update(userId, updatedUser);
+
+            if (userToUpdate.isPresent()) {
+                return StagedWrite.done(ResponseEntity.ok(userToUpdate.get()));
+            } else {
+                return StagedWrite.done(ResponseEntity.notFound().build());
+            }
+        });
     }
 
     // Delete a user by ID
@@ -102,18 +148,18 @@ public class UserController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "User deleted"),
             @ApiResponse(responseCode = "404", description = "User not found"),
-            @ApiResponse(responseCode = "403", description = "Insufficient privileges")
+            @ApiResponse(responseCode = "403", description = "Insufficient privileges"),
+            @ApiResponse(responseCode = "202", description = "Write accepted, with ack=accepted"),
+            @ApiResponse(responseCode = "503", description = "Write buffer full; retry after the Retry-After delay")
     })
-    public ResponseEntity<Void> deleteUser(@PathVariable long userId) {
-        Optional<User> userToDelete = userList.stream()
-                .filter(u -> u.getUserId() == userId)
-                .findFirst();
-
-        if (userToDelete.isPresent()) {
-            userList.remove(userToDelete.get());
-            return ResponseEntity.noContent().build();
-        } else {
-            return ResponseEntity.notFound().build();
-        }
+    public CompletableFuture<ResponseEntity<Void>> deleteUser(@PathVariable long userId,
+                                                              @RequestParam(required = false) String ack) {
+        return asyncWriteService.submit(ack, () -> {
+            if (userRepository.delete(userId)) {
+                return StagedWrite.done(ResponseEntity.noContent().build());
+            } else {
+                return StagedWrite.done(ResponseEntity.notFound().build());
+            }
+        });
     }
 }
@@ -1,11 +1,15 @@
 package com.myapp.news.dtos;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.security.PrivateKey;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -14,10 +18,32 @@ import java.util.Map;
 public class Comment {
     private long commentId;
     private long newsArticleId;
-    private User author;
+    private User author; // joined from the user store for responses, never stored
+    @JsonIgnore
+    private Long authorId; // what the store keeps instead of the author
     private String text;
     private Date commentedOn;
     private Map<String, Long> reactions; // [heart : 20, thumbsup : 10]
-    //private Comment parent;
-    //private List<Comment> replies;
+    private Long parentCommentId; // null for a top-level comment
+
+    // Only filled in on threaded views, never stored
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Integer replyCount; // direct replies
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private List<Comment> replies; // the first direct replies, newest first
+
+    public Comment copy() {
+        Comment copy = new Comment();
+        copy.setCommentId(commentId);
+        copy.setNewsArticleId(newsArticleId);
+        copy.setAuthor(author);
+        copy.setAuthorId(authorId);
+        copy.setText(text);
+        copy.setCommentedOn(commentedOn);
+        copy.setReactions(reactions == null ? null : new HashMap<>(reactions));
+        copy.setParentCommentId(parentCommentId);
+        return copy;
+    }
 }
@@ -0,0 +1,13 @@
+package com.myapp.news.dtos;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class CommentBatchResult {
+    private int index; // position of the comment in the request
+    private int status; // 201 when created, otherwise the reason it was rejected
+    private Comment comment;
+    private String error;
+}
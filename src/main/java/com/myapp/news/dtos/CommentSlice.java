@@ -0,0 +1,14 @@
+package com.myapp.news.dtos;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Setter
+@Getter
+public class CommentSlice {
+    private List<Comment> content;
+    private int limit;
+    private String nextCursor; // null when there are no further comments
+}
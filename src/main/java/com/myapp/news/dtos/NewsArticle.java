@@ -1,5 +1,6 @@
 package com.myapp.news.dtos;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -14,4 +15,6 @@ public class NewsArticle {
     Date postedOn;
     Date lastModified;
     User author;
+    @JsonIgnore
+    long version; // changes on every update, backs the article's ETag
 }
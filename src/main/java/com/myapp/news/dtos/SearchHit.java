@@ -0,0 +1,16 @@
+package com.myapp.news.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SearchHit {
+    private String type; // article or comment
+    private long id;
+    private double score;
+    private NewsArticle article; // set when type is article
+    private Comment comment; // set when type is comment
+}
@@ -0,0 +1,16 @@
+package com.myapp.news.dtos;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Setter
+@Getter
+public class SearchResults {
+    private String query;
+    private int totalHits; // every matching document, not just this page
+    private int page;
+    private int size;
+    private List<SearchHit> hits; // best match first
+}
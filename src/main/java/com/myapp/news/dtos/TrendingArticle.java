@@ -0,0 +1,11 @@
+package com.myapp.news.dtos;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class TrendingArticle {
+    private NewsArticle article;
+    private double score; // weighted, decayed comment and reaction activity in the window
+}
@@ -0,0 +1,80 @@
+package com.myapp.news.repositories;
+
+import com.myapp.news.dtos.Comment;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * Position of a comment in an article's comment stream, which is ordered newest first
+ * (commentedOn descending, then commentId descending). Rendered as {@code <commentedOn>,<commentId>}
+ * with commentedOn in epoch milliseconds; ISO-8601 instants are accepted when parsing.
+ */
+@Getter
+public final class CommentCursor implements Comparable<CommentCursor> {
+
+    private static final Comparator<CommentCursor> NEWEST_FIRST = Comparator
+            .comparingLong(CommentCursor::getCommentedOn)
+            .thenComparingLong(CommentCursor::getCommentId)
+            .reversed();
+
+    private final long commentedOn;
+    private final long commentId;
+
+    public CommentCursor(long commentedOn, long commentId) {
+        this.commentedOn = commentedOn;
+        this.commentId = commentId;
+    }
+
+    public static CommentCursor of(Comment comment) {
+        long commentedOn = comment.getCommentedOn() == null ? 0 : comment.getCommentedOn().getTime();
+        return new CommentCursor(commentedOn, comment.getCommentId());
+    }
+
+    public static CommentCursor parse(String value) {
+        int separator = value.lastIndexOf(',');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Cursor must be <commentedOn>,<commentId>: " + value);
+        }
+        try {
+            String commentedOn = value.substring(0, separator).trim();
+            long commentId = Long.parseLong(value.substring(separator + 1).trim());
+            return new CommentCursor(parseTimestamp(commentedOn), commentId);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Malformed cursor: " + value, e);
+        }
+    }
+
+    private static long parseTimestamp(String commentedOn) {
+        if (!commentedOn.isEmpty() && commentedOn.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(commentedOn);
+        }
+        return Instant.parse(commentedOn).toEpochMilli();
+    }
+
+    @Override
+    public int compareTo(CommentCursor other) {
+        return NEWEST_FIRST.compare(this, other);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CommentCursor)) return false;
+        CommentCursor that = (CommentCursor) o;
+        return commentedOn == that.commentedOn && commentId == that.commentId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(commentedOn, commentId);
+    }
+
+    @Override
+    public String toString() {
+        return commentedOn + "," + commentId;
+    }
+}
@@ -0,0 +1,716 @@
+package com.myapp.news.repositories;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.User;
+import com.myapp.news.storage.CommentStore;
+import com.myapp.news.utils.CommentJournalRecord;
+import com.myapp.news.utils.SnowflakeIdGenerator;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Resident comment store. The snapshot is parsed once at startup and kept in memory as compact
+ * {@link StoredComment}s, indexed by commentId and, in newest-first order, per newsArticleId. Threads are kept as an
+ * adjacency index: the top-level comments of each article, and the direct replies of each comment.
+ * Comments only keep their author's id; the author itself lives in the {@link UserRepository}. Mutations are serialized
+ * and queued to the configured {@link CommentStore} in that order, but wait for their write outside the lock, so
+ * concurrent mutations can share one flush; a mutation becomes visible when it is queued and returns once it is
+ * durable. The {@code stage} variants return as soon as the mutation is visible, so one thread can queue several
+ * mutations before waiting for any of them. Stores that keep a journal are periodically compacted into a new snapshot. Stored comments are replaced rather than modified in place.
+ *
+ * <p>When the store reports that a write failed, its changes are undone in the indexes before the failure is
+ * returned, so the comments served never include what is not on disk. Later mutations of the same comments have
+ * failed as well by then, since a store that fails a write rejects everything after it.
+ */
+@Slf4j
+@Repository
+public class CommentRepository {
+
+    private final CommentStore store;
+    private final UserRepository userRepository;
+    private final SnowflakeIdGenerator idGenerator;
+
+    private final Map<Long, StoredComment> commentsById = new ConcurrentHashMap<>();
+    private final Map<Long, OrderedComments> commentsByArticleId = new ConcurrentHashMap<>();
+    private final Map<Long, OrderedComments> topLevelByArticleId = new ConcurrentHashMap<>();
+    private final Map<Long, OrderedComments> repliesByParentId = new ConcurrentHashMap<>();
+    // Kept after an article's last comment is gone, so its version never goes backwards
+    private final Map<Long, ResourceVersion> commentVersionsByArticleId = new ConcurrentHashMap<>();
+
+    private final List<LongConsumer> changeListeners = new CopyOnWriteArrayList<>();
+    private final List<CommentListener> commentListeners = new CopyOnWriteArrayList<>();
+
+    // Serializes mutations; a lock rather than a monitor so storage I/O does not pin virtual threads
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Undone changes, guarded by writeLock: each failed comment state to the state it replaced
+    // (null if it was created), and each comment whose deletion failed to its last state
+    private final Map<StoredComment, StoredComment> failedWrites = new IdentityHashMap<>();
+    private final Map<Long, StoredComment> failedDeletes = new HashMap<>();
+
+    public CommentRepository(CommentStore store, UserRepository userRepository, SnowflakeIdGenerator idGenerator) {
+        this.store = store;
+        this.userRepository = userRepository;
+        this.idGenerator = idGenerator;
+        userRepository.onUserChanged(this::authorChanged);
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        List<Comment> snapshot = store.readComments();
+        List<CommentJournalRecord> records = store.readCommentChanges();
+
+        // The seed file and older snapshots and journals embed whole authors; move them to the user store
+        List<User> embeddedAuthors = new ArrayList<>();
+        for (Comment comment : snapshot) {
+            if (comment.getAuthor() != null) {
+                embeddedAuthors.add(comment.getAuthor());
+            }
+        }
+        for (CommentJournalRecord record : records) {
+            if (record.getComment() != null && record.getComment().getAuthor() != null) {
+                embeddedAuthors.add(record.getComment().getAuthor());
+            }
+        }
+        userRepository.registerAll(embeddedAuthors);
+
+        for (Comment comment : snapshot) {
+            index(StoredComment.of(normalizeAuthor(comment)), ChangeKind.CREATED);
+        }
+        for (CommentJournalRecord record : records) {
+            apply(record);
+        }
+
+        // Never hand out an id that is already on disk
+        commentsById.keySet().forEach(idGenerator::observe);
+        embeddedAuthors.forEach(author -> idGenerator.observe(author.getUserId()));
+    }
+
+    public Optional<StoredComment> findById(long commentId) {
+        return Optional.ofNullable(commentsById.get(commentId));
+    }
+
+    /**
+     * The comments with the given ids, in the order asked for. Unknown ids are skipped and
+     * repeated ids answered once.
+     */
+    public List<StoredComment> findAllById(Collection<Long> commentIds) {
+        List<StoredComment> comments = new ArrayList<>(commentIds.size());
+        for (long commentId : new LinkedHashSet<>(commentIds)) {
+            StoredComment comment = commentsById.get(commentId);
+            if (comment != null) {
+                comments.add(comment);
+            }
+        }
+        return comments;
+    }
+
+    /**
+     * All comments of an article, newest first.
+     */
+    public List<StoredComment> findByArticleId(long newsArticleId) {
+        OrderedComments articleComments = commentsByArticleId.get(newsArticleId);
+        if (articleComments == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(articleComments.comments.values());
+    }
+
+    /**
+     * One offset page of an article's comments, newest first. Costs the offset plus the page,
+     * the comments are never re-sorted.
+     */
+    public List<StoredComment> findByArticleId(long newsArticleId, long offset, int limit) {
+        return page(commentsByArticleId.get(newsArticleId), offset, limit);
+    }
+
+    /**
+     * The comments that follow {@code after} in the article's newest-first order, or the
+     * first comments when {@code after} is null. Costs O(log n + limit).
+     */
+    public List<StoredComment> findByArticleIdAfter(long newsArticleId, CommentCursor after, int limit) {
+        return pageAfter(commentsByArticleId.get(newsArticleId), after, limit);
+    }
+
+    /**
+     * One offset page of an article's top-level comments, newest first.
+     */
+    public List<StoredComment> findTopLevelByArticleId(long newsArticleId, long offset, int limit) {
+        return page(topLevelByArticleId.get(newsArticleId), offset, limit);
+    }
+
+    /**
+     * The top-level comments that follow {@code after} in the article's newest-first order.
+     */
+    public List<StoredComment> findTopLevelByArticleIdAfter(long newsArticleId, CommentCursor after, int limit) {
+        return pageAfter(topLevelByArticleId.get(newsArticleId), after, limit);
+    }
+
+    /**
+     * The direct replies to a comment that follow {@code after}, newest first. Only the
+     * requested replies are visited, however large the thread below them is.
+     */
+    public List<StoredComment> findRepliesAfter(long parentCommentId, CommentCursor after, int limit) {
+        return pageAfter(repliesByParentId.get(parentCommentId), after, limit);
+    }
+
+    /**
+     * Version of an article's comment stream. It changes whenever one of the article's
+     * comments is created, edited or deleted, or gets reactions flushed to it.
+     */
+    public ResourceVersion commentsVersion(long newsArticleId) {
+        return commentVersionsByArticleId.getOrDefault(newsArticleId, ResourceVersion.INITIAL);
+    }
+
+    /**
+     * Gives the article's comment stream a new version and tells the listeners.
+     */
+    private void markCommentsChanged(long newsArticleId) {
+        commentVersionsByArticleId.put(newsArticleId, ResourceVersion.next());
+        for (LongConsumer listener : changeListeners) {
+            listener.accept(newsArticleId);
+        }
+    }
+
+    /**
+     * Registers a callback that receives the newsArticleId whenever that article's comment
+     * stream changes. It runs after the new version is visible, on the writing thread.
+     */
+    public void onCommentsChanged(LongConsumer listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Registers a callback that receives every stored comment as (kind, previous, current), with
+     * null for a comment that is created or deleted. It runs on the writing thread while
+     * writes are serialized, so a listener sees the changes to a comment in order.
+     */
+    public void onCommentChanged(CommentListener listener) {
+        commentListeners.add(listener);
+    }
+
+    public int countByArticleId(long newsArticleId) {
+        return size(commentsByArticleId.get(newsArticleId));
+    }
+
+    public int countTopLevelByArticleId(long newsArticleId) {
+        return size(topLevelByArticleId.get(newsArticleId));
+    }
+
+    /**
+     * Number of direct replies to a comment. Kept up to date on every write, so this is O(1).
+     */
+    public int countReplies(long parentCommentId) {
+        return size(repliesByParentId.get(parentCommentId));
+    }
+
+    public List<StoredComment> findAll() {
+        List<StoredComment> comments = new ArrayList<>(commentsById.values());
+        comments.sort(Comparator.comparingLong(StoredComment::getCommentId));
+        return comments;
+    }
+
+    /**
+     * All comments in no particular order, without copying them. The iterator is weakly
+     * consistent: it never fails on concurrent writes, and may or may not see them.
+     */
+    public Iterator<StoredComment> iterateAll() {
+        return commentsById.values().iterator();
+    }
+
+    /**
+     * An article's comments, newest first, without copying them. Weakly consistent like {@link #iterateAll()}.
+     */
+    public Iterator<StoredComment> iterateByArticleId(long newsArticleId) {
+        OrderedComments articleComments = commentsByArticleId.get(newsArticleId);
+        return articleComments == null
+                ? Collections.emptyIterator()
+                : articleComments.comments.values().iterator();
+    }
+
+    public int count() {
+        return commentsById.size();
+    }
+
+    /**
+     * Creates the comment, or nothing when it is a reply to a comment that no longer exists.
+     * Callers check the parent beforehand to report why; this check is the one that holds,
+     * as it is made while no comment can be deleted.
+     */
+    public Optional<StoredComment> create(Comment newComment) throws IOException {
+        return stageCreate(newComment).await();
+    }
+
+    /**
+     * Creates a comment like {@link #create(Comment)}, but leaves waiting for its store write to the caller.
+     */
+    public StagedWrite<Optional<StoredComment>> stageCreate(Comment newComment) throws IOException {
+        StoredComment storedComment;
+        CommentStore.PendingWrite write;
+        writeLock.lock();
+        try {
+            if (isOrphan(newComment)) {
+                return StagedWrite.done(Optional.empty());
+            }
+            prepareNew(newComment);
+            newComment.setCommentId(idGenerator.nextId());
+            if (newComment.getCommentedOn() == null) {
+                newComment.setCommentedOn(new Date());
+            }
+
+            write = store.writeComments(List.of(CommentJournalRecord.created(newComment)));
+
+            storedComment = StoredComment.of(newComment);
+            index(storedComment, ChangeKind.CREATED);
+        } finally {
+            writeLock.unlock();
+        }
+        return StagedWrite.of(Optional.of(storedComment), undoneOnFailure(write, List.of(new Change(null, storedComment))));
+    }
+
+    /**
+     * Creates several comments with one store write. The result has an entry for each comment, in
+     * order, which is empty for a reply whose parent no longer exists, as in {@link #create(Comment)}.
+     */
+    public List<Optional<StoredComment>> createAll(List<Comment> newComments) throws IOException {
+        return stageCreateAll(newComments).await();
+    }
+
+    public StagedWrite<List<Optional<StoredComment>>> stageCreateAll(List<Comment> newComments) throws IOException {
+        List<Optional<StoredComment>> storedComments;
+        List<Change> changes;
+        CommentStore.PendingWrite write;
+        writeLock.lock();
+        try {
+            Date now = new Date();
+            boolean[] orphans = new boolean[newComments.size()];
+            List<CommentJournalRecord> records = new ArrayList<>(newComments.size());
+            for (int i = 0; i < orphans.length; i++) {
+                Comment newComment = newComments.get(i);
+                orphans[i] = isOrphan(newComment);
+                if (orphans[i]) {
+                    continue;
+                }
+                prepareNew(newComment);
+                newComment.setCommentId(idGenerator.nextId());
+                if (newComment.getCommentedOn() == null) {
+                    newComment.setCommentedOn(now);
+                }
+                records.add(CommentJournalRecord.created(newComment));
+            }
+
+            write = records.isEmpty() ? CommentStore.PendingWrite.DONE : store.writeComments(records);
+
+            storedComments = new ArrayList<>(newComments.size());
+            changes = new ArrayList<>(records.size());
+            for (int i = 0; i < orphans.length; i++) {
+                if (orphans[i]) {
+                    storedComments.add(Optional.empty());
+                    continue;
+                }
+                StoredComment storedComment = StoredComment.of(newComments.get(i));
+                index(storedComment, ChangeKind.CREATED);
+                storedComments.add(Optional.of(storedComment));
+                changes.add(new Change(null, storedComment));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return StagedWrite.of(storedComments, undoneOnFailure(write, changes));
+    }
+
+    public Optional<StoredComment> updateText(long commentId, String text) throws IOException {
+        return stageUpdateText(commentId, text).await();
+    }
+
+    public StagedWrite<Optional<StoredComment>> stageUpdateText(long commentId, String text) throws IOException {
+        StoredComment updatedComment;
+        Change change;
+        CommentStore.PendingWrite write;
+        writeLock.lock();
+        try {
+            StoredComment existingComment = commentsById.get(commentId);
+            if (existingComment == null) {
+                return StagedWrite.done(Optional.empty());
+            }
+
+            updatedComment = existingComment.withText(text);
+            write = store.writeComments(List.of(CommentJournalRecord.updated(updatedComment.toComment())));
+
+            index(updatedComment, ChangeKind.UPDATED);
+            change = new Change(existingComment, updatedComment);
+        } finally {
+            writeLock.unlock();
+        }
+        return StagedWrite.of(Optional.of(updatedComment), undoneOnFailure(write, List.of(change)));
+    }
+
+    /**
+     * Adds reaction counts to several comments with one store write. Comments that no
+     * longer exist are skipped.
+     */
+    public void addReactions(Map<Long, Map<String, Long>> reactionsByCommentId) throws IOException {
+        List<Change> changes = new ArrayList<>(reactionsByCommentId.size());
+        CommentStore.PendingWrite write;
+        writeLock.lock();
+        try {
+            List<CommentJournalRecord> records = new ArrayList<>(reactionsByCommentId.size());
+            reactionsByCommentId.forEach((commentId, reactions) -> {
+                StoredComment existingComment = commentsById.get(commentId);
+                if (existingComment == null) {
+                    return;
+                }
+                StoredComment updatedComment = existingComment.withReactionsAdded(reactions);
+                changes.add(new Change(existingComment, updatedComment));
+                records.add(CommentJournalRecord.updated(updatedComment.toComment()));
+            });
+
+            write = store.writeComments(records);
+            changes.forEach(change -> index(change.current, ChangeKind.UPDATED));
+        } finally {
+            writeLock.unlock();
+        }
+        undoneOnFailure(write, changes).await();
+    }
+
+    public boolean delete(long commentId) throws IOException {
+        return stageDelete(commentId).await();
+    }
+
+    public StagedWrite<Boolean> stageDelete(long commentId) throws IOException {
+        Change change;
+        CommentStore.PendingWrite write;
+        writeLock.lock();
+        try {
+            StoredComment existingComment = commentsById.get(commentId);
+            if (existingComment == null) {
+                return StagedWrite.done(false);
+            }
+
+            write = store.writeComments(List.of(CommentJournalRecord.deleted(commentId, existingComment.getNewsArticleId())));
+
+            unindex(existingComment, ChangeKind.DELETED);
+            change = new Change(existingComment, null);
+        } finally {
+            writeLock.unlock();
+        }
+        return StagedWrite.of(true, undoneOnFailure(write, List.of(change)));
+    }
+
+    /**
+     * Lets the store fold its journal into a fresh snapshot, if it keeps one. Writers are only
+     * held off while the compaction starts; the snapshot itself is written from a copy taken at that point.
+     */
+    @Scheduled(fixedDelayString = "${comments.journal.compaction.interval.ms}",
+            initialDelayString = "${comments.journal.compaction.interval.ms}")
+    public void compact() {
+        List<StoredComment> snapshot;
+        CommentStore.Compaction compaction;
+        writeLock.lock();
+        try {
+            compaction = store.startCompaction();
+            if (compaction == null) {
+                return;
+            }
+            snapshot = findAll();
+        } catch (IOException e) {
+            log.error("Could not start a comment compaction, skipping it", e);
+            return;
+        } finally {
+            writeLock.unlock();
+        }
+
+        try {
+            compaction.complete(StoredComment.asComments(snapshot));
+        } catch (IOException e) {
+            log.error("Could not write the comment snapshot", e);
+        }
+    }
+
+    /**
+     * The write, made to undo its changes in the indexes when the store reports that they were not written.
+     */
+    private CommentStore.PendingWrite undoneOnFailure(CommentStore.PendingWrite write, List<Change> changes) {
+        if (write == CommentStore.PendingWrite.DONE || changes.isEmpty()) {
+            return write;
+        }
+        return () -> {
+            try {
+                write.await();
+            } catch (InterruptedIOException e) {
+                // Only the wait was interrupted; the write itself may still succeed
+                throw e;
+            } catch (IOException e) {
+                undo(changes, e);
+                throw e;
+            }
+        };
+    }
+
+    private void undo(List<Change> changes, IOException failure) {
+        Set<Long> failedIds = null;
+        if (failure instanceof CommentStore.PartialWriteException partial) {
+            failedIds = new HashSet<>();
+            for (CommentJournalRecord record : partial.getFailedChanges()) {
+                failedIds.add(record.getCommentId());
+            }
+        }
+
+        int undone = 0;
+        writeLock.lock();
+        try {
+            for (Change change : changes) {
+                long commentId = change.commentId();
+                if (failedIds != null && !failedIds.contains(commentId)) {
+                    continue;
+                }
+                if (change.current != null) {
+                    failedWrites.put(change.current, change.previous);
+                } else {
+                    failedDeletes.put(commentId, change.previous);
+                }
+                restore(commentId);
+                undone++;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        log.warn("Undid {} comment changes that could not be written", undone);
+    }
+
+    /**
+     * Indexes the comment as it was before its failed changes. Writes may fail and be undone in
+     * any order, so this starts from the comment's latest state and walks back past every state
+     * known to have failed; a state whose write has not been reported failed yet stays.
+     */
+    private void restore(long commentId) {
+        StoredComment live = commentsById.get(commentId);
+        StoredComment restored = live != null ? live : failedDeletes.get(commentId);
+        while (restored != null && failedWrites.containsKey(restored)) {
+            restored = failedWrites.get(restored);
+        }
+        if (restored == live) {
+            return;
+        }
+        if (restored == null) {
+            unindex(live, ChangeKind.RESTORED);
+        } else {
+            // A comment keeps its cursor across updates, so this replaces the live state in every index
+            index(restored, ChangeKind.RESTORED);
+        }
+    }
+
+    private void apply(CommentJournalRecord record) {
+        StoredComment previous = commentsById.get(record.getCommentId());
+        if (previous != null) {
+            unindex(previous, ChangeKind.DELETED);
+        }
+        if (record.getOperation() != CommentJournalRecord.Operation.DELETE) {
+            index(StoredComment.of(normalizeAuthor(record.getComment())), ChangeKind.CREATED);
+        }
+    }
+
+    /**
+     * Whether the comment is a reply to a comment that does not exist. Called under the write lock,
+     * so the parent cannot be deleted before the reply is indexed.
+     */
+    private boolean isOrphan(Comment comment) {
+        return comment.getParentCommentId() != null && !commentsById.containsKey(comment.getParentCommentId());
+    }
+
+    /**
+     * Readies a comment from a request for storing. A new comment has no reactions yet: counts only
+     * arrive through the reaction endpoint, which accepts the configured types only, so a request
+     * can neither seed counts nor register reaction names of its own.
+     */
+    private static void prepareNew(Comment comment) {
+        normalizeAuthor(comment);
+        comment.setReactions(null);
+    }
+
+    /**
+     * Replaces the comment's author by its id. The authors embedded in stored comments are
+     * registered by {@link #load()}; the profile a new comment carries is never stored.
+     */
+    private static Comment normalizeAuthor(Comment comment) {
+        if (comment.getAuthor() != null) {
+            if (comment.getAuthorId() == null) {
+                comment.setAuthorId(comment.getAuthor().getUserId());
+            }
+            comment.setAuthor(null);
+        }
+        return comment;
+    }
+
+    /**
+     * A profile change shows in every comment of the user, so the comment streams they appear in
+     * change too. Profile edits are rare, so this scans rather than keeping an index by author.
+     */
+    private void authorChanged(User previous, User current) {
+        Set<Long> articleIds = new HashSet<>();
+        for (StoredComment comment : commentsById.values()) {
+            if (comment.isAuthoredBy(previous.getUserId())) {
+                articleIds.add(comment.getNewsArticleId());
+            }
+        }
+        articleIds.forEach(this::markCommentsChanged);
+    }
+
+    private void index(StoredComment comment, ChangeKind kind) {
+        StoredComment previous = commentsById.put(comment.getCommentId(), comment);
+        // One cursor is shared as the key of every index the comment is in
+        CommentCursor cursor = comment.cursor();
+        add(commentsByArticleId, comment.getNewsArticleId(), cursor, comment);
+        if (comment.isReply()) {
+            add(repliesByParentId, comment.getParentCommentId(), cursor, comment);
+        } else {
+            add(topLevelByArticleId, comment.getNewsArticleId(), cursor, comment);
+        }
+        markCommentsChanged(comment.getNewsArticleId());
+        for (CommentListener listener : commentListeners) {
+            listener.commentChanged(kind, previous, comment);
+        }
+    }
+
+    private void unindex(StoredComment comment, ChangeKind kind) {
+        commentsById.remove(comment.getCommentId());
+        CommentCursor cursor = comment.cursor();
+        remove(commentsByArticleId, comment.getNewsArticleId(), cursor);
+        if (comment.isReply()) {
+            remove(repliesByParentId, comment.getParentCommentId(), cursor);
+        } else {
+            remove(topLevelByArticleId, comment.getNewsArticleId(), cursor);
+        }
+        markCommentsChanged(comment.getNewsArticleId());
+        for (CommentListener listener : commentListeners) {
+            listener.commentChanged(kind, comment, null);
+        }
+    }
+
+    private static void add(Map<Long, OrderedComments> index, long key, CommentCursor cursor, StoredComment comment) {
+        index.computeIfAbsent(key, k -> new OrderedComments()).add(cursor, comment);
+    }
+
+    private static void remove(Map<Long, OrderedComments> index, long key, CommentCursor cursor) {
+        index.computeIfPresent(key, (k, comments) -> {
+            comments.remove(cursor);
+            return comments.size.get() == 0 ? null : comments;
+        });
+    }
+
+    private static int size(OrderedComments comments) {
+        return comments == null ? 0 : comments.size.get();
+    }
+
+    private static List<StoredComment> page(OrderedComments comments, long offset, int limit) {
+        if (comments == null) {
+            return new ArrayList<>();
+        }
+        return collect(comments.comments.values().iterator(), offset, limit);
+    }
+
+    private static List<StoredComment> pageAfter(OrderedComments comments, CommentCursor after, int limit) {
+        if (comments == null) {
+            return new ArrayList<>();
+        }
+        NavigableMap<CommentCursor, StoredComment> tail = after == null
+                ? comments.comments
+                : comments.comments.tailMap(after, false);
+        return collect(tail.values().iterator(), 0, limit);
+    }
+
+    private static List<StoredComment> collect(Iterator<StoredComment> comments, long offset, int limit) {
+        for (long skipped = 0; skipped < offset && comments.hasNext(); skipped++) {
+            comments.next();
+        }
+        List<StoredComment> page = new ArrayList<>(limit);
+        while (page.size() < limit && comments.hasNext()) {
+            page.add(comments.next());
+        }
+        return page;
+    }
+
+    /**
+     * One comment's change by a mutation: the state it replaced and the new one, null for a
+     * comment that did not exist before or no longer does.
+     */
+    private static final class Change {
+        private final StoredComment previous;
+        private final StoredComment current;
+
+        private Change(StoredComment previous, StoredComment current) {
+            this.previous = previous;
+            this.current = current;
+        }
+
+        private long commentId() {
+            return (current != null ? current : previous).getCommentId();
+        }
+    }
+
+    /**
+     * What happened to a comment, as told to the listeners of {@link #onCommentChanged(CommentListener)}.
+     */
+    public enum ChangeKind {
+        CREATED,
+        UPDATED,
+        DELETED,
+        /**
+         * A change whose write failed was undone: the comment is back in an earlier state, back
+         * after a failed delete, or gone again after a failed create.
+         */
+        RESTORED
+    }
+
+    @FunctionalInterface
+    public interface CommentListener {
+        void commentChanged(ChangeKind kind, StoredComment previous, StoredComment current);
+    }
+
+    /**
+     * Comments kept in newest-first order: all of an article's, its top-level ones, or the
+     * replies to one comment. The size is tracked separately because counting a skip list is linear.
+     */
+    private static final class OrderedComments {
+        private final ConcurrentSkipListMap<CommentCursor, StoredComment> comments = new ConcurrentSkipListMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private void add(CommentCursor cursor, StoredComment comment) {
+            if (comments.put(cursor, comment) == null) {
+                size.incrementAndGet();
+            }
+        }
+
+        private void remove(CommentCursor cursor) {
+            if (comments.remove(cursor) != null) {
+                size.decrementAndGet();
+            }
+        }
+    }
+}
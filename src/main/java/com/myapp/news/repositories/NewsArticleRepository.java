@@ -0,0 +1,215 @@
+package com.myapp.news.repositories;
+
+import com.myapp.news.dtos.NewsArticle;
+import com.myapp.news.storage.ArticleStore;
+import com.myapp.news.utils.SnowflakeIdGenerator;
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Concurrent, id-keyed article store. Ids come from the {@link SnowflakeIdGenerator} and stored
+ * articles are never modified in place: an update publishes a new copy, so a reader always sees a
+ * whole article.
+ * Every article carries a version for conditional GETs; the collection as a whole has one too.
+ * Mutations are serialized and written to the configured {@link ArticleStore} before they become
+ * visible; change listeners run on the writing thread, so they see the changes in order.
+ */
+@Repository
+public class NewsArticleRepository {
+
+    private final ArticleStore store;
+    private final SnowflakeIdGenerator idGenerator;
+
+    private final Map<Long, NewsArticle> articlesById = new ConcurrentHashMap<>();
+
+    // Version of the whole collection, as returned by findAll
+    private volatile ResourceVersion listVersion = ResourceVersion.INITIAL;
+
+    private final List<BiConsumer<NewsArticle, NewsArticle>> listeners = new CopyOnWriteArrayList<>();
+
+    // Serializes mutations, so the store is always written from the latest state
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    public NewsArticleRepository(ArticleStore store, SnowflakeIdGenerator idGenerator) {
+        this.store = store;
+        this.idGenerator = idGenerator;
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        for (NewsArticle article : store.readArticles()) {
+            // Versions are not stored; the per-boot ETag prefix keeps them from repeating
+            article.setVersion(ResourceVersion.nextSequence());
+            articlesById.put(article.getNewsArticleId(), article);
+            // Never hand out an id that is already taken
+            idGenerator.observe(article.getNewsArticleId());
+        }
+    }
+
+    public NewsArticle create(NewsArticle newNewsArticle) throws IOException {
+        writeLock.lock();
+        try {
+            Date now = new Date();
+            newNewsArticle.setNewsArticleId(idGenerator.nextId());
+            newNewsArticle.setPostedOn(now);
+            newNewsArticle.setLastModified(now);
+            newNewsArticle.setVersion(ResourceVersion.nextSequence());
+            persist(Collections.singletonMap(newNewsArticle.getNewsArticleId(), newNewsArticle));
+
+            articlesById.put(newNewsArticle.getNewsArticleId(), newNewsArticle);
+            listVersion = ResourceVersion.next();
+            notifyListeners(null, newNewsArticle);
+            return newNewsArticle;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public Optional<NewsArticle> findById(long articleId) {
+        return Optional.ofNullable(articlesById.get(articleId));
+    }
+
+    /**
+     * The articles with the given ids, in the order asked for. Unknown ids are skipped and
+     * repeated ids answered once.
+     */
+    public List<NewsArticle> findAllById(Collection<Long> articleIds) {
+        List<NewsArticle> articles = new ArrayList<>(articleIds.size());
+        for (long id : new LinkedHashSet<>(articleIds)) {
+            NewsArticle article = articlesById.get(id);
+            if (article != null) {
+                articles.add(article);
+            }
+        }
+        return articles;
+    }
+
+    /**
+     * A copy of all articles in id order. Iterating it never races with concurrent writers.
+     */
+    public List<NewsArticle> findAll() {
+        List<NewsArticle> articles = new ArrayList<>(articlesById.values());
+        articles.sort(Comparator.comparingLong(NewsArticle::getNewsArticleId));
+        return articles;
+    }
+
+    /**
+     * All articles in no particular order, without copying them. The iterator is weakly
+     * consistent: it never fails on concurrent writes, and may or may not see them.
+     */
+    public Iterator<NewsArticle> iterateAll() {
+        return articlesById.values().iterator();
+    }
+
+    public ResourceVersion listVersion() {
+        return listVersion;
+    }
+
+    public Optional<NewsArticle> update(long articleId, NewsArticle changes) throws IOException {
+        writeLock.lock();
+        try {
+            NewsArticle existing = articlesById.get(articleId);
+            if (existing == null) {
+                return Optional.empty();
+            }
+
+            NewsArticle updated = copyOf(existing);
+            updated.setTitle(changes.getTitle());
+            updated.setContent(changes.getContent());
+            updated.setLastModified(new Date());
+            updated.setVersion(ResourceVersion.nextSequence());
+            persist(Collections.singletonMap(articleId, updated));
+
+            articlesById.put(articleId, updated);
+            listVersion = ResourceVersion.next();
+            notifyListeners(existing, updated);
+            return Optional.of(updated);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int count() {
+        return articlesById.size();
+    }
+
+    /**
+     * Registers a callback that receives every article change as (previous, current), with
+     * null for an article that is created or deleted.
+     */
+    public void onArticleChanged(BiConsumer<NewsArticle, NewsArticle> listener) {
+        listeners.add(listener);
+    }
+
+    public boolean delete(long articleId) throws IOException {
+        writeLock.lock();
+        try {
+            NewsArticle existing = articlesById.get(articleId);
+            if (existing == null) {
+                return false;
+            }
+            persist(Collections.singletonMap(articleId, null));
+
+            articlesById.remove(articleId);
+            listVersion = ResourceVersion.next();
+            notifyListeners(existing, null);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the given articles as added or replaced, or as deleted where they map to null.
+     */
+    private void persist(Map<Long, NewsArticle> changes) throws IOException {
+        store.writeArticles(changes, () -> {
+            Map<Long, NewsArticle> articles = new LinkedHashMap<>(articlesById);
+            changes.forEach((articleId, article) -> {
+                if (article == null) {
+                    articles.remove(articleId);
+                } else {
+                    articles.put(articleId, article);
+                }
+            });
+            List<NewsArticle> sorted = new ArrayList<>(articles.values());
+            sorted.sort(Comparator.comparingLong(NewsArticle::getNewsArticleId));
+            return sorted;
+        });
+    }
+
+    private void notifyListeners(NewsArticle previous, NewsArticle current) {
+        for (BiConsumer<NewsArticle, NewsArticle> listener : listeners) {
+            listener.accept(previous, current);
+        }
+    }
+
+    private static NewsArticle copyOf(NewsArticle article) {
+        NewsArticle copy = new NewsArticle();
+        copy.setNewsArticleId(article.getNewsArticleId());
+        copy.setTitle(article.getTitle());
+        copy.setContent(article.getContent());
+        copy.setPostedOn(article.getPostedOn());
+        copy.setLastModified(article.getLastModified());
+        copy.setAuthor(article.getAuthor());
+        copy.setVersion(article.getVersion());
+        return copy;
+    }
+}
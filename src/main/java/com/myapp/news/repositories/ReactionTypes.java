@@ -0,0 +1,55 @@
+package com.myapp.news.repositories;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dictionary of reaction type names. Each distinct name is kept once and gets a small, permanent
+ * index, which is the slot of its count in a {@link StoredComment}. Lookups of known names are lock-free.
+ * Names are never dropped, so only names from stored comments and the configured reaction types may
+ * reach it, never arbitrary names from requests.
+ */
+final class ReactionTypes {
+
+    private static final Map<String, Integer> indexes = new ConcurrentHashMap<>();
+    private static final ReentrantLock registerLock = new ReentrantLock();
+    private static volatile String[] names = new String[0];
+
+    private ReactionTypes() {
+    }
+
+    static int indexOf(String name) {
+        Integer index = indexes.get(name);
+        if (index != null) {
+            return index;
+        }
+        registerLock.lock();
+        try {
+            index = indexes.get(name);
+            if (index == null) {
+                String[] registered = Arrays.copyOf(names, names.length + 1);
+                index = names.length;
+                registered[index] = name;
+                // Published before the index, so a reader that finds the index also finds the name
+                names = registered;
+                indexes.put(name, index);
+            }
+            return index;
+        } finally {
+            registerLock.unlock();
+        }
+    }
+
+    /**
+     * Whether the name has been registered, without registering it.
+     */
+    static boolean contains(String name) {
+        return indexes.containsKey(name);
+    }
+
+    static String nameOf(int index) {
+        return names[index];
+    }
+}
@@ -0,0 +1,68 @@
+package com.myapp.news.repositories;
+
+import lombok.Getter;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version stamp of a stored resource, used to answer conditional GETs. Sequences come from
+ * one process-wide counter and ETags carry a per-boot id, so an ETag is never reused for
+ * different content, not even across restarts. Clients that send no If-None-Match are answered
+ * by Last-Modified instead. Its date has whole seconds, so it is only given out once the second of
+ * the change is over; a later change can then never carry the date a client already holds.
+ */
+@Getter
+public final class ResourceVersion {
+
+    private static final String BOOT_ID = Long.toString(System.currentTimeMillis(), 36);
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    /**
+     * The version of anything that has not changed since startup.
+     */
+    public static final ResourceVersion INITIAL = new ResourceVersion(0, System.currentTimeMillis());
+
+    private final long sequence;
+    private final long lastModified;
+
+    private ResourceVersion(long sequence, long lastModified) {
+        this.sequence = sequence;
+        this.lastModified = lastModified;
+    }
+
+    public static ResourceVersion next() {
+        return new ResourceVersion(nextSequence(), System.currentTimeMillis());
+    }
+
+    public static long nextSequence() {
+        return SEQUENCE.incrementAndGet();
+    }
+
+    public static String toETag(long sequence) {
+        return "\"" + BOOT_ID + "-" + sequence + "\"";
+    }
+
+    public String toETag() {
+        return toETag(sequence);
+    }
+
+    /**
+     * The Last-Modified time to check If-Modified-Since against, or -1 while it is not settled.
+     */
+    public long settledLastModified() {
+        return settledLastModified(lastModified);
+    }
+
+    public static long settledLastModified(Date lastModified) {
+        return lastModified == null ? -1 : settledLastModified(lastModified.getTime());
+    }
+
+    /**
+     * The time, or -1 while its second is not over yet: another change within that second would
+     * have the same whole-second date, and a client holding it would be told nothing changed.
+     */
+    public static long settledLastModified(long lastModified) {
+        return lastModified / 1000 < System.currentTimeMillis() / 1000 ? lastModified : -1;
+    }
+}
@@ -0,0 +1,47 @@
+package com.myapp.news.repositories;
+
+import com.myapp.news.storage.CommentStore;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * The outcome of a mutation that is already visible but may not be durable yet. Staging several
+ * mutations before awaiting any of them lets the store persist them together.
+ */
+public final class StagedWrite<T> {
+
+    private final T result;
+    private final CommentStore.PendingWrite write;
+
+    private StagedWrite(T result, CommentStore.PendingWrite write) {
+        this.result = result;
+        this.write = write;
+    }
+
+    public static <T> StagedWrite<T> of(T result, CommentStore.PendingWrite write) {
+        return new StagedWrite<>(result, write);
+    }
+
+    /**
+     * A mutation that was persisted before it became visible.
+     */
+    public static <T> StagedWrite<T> done(T result) {
+        return new StagedWrite<>(result, CommentStore.PendingWrite.DONE);
+    }
+
+    /**
+     * The same write with its result transformed, e.g. into a response.
+     */
+    public <R> StagedWrite<R> map(Function<? super T, ? extends R> mapper) {
+        return new StagedWrite<>(mapper.apply(result), write);
+    }
+
+    /**
+     * Waits until the mutation is durable and returns its result.
+     */
+    public T await() throws IOException {
+        write.await();
+        return result;
+    }
+}
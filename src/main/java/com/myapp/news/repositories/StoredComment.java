@@ -0,0 +1,181 @@
+package com.myapp.news.repositories;
+
+import com.myapp.news.dtos.Comment;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resident form of a comment. Ids and the timestamp are primitives, and reaction counts sit in a
+ * {@code long[]} whose slots are the {@link ReactionTypes} indexes, so a comment costs a fraction of a
+ * {@link Comment} with its {@link Date} and {@code HashMap} of boxed counts. Instances are immutable;
+ * a change creates a new one. The {@link Comment} DTO is only built at the API and storage edges.
+ */
+public final class StoredComment {
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final long commentId;
+    private final long newsArticleId;
+    private final long authorId;
+    private final long parentCommentId;
+    private final long commentedOn;
+    private final String text;
+    private final long[] reactionCounts; // null when there are no reactions
+
+    private StoredComment(long commentId, long newsArticleId, long authorId, long parentCommentId,
+                          long commentedOn, String text, long[] reactionCounts) {
+        this.commentId = commentId;
+        this.newsArticleId = newsArticleId;
+        this.authorId = authorId;
+        this.parentCommentId = parentCommentId;
+        this.commentedOn = commentedOn;
+        this.text = text;
+        this.reactionCounts = reactionCounts;
+    }
+
+    /**
+     * The resident form of a comment whose author has been reduced to its id.
+     */
+    public static StoredComment of(Comment comment) {
+        return new StoredComment(
+                comment.getCommentId(),
+                comment.getNewsArticleId(),
+                comment.getAuthorId() == null ? NONE : comment.getAuthorId(),
+                comment.getParentCommentId() == null ? NONE : comment.getParentCommentId(),
+                comment.getCommentedOn() == null ? NONE : comment.getCommentedOn().getTime(),
+                comment.getText(),
+                withCounts(null, comment.getReactions()));
+    }
+
+    /**
+     * The comment as a DTO, with its author id but without the author itself.
+     */
+    public Comment toComment() {
+        Comment comment = new Comment();
+        comment.setCommentId(commentId);
+        comment.setNewsArticleId(newsArticleId);
+        comment.setAuthorId(getAuthorId());
+        comment.setParentCommentId(getParentCommentId());
+        comment.setCommentedOn(commentedOn == NONE ? null : new Date(commentedOn));
+        comment.setText(text);
+        comment.setReactions(reactions());
+        return comment;
+    }
+
+    /**
+     * A DTO view of the comments, converting each one as it is read, so that writing a snapshot
+     * never holds every comment as a DTO at once.
+     */
+    public static List<Comment> asComments(List<StoredComment> comments) {
+        return new AbstractList<>() {
+            @Override
+            public Comment get(int index) {
+                return comments.get(index).toComment();
+            }
+
+            @Override
+            public int size() {
+                return comments.size();
+            }
+        };
+    }
+
+    public StoredComment withText(String newText) {
+        return new StoredComment(commentId, newsArticleId, authorId, parentCommentId, commentedOn, newText, reactionCounts);
+    }
+
+    public StoredComment withReactionsAdded(Map<String, Long> added) {
+        return new StoredComment(commentId, newsArticleId, authorId, parentCommentId, commentedOn, text,
+                withCounts(reactionCounts, added));
+    }
+
+    public long getCommentId() {
+        return commentId;
+    }
+
+    public long getNewsArticleId() {
+        return newsArticleId;
+    }
+
+    public Long getAuthorId() {
+        return authorId == NONE ? null : authorId;
+    }
+
+    public boolean isAuthoredBy(long userId) {
+        return authorId == userId;
+    }
+
+    public Long getParentCommentId() {
+        return parentCommentId == NONE ? null : parentCommentId;
+    }
+
+    public boolean isReply() {
+        return parentCommentId != NONE;
+    }
+
+    /**
+     * Epoch milliseconds, or 0 when the comment has no timestamp.
+     */
+    public long getCommentedOn() {
+        return commentedOn == NONE ? 0 : commentedOn;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * The non-zero reaction counts by type, in a new map.
+     */
+    public Map<String, Long> reactions() {
+        Map<String, Long> reactions = new HashMap<>();
+        if (reactionCounts != null) {
+            for (int i = 0; i < reactionCounts.length; i++) {
+                if (reactionCounts[i] != 0) {
+                    reactions.put(ReactionTypes.nameOf(i), reactionCounts[i]);
+                }
+            }
+        }
+        return reactions;
+    }
+
+    public long totalReactions() {
+        long total = 0;
+        if (reactionCounts != null) {
+            for (long count : reactionCounts) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    public CommentCursor cursor() {
+        return new CommentCursor(getCommentedOn(), commentId);
+    }
+
+    private static long[] withCounts(long[] counts, Map<String, Long> added) {
+        if (added == null || added.isEmpty()) {
+            return counts;
+        }
+        long[] result = counts;
+        for (Map.Entry<String, Long> reaction : added.entrySet()) {
+            if (reaction.getValue() == null || reaction.getValue() == 0) {
+                continue;
+            }
+            int slot = ReactionTypes.indexOf(reaction.getKey());
+            if (result == counts) {
+                // Copied on first write; sized to the highest slot in use, not to the dictionary
+                result = counts == null ? new long[slot + 1] : Arrays.copyOf(counts, Math.max(counts.length, slot + 1));
+            } else if (slot >= result.length) {
+                result = Arrays.copyOf(result, slot + 1);
+            }
+            result[slot] += reaction.getValue();
+        }
+        return result;
+    }
+}
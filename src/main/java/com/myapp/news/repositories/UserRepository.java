@@ -0,0 +1,213 @@
+package com.myapp.news.repositories;
+
+import com.myapp.news.dtos.User;
+import com.myapp.news.storage.UserStore;
+import com.myapp.news.utils.SnowflakeIdGenerator;
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Concurrent, id-keyed user store, and the shared user cache comment authors are joined from.
+ * Ids come from the {@link SnowflakeIdGenerator} and stored users are never modified in place:
+ * an update publishes a new copy, so a reader always sees a whole user. Mutations are serialized and written to the
+ * configured {@link UserStore} before they become visible.
+ */
+@Repository
+public class UserRepository {
+
+    private final UserStore store;
+    private final SnowflakeIdGenerator idGenerator;
+
+    private final Map<Long, User> usersById = new ConcurrentHashMap<>();
+
+    private final List<BiConsumer<User, User>> listeners = new CopyOnWriteArrayList<>();
+
+    // Serializes mutations, so the store is always written from the latest state
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    public UserRepository(UserStore store, SnowflakeIdGenerator idGenerator) {
+        this.store = store;
+        this.idGenerator = idGenerator;
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        for (User user : store.readUsers()) {
+            usersById.put(user.getUserId(), user);
+        }
+        // Never hand out an id that is already taken
+        usersById.keySet().forEach(idGenerator::observe);
+    }
+
+    public User create(User newUser) throws IOException {
+        writeLock.lock();
+        try {
+            newUser.setUserId(idGenerator.nextId());
+            persist(Map.of(newUser.getUserId(), newUser));
+
+            usersById.put(newUser.getUserId(), newUser);
+            return newUser;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Stores the users that are not known yet under their own ids, with one store write. Users that are already stored keep their current profile.
+     * The ids are not reported to the {@link SnowflakeIdGenerator}; callers that read them from storage do that.
+     */
+    public void registerAll(Collection<User> users) throws IOException {
+        writeLock.lock();
+        try {
+            Map<Long, User> newUsers = new LinkedHashMap<>();
+            for (User user : users) {
+                if (!usersById.containsKey(user.getUserId())) {
+                    newUsers.putIfAbsent(user.getUserId(), user);
+                }
+            }
+            if (newUsers.isEmpty()) {
+                return;
+            }
+            persist(newUsers);
+
+            usersById.putAll(newUsers);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public Optional<User> findById(long userId) {
+        return Optional.ofNullable(usersById.get(userId));
+    }
+
+    /**
+     * The users with the given ids, in the order asked for. Unknown ids are skipped and
+     * repeated ids answered once.
+     */
+    public List<User> findAllById(Collection<Long> userIds) {
+        List<User> users = new ArrayList<>(userIds.size());
+        for (long id : new LinkedHashSet<>(userIds)) {
+            User user = usersById.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * A copy of all users in id order. Iterating it never races with concurrent writers.
+     */
+    public List<User> findAll() {
+        List<User> users = new ArrayList<>(usersById.values());
+        users.sort(Comparator.comparingLong(User::getUserId));
+        return users;
+    }
+
+    /**
+     * All users in no particular order, without copying them. The iterator is weakly
+     * consistent: it never fails on concurrent writes, and may or may not see them.
+     */
+    public Iterator<User> iterateAll() {
+        return usersById.values().iterator();
+    }
+
+    public Optional<User> update(long userId, User changes) throws IOException {
+        writeLock.lock();
+        try {
+            User existing = usersById.get(userId);
+            if (existing == null) {
+                return Optional.empty();
+            }
+
+            User updated = new User();
+            updated.setUserId(existing.getUserId());
+            updated.setAvatarUrl(changes.getAvatarUrl());
+            updated.setUserProfilePicUrl(changes.getUserProfilePicUrl());
+            updated.setUserName(changes.getUserName());
+            updated.setEmailAddress(changes.getEmailAddress());
+            persist(Map.of(userId, updated));
+
+            usersById.put(userId, updated);
+            notifyListeners(existing, updated);
+            return Optional.of(updated);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Registers a callback that receives every profile change as (previous, current), with
+     * null for a user that is deleted. It runs on the writing thread, after the change is visible.
+     */
+    public void onUserChanged(BiConsumer<User, User> listener) {
+        listeners.add(listener);
+    }
+
+    public int count() {
+        return usersById.size();
+    }
+
+    public boolean delete(long userId) throws IOException {
+        writeLock.lock();
+        try {
+            User existing = usersById.get(userId);
+            if (existing == null) {
+                return false;
+            }
+
+            persist(Collections.singletonMap(userId, null));
+
+            usersById.remove(userId);
+            notifyListeners(existing, null);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the given users as added or replaced, or as deleted where they map to null.
+     */
+    private void persist(Map<Long, User> changes) throws IOException {
+        store.writeUsers(changes, () -> {
+            Map<Long, User> users = new LinkedHashMap<>(usersById);
+            changes.forEach((userId, user) -> {
+                if (user == null) {
+                    users.remove(userId);
+                } else {
+                    users.put(userId, user);
+                }
+            });
+            return sorted(users.values());
+        });
+    }
+
+    private void notifyListeners(User previous, User current) {
+        for (BiConsumer<User, User> listener : listeners) {
+            listener.accept(previous, current);
+        }
+    }
+
+    private static List<User> sorted(Collection<User> users) {
+        List<User> list = new ArrayList<>(users);
+        list.sort(Comparator.comparingLong(User::getUserId));
+        return list;
+    }
+}
@@ -0,0 +1,276 @@
+package com.myapp.news.services;
+
+import com.myapp.news.repositories.StagedWrite;
+import com.myapp.news.utils.NewsMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs the mutations of the write endpoints. By default a mutation runs on the request thread,
+ * which returns once it is durable. With {@code news.writes.async.enabled} the request thread
+ * only publishes the mutation to a bounded ring buffer of preallocated slots, and one writer
+ * thread applies what is buffered in batches: it stages every mutation of a batch before it
+ * waits for any of them, so comment writes of a batch share their journal flushes.
+ *
+ * <p>A request is answered once its write is durable, or, with {@code ack=accepted}, with
+ * 202 Accepted as soon as it is buffered, before it is validated against the stored data. The
+ * mode is chosen per request or by {@code news.writes.ack}, and only matters in the asynchronous
+ * mode. Publishing never waits: when the buffer is full, the request is answered with 503 and a
+ * Retry-After header right away.
+ */
+@Slf4j
+@Service
+public class AsyncWriteService {
+
+    /**
+     * When the request is answered.
+     */
+    public enum Ack {
+        /**
+         * Once the write is buffered, with 202 Accepted and no body.
+         */
+        ACCEPTED,
+        /**
+         * Once the write is persisted, with the endpoint's usual response.
+         */
+        DURABLE
+    }
+
+    /**
+     * One mutation: applies it and returns the response, to be sent once the write is durable.
+     */
+    @FunctionalInterface
+    public interface Write<T> {
+        StagedWrite<ResponseEntity<T>> apply() throws IOException;
+    }
+
+    private static final class Slot {
+        Write<Object> write;
+        CompletableFuture<ResponseEntity<Object>> response;
+        long publishedAt;
+    }
+
+    private final boolean enabled;
+    private final Ack defaultAck;
+    private final String retryAfterSeconds;
+
+    // The ring, guarded by lock: count slots starting at head are published and not yet taken
+    private final Slot[] slots;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private int head;
+    private int count;
+    private boolean closed;
+
+    // The batch being applied, only touched by the writer thread
+    private final Slot[] batch;
+    private final StagedWrite<?>[] staged;
+
+    private final Thread writer;
+
+    private final Counter rejected;
+    private final Timer queueTimer;
+    private final DistributionSummary batchSize;
+
+    public AsyncWriteService(@Value("${news.writes.async.enabled}") boolean enabled,
+                             @Value("${news.writes.ack}") String defaultAck,
+                             @Value("${news.writes.buffer.size}") int bufferSize,
+                             @Value("${news.writes.batch.max}") int batchMax,
+                             @Value("${news.writes.retry-after.seconds}") int retryAfterSeconds,
+                             NewsMetrics metrics) {
+        this.enabled = enabled;
+        this.defaultAck = parseAck(defaultAck);
+        if (this.defaultAck == null) {
+            throw new IllegalArgumentException("news.writes.ack must be accepted or durable, not " + defaultAck);
+        }
+        this.retryAfterSeconds = String.valueOf(retryAfterSeconds);
+
+        this.slots = new Slot[enabled ? bufferSize : 0];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot();
+        }
+        this.batch = new Slot[enabled ? Math.min(batchMax, bufferSize) : 0];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = new Slot();
+        }
+        this.staged = new StagedWrite<?>[batch.length];
+
+        this.rejected = metrics.counter("news.writes.rejected", "Writes answered with 503 because the write buffer was full");
+        this.queueTimer = metrics.timer("news.writes.queued", "Time a write waited in the buffer before it was applied");
+        this.batchSize = metrics.summary("news.writes.batch", "Writes applied by the writer thread in one batch");
+
+        if (enabled) {
+            this.writer = new Thread(this::applyPublished, "async-writer");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            this.writer = null;
+        }
+    }
+
+    /**
+     * Runs the write and completes with its response. {@code ack} is the request's choice of
+     * acknowledgement, or null for the configured one; an unknown value is answered with 400.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<ResponseEntity<T>> submit(String ack, Write<T> write) {
+        Ack mode = ack == null ? defaultAck : parseAck(ack);
+        if (mode == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+        if (!enabled) {
+            return CompletableFuture.completedFuture(applyNow(write));
+        }
+
+        CompletableFuture<ResponseEntity<T>> response = new CompletableFuture<>();
+        lock.lock();
+        try {
+            if (count == slots.length || closed) {
+                rejected.increment();
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                        .build());
+            }
+            Slot slot = slots[(head + count) % slots.length];
+            slot.write = (Write<Object>) (Write<?>) write;
+            slot.response = (CompletableFuture<ResponseEntity<Object>>) (CompletableFuture<?>) response;
+            slot.publishedAt = System.nanoTime();
+            count++;
+            published.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        if (mode == Ack.ACCEPTED) {
+            // Nobody waits for the outcome any more, so at least make failures visible
+            response.whenComplete((outcome, failure) -> {
+                if (failure != null) {
+                    log.warn("An accepted write failed", failure);
+                } else if (outcome.getStatusCode().is5xxServerError()) {
+                    log.warn("An accepted write failed with status {}", outcome.getStatusCode().value());
+                }
+            });
+            return CompletableFuture.completedFuture(ResponseEntity.accepted().build());
+        }
+        return response;
+    }
+
+    /**
+     * Applies what is still buffered, then stops the writer thread. Writes published afterwards are rejected.
+     */
+    @PreDestroy
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            closed = true;
+            published.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> ResponseEntity<T> applyNow(Write<T> write) {
+        try {
+            return write.apply().await();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void applyPublished() {
+        while (true) {
+            int size;
+            lock.lock();
+            try {
+                while (count == 0 && !closed) {
+                    published.awaitUninterruptibly();
+                }
+                if (count == 0) {
+                    return;
+                }
+                // Take the batch out of the ring, freeing its slots for new writes
+                size = Math.min(count, batch.length);
+                long now = System.nanoTime();
+                for (int i = 0; i < size; i++) {
+                    Slot slot = slots[head];
+                    Slot taken = batch[i];
+                    taken.write = slot.write;
+                    taken.response = slot.response;
+                    queueTimer.record(now - slot.publishedAt, TimeUnit.NANOSECONDS);
+                    slot.write = null;
+                    slot.response = null;
+                    head = (head + 1) % slots.length;
+                }
+                count -= size;
+            } finally {
+                lock.unlock();
+            }
+            batchSize.record(size);
+
+            // Stage every write first, in order, so their store writes are queued together
+            for (int i = 0; i < size; i++) {
+                try {
+                    staged[i] = batch[i].write.apply();
+                } catch (IOException e) {
+                    batch[i].response.complete(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
+                } catch (Throwable e) {
+                    // Errors too: if this thread died, every write after this one would wait forever
+                    failed(batch[i], e);
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                if (staged[i] != null) {
+                    try {
+                        batch[i].response.complete((ResponseEntity<Object>) staged[i].await());
+                    } catch (IOException e) {
+                        batch[i].response.complete(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
+                    } catch (Throwable e) {
+                        failed(batch[i], e);
+                    }
+                }
+                staged[i] = null;
+                batch[i].write = null;
+                batch[i].response = null;
+            }
+        }
+    }
+
+    private static void failed(Slot slot, Throwable failure) {
+        if (failure instanceof Error) {
+            log.error("A buffered write failed with an error; the writer carries on with the next one", failure);
+        }
+        slot.response.completeExceptionally(failure);
+    }
+
+    private static Ack parseAck(String ack) {
+        try {
+            return Ack.valueOf(ack.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
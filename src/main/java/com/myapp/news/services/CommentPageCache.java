@@ -0,0 +1,254 @@
+package com.myapp.news.services;
+
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.ResourceVersion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LRU cache of serialized comment pages, bounded by the total size of the cached bodies.
+ * Each entry remembers the version of the article's comment stream it was rendered from and
+ * is only served while that version is current. All of an article's entries are dropped as
+ * soon as its comments change, so memory is not held by pages that can no longer be served.
+ *
+ * <p>Articles are spread by hash over {@code comments.page.cache.stripes} stripes, each with its
+ * own lock, its own share of the size bound and its own LRU order, so lookups and invalidations
+ * of different articles rarely wait for each other. An article's pages all live in one stripe.
+ *
+ * <p>Meters follow Micrometer's cache conventions ({@code cache.gets}, {@code cache.evictions},
+ * {@code cache.size}) tagged {@code cache=commentPages}.
+ */
+@Service
+public class CommentPageCache {
+
+    private static final String CACHE_NAME = "commentPages";
+
+    private final CommentRepository commentRepository;
+    private final Stripe[] stripes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter invalidations;
+
+    public CommentPageCache(CommentRepository commentRepository, MeterRegistry registry,
+                            @Value("${comments.page.cache.max.bytes}") long maxBytes,
+                            @Value("${comments.page.cache.stripes}") int stripeCount) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("comments.page.cache.stripes must be at least 1");
+        }
+        this.commentRepository = commentRepository;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(maxBytes / stripeCount);
+        }
+
+        hits = Counter.builder("cache.gets")
+                .description("Comment page lookups served from the cache")
+                .tags("cache", CACHE_NAME, "result", "hit")
+                .register(registry);
+        misses = Counter.builder("cache.gets")
+                .description("Comment page lookups that had to render the page")
+                .tags("cache", CACHE_NAME, "result", "miss")
+                .register(registry);
+        sizeEvictions = Counter.builder("cache.evictions")
+                .description("Comment pages evicted to stay within the size bound")
+                .tags("cache", CACHE_NAME, "cause", "size")
+                .register(registry);
+        invalidations = Counter.builder("cache.evictions")
+                .description("Comment pages dropped because the article's comments changed")
+                .tags("cache", CACHE_NAME, "cause", "invalidated")
+                .register(registry);
+        Gauge.builder("cache.size", this, CommentPageCache::size)
+                .description("Number of cached comment pages")
+                .tag("cache", CACHE_NAME)
+                .register(registry);
+        Gauge.builder("cache.bytes", this, CommentPageCache::bytes)
+                .description("Total size of the cached comment pages")
+                .tag("cache", CACHE_NAME)
+                .baseUnit("bytes")
+                .register(registry);
+
+        commentRepository.onCommentsChanged(this::invalidate);
+    }
+
+    /**
+     * The cached body for the key, or null when there is none for the given version.
+     */
+    public byte[] get(Key key, ResourceVersion version) {
+        Stripe stripe = stripeOf(key.articleId);
+        stripe.lock.lock();
+        try {
+            Entry entry = stripe.entries.get(key);
+            if (entry != null && entry.sequence == version.getSequence()) {
+                hits.increment();
+                return entry.body;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches a body rendered from the given version. Ignored when the article's comments
+     * have changed since, or when the body is too large to be worth caching.
+     */
+    public void put(Key key, ResourceVersion version, byte[] body) {
+        Stripe stripe = stripeOf(key.articleId);
+        if (body.length > stripe.maxEntryBytes) {
+            return;
+        }
+        stripe.lock.lock();
+        try {
+            // Checked under the lock: an invalidation racing with this put either ran
+            // before (and the version check fails) or runs after and removes the entry
+            if (commentRepository.commentsVersion(key.articleId).getSequence() != version.getSequence()) {
+                return;
+            }
+            Entry previous = stripe.entries.put(key, new Entry(version.getSequence(), body));
+            if (previous != null) {
+                stripe.bytes -= previous.body.length;
+            }
+            stripe.bytes += body.length;
+            stripe.keysByArticleId.computeIfAbsent(key.articleId, id -> new HashSet<>()).add(key);
+            evictToSize(stripe);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void invalidate(long articleId) {
+        Stripe stripe = stripeOf(articleId);
+        stripe.lock.lock();
+        try {
+            Set<Key> keys = stripe.keysByArticleId.remove(articleId);
+            if (keys == null) {
+                return;
+            }
+            for (Key key : keys) {
+                Entry entry = stripe.entries.remove(key);
+                if (entry != null) {
+                    stripe.bytes -= entry.body.length;
+                    invalidations.increment();
+                }
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private Stripe stripeOf(long articleId) {
+        return stripes[Math.floorMod(Long.hashCode(articleId), stripes.length)];
+    }
+
+    private void evictToSize(Stripe stripe) {
+        Iterator<Map.Entry<Key, Entry>> eldest = stripe.entries.entrySet().iterator();
+        while (stripe.bytes > stripe.maxBytes && eldest.hasNext()) {
+            Map.Entry<Key, Entry> evicted = eldest.next();
+            eldest.remove();
+            stripe.bytes -= evicted.getValue().body.length;
+            stripe.keysByArticleId.computeIfPresent(evicted.getKey().articleId, (id, keys) -> {
+                keys.remove(evicted.getKey());
+                return keys.isEmpty() ? null : keys;
+            });
+            sizeEvictions.increment();
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.entries.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    long bytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                bytes += stripe.bytes;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Identifies one rendering of an article's comments: the article, the request parameters
+     * that select and order the page, and the API version.
+     */
+    public static final class Key {
+        private final long articleId;
+        private final String query;
+        private final String apiVersion;
+
+        public Key(long articleId, String query, String apiVersion) {
+            this.articleId = articleId;
+            this.query = query;
+            this.apiVersion = apiVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            return articleId == that.articleId && query.equals(that.query) && Objects.equals(apiVersion, that.apiVersion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(articleId, query, apiVersion);
+        }
+    }
+
+    /**
+     * The pages of the articles that hash to one stripe, in LRU order, guarded by its lock.
+     */
+    private static final class Stripe {
+        private final long maxBytes;
+        // A single page may take at most this much, so one huge page cannot flush the whole stripe
+        private final long maxEntryBytes;
+        private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+        private final Map<Long, Set<Key>> keysByArticleId = new HashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private long bytes;
+
+        private Stripe(long maxBytes) {
+            this.maxBytes = maxBytes;
+            this.maxEntryBytes = maxBytes / 8;
+        }
+    }
+
+    private static final class Entry {
+        private final long sequence;
+        private final byte[] body;
+
+        private Entry(long sequence, byte[] body) {
+            this.sequence = sequence;
+            this.body = body;
+        }
+    }
+}
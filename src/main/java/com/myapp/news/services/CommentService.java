@@ -1,56 +1,129 @@
 package com.myapp.news.services;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.myapp.news.dtos.Comment;
-import org.springframework.core.io.ClassPathResource;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.StoredComment;
+import com.myapp.news.repositories.UserRepository;
 import org.springframework.stereotype.Service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 @Service
 public class CommentService {
 
-    private final ObjectMapper objectMapper;
+    private final CommentRepository commentRepository;
+    private final ReactionService reactionService;
+    private final UserRepository userRepository;
 
-    public CommentService(ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
+    public CommentService(CommentRepository commentRepository, ReactionService reactionService,
+                          UserRepository userRepository) {
+        this.commentRepository = commentRepository;
+        this.reactionService = reactionService;
+        this.userRepository = userRepository;
     }
 
-    public List<Comment> getCommentsByArticleId(long newsArticleId, int page, int pageSize) throws IOException {
-        // Load comments from the JSON file in resources
-        List<Comment> allComments = objectMapper.readValue(
-                new ClassPathResource("comments.json").getFile(),
-                new TypeReference<List<Comment>>() {});
+    /**
+     * One page of an article's comments, newest first, matching the article comments endpoint.
+     */
+    public List<Comment> getCommentsByArticleId(long newsArticleId, int page, int pageSize) {
+        if (page < 1 || pageSize < 1) {
+            return Collections.emptyList();
+        }
 
-        // Filter comments by newsArticleId
-        List<Comment> filteredComments = allComments.stream()
-                .filter(comment -> comment.getNewsArticleId() == newsArticleId)
-                .collect(Collectors.toList());
+        // The article index is kept sorted, so only the requested slice is visited
+        long offset = (long) (page - 1) * pageSize;
+        return toResponses(commentRepository.findByArticleId(newsArticleId, offset, pageSize));
+    }
 
-        // Calculate pagination boundaries
-        int startIndex = (page - 1) * pageSize;
-        int endIndex = page * pageSize;
+    /**
+     * The stored comment as the API shows it: a DTO with its author joined from the user store
+     * and its unflushed reactions merged in.
+     */
+    public Comment toResponse(StoredComment comment) {
+        Comment response = comment.toComment();
+        if (comment.getAuthorId() != null) {
+            response.setAuthor(userRepository.findById(comment.getAuthorId()).orElse(null));
+        }
+        response.setReactions(reactionService.reactionsOf(comment));
+        return response;
+    }
 
-        // Ensure that startIndex and endIndex are within valid bounds
-        int totalComments = filteredComments.size();
-        startIndex = Math.min(startIndex, totalComments);
-        endIndex = Math.min(endIndex, totalComments);
+    /**
+     * {@link #toResponse(StoredComment)} for each comment.
+     */
+    public List<Comment> toResponses(List<StoredComment> comments) {
+        List<Comment> responses = new ArrayList<>(comments.size());
+        for (StoredComment comment : comments) {
+            responses.add(toResponse(comment));
+        }
+        return responses;
+    }
 
-        // Ensure that startIndex is less than or equal to endIndex
-        if (startIndex > endIndex) {
-            return Collections.emptyList(); // Return an empty list or handle the error as needed
+    /**
+     * The comments as a threaded view shows them: responses carrying their number of direct
+     * replies and, newest first, up to {@code inlineReplies} of those replies.
+     * Only the inlined replies are read, never the rest of the thread.
+     */
+    public List<Comment> withReplies(List<StoredComment> comments, int inlineReplies) {
+        List<Comment> views = new ArrayList<>(comments.size());
+        for (StoredComment comment : comments) {
+            Comment view = toResponse(comment);
+            view.setReplyCount(commentRepository.countReplies(comment.getCommentId()));
+            if (inlineReplies > 0 && view.getReplyCount() > 0) {
+                view.setReplies(withReplies(commentRepository.findRepliesAfter(comment.getCommentId(), null, inlineReplies), 0));
+            }
+            views.add(view);
         }
+        return views;
+    }
 
-        // Apply sorting by commentedOn date
-        filteredComments.sort((c1, c2) -> c1.getCommentedOn().compareTo(c2.getCommentedOn()));
+    /**
+     * Why the comment cannot be created, or null when it can: it needs a text, and its parent and
+     * author, when it names them, must exist. Every way of creating comments checks them with this.
+     */
+    public String checkNew(Comment comment) {
+        if (comment == null || comment.getText() == null) {
+            return "Comment text is missing";
+        }
+        String error = checkParent(comment);
+        return error != null ? error : checkAuthor(comment);
+    }
+
+    /**
+     * Why the comment cannot be stored as a reply, or null when it is top-level or its parent
+     * is a comment on the same article.
+     */
+    public String checkParent(Comment comment) {
+        if (comment.getParentCommentId() == null) {
+            return null;
+        }
+        Optional<StoredComment> parent = commentRepository.findById(comment.getParentCommentId());
+        if (parent.isEmpty()) {
+            return "Parent comment " + comment.getParentCommentId() + " does not exist";
+        }
+        if (parent.get().getNewsArticleId() != comment.getNewsArticleId()) {
+            return "Parent comment " + comment.getParentCommentId() + " belongs to another article";
+        }
+        return null;
+    }
 
-        // Paginate and return the comments
-        return filteredComments.subList(startIndex, endIndex);
+    /**
+     * Why the comment cannot be stored under its author, or null when it has none or its author
+     * is an existing user. Comments name their author by userId only; posting a comment never
+     * creates or changes a user.
+     */
+    public String checkAuthor(Comment comment) {
+        if (comment.getAuthor() == null) {
+            return null;
+        }
+        long authorId = comment.getAuthor().getUserId();
+        if (userRepository.findById(authorId).isEmpty()) {
+            return "Author " + authorId + " does not exist";
+        }
+        return null;
     }
 
 }
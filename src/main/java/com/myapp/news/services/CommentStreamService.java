@@ -0,0 +1,501 @@
+package com.myapp.news.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.StoredComment;
+import com.myapp.news.utils.VirtualThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pushes comment changes to Server-Sent Event subscribers of an article. Connections are held
+ * by the servlet container's async support, so an idle subscriber costs a socket and a small
+ * buffer but no thread; a few sender threads write the pending events of all subscribers.
+ *
+ * <p>Each subscriber buffers at most {@code comments.stream.buffer.size} comments. Changes to a
+ * comment that is already buffered are coalesced into one event carrying its latest state. When a
+ * slow subscriber's buffer overflows, its events are dropped and it is sent a single {@code resync}
+ * event instead, after which it should reload the comments through the regular endpoints.
+ * Event ids are the article's comment ETags, so a reconnecting client that missed changes is
+ * told to resync as well.
+ *
+ * <p>Writes to a client block while its socket is full. A subscriber whose write has been blocked
+ * for longer than {@code comments.stream.write.timeout.ms} is dropped, and the platform sender
+ * pool gets an extra thread for as long as that write holds on to its thread, so clients that
+ * stop reading never hold up the events of the others. The stuck write ends with the container's
+ * socket write timeout, after which the connection is closed.
+ */
+@Slf4j
+@Service
+public class CommentStreamService {
+
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String DELETED = "deleted";
+    public static final String REACTIONS = "reactions";
+    public static final String RESYNC = "resync";
+
+    private final CommentRepository commentRepository;
+    private final CommentService commentService;
+    private final ObjectMapper objectMapper;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final long timeoutMillis;
+    private final long writeTimeoutNanos;
+    private final ExecutorService senders;
+    // The platform sender pool, null when every send runs on its own virtual thread
+    private final ThreadPoolExecutor platformSenders;
+    private final ReentrantLock sendersLock = new ReentrantLock();
+
+    private final Map<Long, Set<Subscriber>> subscribersByArticleId = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    private final Counter sentEvents;
+    private final Counter resyncs;
+    private final Counter stalls;
+
+    public CommentStreamService(CommentRepository commentRepository, CommentService commentService,
+                                ObjectMapper objectMapper, MeterRegistry registry,
+                                @Value("${comments.stream.buffer.size}") int bufferSize,
+                                @Value("${comments.stream.max.subscribers}") int maxSubscribers,
+                                @Value("${comments.stream.timeout.ms}") long timeoutMillis,
+                                @Value("${comments.stream.write.timeout.ms}") long writeTimeoutMillis,
+                                @Value("${comments.stream.sender.threads}") int senderThreads,
+                                @Value("${news.virtual-threads.enabled:false}") boolean virtualThreads) {
+        this.commentRepository = commentRepository;
+        this.commentService = commentService;
+        this.objectMapper = objectMapper;
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = timeoutMillis;
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        // A send blocks while a slow client's socket is full, which virtual threads make cheap
+        if (virtualThreads) {
+            this.platformSenders = null;
+            this.senders = VirtualThreads.newVirtualThreadPerTaskExecutor();
+        } else {
+            this.platformSenders = new ThreadPoolExecutor(senderThreads, senderThreads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "comment-stream-sender");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            this.senders = platformSenders;
+        }
+
+        Gauge.builder("news.comments.stream.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open comment stream connections")
+                .register(registry);
+        sentEvents = Counter.builder("news.comments.stream.events")
+                .description("Comment events sent to stream subscribers")
+                .register(registry);
+        resyncs = Counter.builder("news.comments.stream.resyncs")
+                .description("Subscriber buffers dropped because the subscriber fell behind")
+                .register(registry);
+        stalls = Counter.builder("news.comments.stream.stalls")
+                .description("Subscribers dropped because a write to them did not finish in time")
+                .register(registry);
+
+        commentRepository.onCommentChanged(this::commentChanged);
+    }
+
+    /**
+     * Opens a stream of the article's comment changes, or returns null when the node already
+     * holds the maximum number of subscribers.
+     */
+    public SseEmitter subscribe(long articleId, String lastEventId) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return null;
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(articleId, emitter);
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+        subscribersByArticleId.computeIfAbsent(articleId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+
+        // The first write commits the response; a client that missed changes starts with a resync
+        String currentEventId = commentRepository.commentsVersion(articleId).toETag();
+        if (lastEventId != null && !lastEventId.equals(currentEventId)) {
+            subscriber.overflow();
+        } else {
+            subscriber.heartbeat();
+        }
+        return emitter;
+    }
+
+    /**
+     * Sends a heartbeat to the subscribers that were sent nothing since the previous one, so that
+     * proxies keep idle connections open and dead connections are noticed.
+     */
+    @Scheduled(fixedDelayString = "${comments.stream.heartbeat.interval.ms}")
+    public void sendHeartbeats() {
+        for (Set<Subscriber> subscribers : subscribersByArticleId.values()) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.heartbeat();
+            }
+        }
+    }
+
+    /**
+     * Drops the subscribers whose current write has been blocked for longer than the write timeout.
+     */
+    @Scheduled(fixedDelayString = "${comments.stream.write.timeout.ms}")
+    public void dropStalledSubscribers() {
+        long now = System.nanoTime();
+        for (Set<Subscriber> subscribers : subscribersByArticleId.values()) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.dropIfStalled(now);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Set<Subscriber> subscribers : subscribersByArticleId.values()) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.emitter.complete();
+            }
+        }
+        senders.shutdown();
+    }
+
+    /**
+     * Runs on the writing thread, so it only hands the event to the subscribers' buffers. An undone
+     * change is sent like any other, as the subscribers have already been told about it.
+     */
+    private void commentChanged(CommentRepository.ChangeKind kind, StoredComment previous, StoredComment current) {
+        StoredComment comment = current != null ? current : previous;
+        Set<Subscriber> subscribers = subscribersByArticleId.get(comment.getNewsArticleId());
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+
+        String type;
+        if (previous == null) {
+            type = CREATED;
+        } else if (current == null) {
+            type = DELETED;
+        } else if (!Objects.equals(previous.getText(), current.getText())) {
+            type = UPDATED;
+        } else {
+            type = REACTIONS;
+        }
+        // Shared by all subscribers, so the comment is rendered once however many there are
+        StreamEvent event = new StreamEvent(type, comment,
+                commentRepository.commentsVersion(comment.getNewsArticleId()).toETag());
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event);
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (subscriber.markClosed()) {
+            subscriberCount.decrementAndGet();
+            subscribersByArticleId.computeIfPresent(subscriber.articleId, (id, subscribers) -> {
+                subscribers.remove(subscriber);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+    }
+
+    /**
+     * Lends the platform sender pool a thread for each write that is stuck on a stalled client.
+     */
+    private void resizeSenders(int delta) {
+        if (platformSenders == null) {
+            return;
+        }
+        sendersLock.lock();
+        try {
+            // The core size may never exceed the maximum, so grow the maximum first and shrink it last
+            int size = platformSenders.getMaximumPoolSize() + delta;
+            if (delta > 0) {
+                platformSenders.setMaximumPoolSize(size);
+                platformSenders.setCorePoolSize(size);
+            } else {
+                platformSenders.setCorePoolSize(size);
+                platformSenders.setMaximumPoolSize(size);
+            }
+        } finally {
+            sendersLock.unlock();
+        }
+    }
+
+    /**
+     * The later of two buffered changes to the same comment, as the one event that replaces both.
+     * Null when the comment was created and deleted before the subscriber saw either.
+     */
+    private static StreamEvent coalesce(StreamEvent earlier, StreamEvent later) {
+        if (earlier == null) {
+            return later;
+        }
+        if (earlier.type.equals(CREATED)) {
+            return later.type.equals(DELETED) ? null : later.as(CREATED);
+        }
+        if (earlier.type.equals(UPDATED) && later.type.equals(REACTIONS)) {
+            return later.as(UPDATED);
+        }
+        return later;
+    }
+
+    private final class Subscriber {
+        private final long articleId;
+        private final SseEmitter emitter;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        // Pending events by comment id, oldest change first
+        private final LinkedHashMap<Long, StreamEvent> pending = new LinkedHashMap<>();
+        private boolean overflowed;
+        private boolean heartbeatDue;
+        private boolean sentSinceHeartbeat;
+        private boolean sending;
+        private boolean closed;
+        // System.nanoTime() when the write in progress started, 0 when none is
+        private volatile long writeStartedAt;
+        private boolean stalled;
+
+        private Subscriber(long articleId, SseEmitter emitter) {
+            this.articleId = articleId;
+            this.emitter = emitter;
+        }
+
+        private void offer(StreamEvent event) {
+            lock.lock();
+            try {
+                if (closed || overflowed) {
+                    return;
+                }
+                StreamEvent coalesced = coalesce(pending.remove(event.commentId), event);
+                if (coalesced != null) {
+                    pending.put(event.commentId, coalesced);
+                }
+                if (pending.size() > bufferSize) {
+                    pending.clear();
+                    overflowed = true;
+                    resyncs.increment();
+                }
+                scheduleSend();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void overflow() {
+            lock.lock();
+            try {
+                pending.clear();
+                overflowed = true;
+                scheduleSend();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void heartbeat() {
+            lock.lock();
+            try {
+                if (!sentSinceHeartbeat) {
+                    heartbeatDue = true;
+                    scheduleSend();
+                }
+                sentSinceHeartbeat = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Returns whether the subscriber was still open.
+         */
+        private boolean markClosed() {
+            lock.lock();
+            try {
+                boolean wasOpen = !closed;
+                closed = true;
+                pending.clear();
+                return wasOpen;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Drops the subscriber if its write in progress is overdue. The emitter cannot be completed
+         * while the write holds it, so the sending thread does that once the write returns.
+         */
+        private void dropIfStalled(long now) {
+            long startedAt = writeStartedAt;
+            if (startedAt == 0 || now - startedAt < writeTimeoutNanos) {
+                return;
+            }
+            lock.lock();
+            try {
+                if (stalled || writeStartedAt != startedAt) {
+                    return;
+                }
+                stalled = true;
+            } finally {
+                lock.unlock();
+            }
+            stalls.increment();
+            unsubscribe(this);
+            resizeSenders(1);
+        }
+
+        // Called with the lock held. At most one send task per subscriber is queued or running.
+        private void scheduleSend() {
+            if (!sending && !closed) {
+                sending = true;
+                senders.execute(this::send);
+            }
+        }
+
+        private void send() {
+            while (true) {
+                List<StreamEvent> batch;
+                boolean resync;
+                boolean heartbeatOnly;
+                boolean dropped;
+                lock.lock();
+                try {
+                    // Checked under the lock, as the watchdog may drop the subscriber just as a write ends
+                    dropped = stalled;
+                    resync = overflowed;
+                    batch = resync ? List.of() : new ArrayList<>(pending.values());
+                    heartbeatOnly = !resync && batch.isEmpty() && heartbeatDue;
+                    if (!dropped && (closed || (!resync && batch.isEmpty() && !heartbeatDue))) {
+                        sending = false;
+                        return;
+                    }
+                    pending.clear();
+                    overflowed = false;
+                    heartbeatDue = false;
+                    sentSinceHeartbeat = true;
+                } finally {
+                    lock.unlock();
+                }
+                if (dropped) {
+                    stop(new IOException("Comment stream write timed out"));
+                    return;
+                }
+
+                try {
+                    if (resync) {
+                        write(SseEmitter.event()
+                                .id(commentRepository.commentsVersion(articleId).toETag())
+                                .name(RESYNC)
+                                .data("{}"));
+                    } else if (heartbeatOnly) {
+                        write(SseEmitter.event().comment("heartbeat"));
+                    }
+                    for (StreamEvent event : batch) {
+                        String data = event.render();
+                        if (data == null) {
+                            continue;
+                        }
+                        write(SseEmitter.event().id(event.eventId).name(event.type).data(data));
+                        sentEvents.increment();
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // The client went away or the emitter completed; stop sending
+                    stop(e);
+                    return;
+                }
+            }
+        }
+
+        private void write(SseEmitter.SseEventBuilder event) throws IOException {
+            writeStartedAt = System.nanoTime();
+            try {
+                emitter.send(event);
+            } finally {
+                writeStartedAt = 0;
+            }
+        }
+
+        private void stop(Exception cause) {
+            emitter.completeWithError(cause);
+            unsubscribe(this);
+            boolean lentThread;
+            lock.lock();
+            try {
+                sending = false;
+                lentThread = stalled;
+            } finally {
+                lock.unlock();
+            }
+            if (lentThread) {
+                // This thread is free again, so the pool gives back the one it was lent
+                resizeSenders(-1);
+            }
+        }
+    }
+
+    private final class StreamEvent {
+        private final String type;
+        private final long commentId;
+        private final StoredComment comment;
+        private final String eventId;
+        private volatile String data;
+        private volatile boolean unrenderable;
+
+        private StreamEvent(String type, StoredComment comment, String eventId) {
+            this.type = type;
+            this.commentId = comment.getCommentId();
+            this.comment = comment;
+            this.eventId = eventId;
+        }
+
+        private StreamEvent as(String newType) {
+            return newType.equals(type) ? this : new StreamEvent(newType, comment, eventId);
+        }
+
+        /**
+         * The event payload, rendered on first use: the comment as the API shows it, or only
+         * its ids once it is deleted. Null when the comment cannot be rendered; that is a bug
+         * on our side, not the subscriber's, so the event is skipped and the subscriber kept.
+         */
+        private String render() {
+            String rendered = data;
+            if (rendered == null && !unrenderable) {
+                try {
+                    rendered = type.equals(DELETED)
+                            ? objectMapper.writeValueAsString(Map.of("commentId", commentId, "newsArticleId", comment.getNewsArticleId()))
+                            : objectMapper.writeValueAsString(commentService.toResponse(comment));
+                    data = rendered;
+                } catch (JsonProcessingException | RuntimeException e) {
+                    // Logged once, however many subscribers share the event
+                    unrenderable = true;
+                    log.error("Could not render the {} event of comment {}; skipping it", type, commentId, e);
+                }
+            }
+            return rendered;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.myapp.news.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.myapp.news.dtos.NewsArticle;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.NewsArticleRepository;
+import com.myapp.news.repositories.StoredComment;
+import com.myapp.news.repositories.UserRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Full dumps as newline-delimited JSON. Records are read from the live stores one at a time and
+ * written through a single streaming generator, so memory use does not depend on the size of the
+ * dump and the first records are sent before the last ones are read. A dump is not a snapshot:
+ * records changed while it is written may or may not be in it.
+ */
+@Service
+public class ExportService {
+
+    private static final int GZIP_BUFFER_SIZE = 16 * 1024;
+
+    private final CommentRepository commentRepository;
+    private final NewsArticleRepository newsArticleRepository;
+    private final UserRepository userRepository;
+    private final CommentService commentService;
+    private final ObjectWriter writer;
+
+    public ExportService(CommentRepository commentRepository, NewsArticleRepository newsArticleRepository,
+                         UserRepository userRepository, CommentService commentService, ObjectMapper objectMapper) {
+        this.commentRepository = commentRepository;
+        this.newsArticleRepository = newsArticleRepository;
+        this.userRepository = userRepository;
+        this.commentService = commentService;
+        // One record per line; the response stream is flushed by its own buffer, not per record
+        this.writer = objectMapper.writer()
+                .without(SerializationFeature.INDENT_OUTPUT)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .withRootValueSeparator("\n");
+    }
+
+    /**
+     * Comments as the API shows them, optionally only an article's (then newest first) and only
+     * those posted in {@code [from, to)}.
+     */
+    public StreamingResponseBody exportComments(Long articleId, Instant from, Instant to, boolean gzip) {
+        return out -> {
+            Iterator<StoredComment> comments = articleId == null
+                    ? commentRepository.iterateAll()
+                    : commentRepository.iterateByArticleId(articleId);
+            write(out, gzip, comments, comment -> inRange(comment.getCommentedOn(), from, to), commentService::toResponse);
+        };
+    }
+
+    /**
+     * Articles, optionally only those posted in {@code [from, to)}.
+     */
+    public StreamingResponseBody exportArticles(Instant from, Instant to, boolean gzip) {
+        return out -> write(out, gzip, newsArticleRepository.iterateAll(),
+                article -> (from == null && to == null) || postedInRange(article, from, to), Function.identity());
+    }
+
+    public StreamingResponseBody exportUsers(boolean gzip) {
+        return out -> write(out, gzip, userRepository.iterateAll(), user -> true, Function.identity());
+    }
+
+    private <T> void write(OutputStream out, boolean gzip, Iterator<T> records,
+                           Predicate<T> filter, Function<T, ?> render) throws IOException {
+        GZIPOutputStream gzipOut = gzip ? new GZIPOutputStream(out, GZIP_BUFFER_SIZE) : null;
+        OutputStream target = gzip ? gzipOut : out;
+
+        boolean written = false;
+        try (SequenceWriter sequence = writer.writeValues(target)) {
+            while (records.hasNext()) {
+                T record = records.next();
+                if (filter.test(record)) {
+                    sequence.write(render.apply(record));
+                    written = true;
+                }
+            }
+        }
+        // The separator only goes between records; NDJSON ends every line
+        if (written) {
+            target.write('\n');
+        }
+        if (gzipOut != null) {
+            gzipOut.finish();
+        }
+        out.flush();
+    }
+
+    private static boolean postedInRange(NewsArticle article, Instant from, Instant to) {
+        return article.getPostedOn() != null && inRange(article.getPostedOn().getTime(), from, to);
+    }
+
+    private static boolean inRange(long epochMillis, Instant from, Instant to) {
+        return (from == null || epochMillis >= from.toEpochMilli()) && (to == null || epochMillis < to.toEpochMilli());
+    }
+}
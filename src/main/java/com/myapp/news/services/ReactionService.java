@@ -0,0 +1,215 @@
+package com.myapp.news.services;
+
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.StoredComment;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Counts reactions in memory and flushes them to the comment store in periodic batches.
+ * Increments only touch a per-comment, per-type {@link LongAdder}, so concurrent reactions
+ * to the same comment do not contend. At most one flush interval of reactions is lost on a crash.
+ * Unflushed reactions show in every response right away, but they only change the version of
+ * the article's comment stream once they are flushed. A busy article's cached pages are therefore
+ * dropped once per flush rather than on every reaction, at the price of cached pages and 304s
+ * showing reaction counts up to one flush interval old. While a flush is being written, its counts
+ * are served from the batch until the comments carry them, so the counts never dip mid-flush.
+ * Only the configured {@code reactions.types} are accepted, so requests cannot add reaction types:
+ * every type gets a permanent slot in the comments that use it.
+ */
+@Slf4j
+@Service
+public class ReactionService {
+
+    private final CommentRepository commentRepository;
+    private final Set<String> types = new LinkedHashSet<>();
+
+    private final Map<Long, PendingReactions> pendingByCommentId = new ConcurrentHashMap<>();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // Counters removed from the map on the previous flush; drained once more to catch
+    // increments from threads that looked them up just before removal
+    private List<PendingReactions> retired = new ArrayList<>();
+
+    // The batch of the flush in progress, by comment id; replaced only under the write lock of handoff
+    private volatile Map<Long, FlushingReactions> flushing = Map.of();
+    // Lets reactionsOf see the counters and the flushing batch either before or after a drain, never halfway
+    private final StampedLock handoff = new StampedLock();
+
+    public ReactionService(CommentRepository commentRepository, @Value("${reactions.types}") String[] types) {
+        this.commentRepository = commentRepository;
+        for (String type : types) {
+            this.types.add(type.trim());
+        }
+    }
+
+    public boolean isValidType(String type) {
+        return type != null && types.contains(type);
+    }
+
+    public void increment(StoredComment comment, String type) {
+        pendingByCommentId
+                .computeIfAbsent(comment.getCommentId(), id -> new PendingReactions(id))
+                .counter(type)
+                .increment();
+    }
+
+    /**
+     * The comment's persisted reactions plus the ones that have not been flushed yet.
+     */
+    public Map<String, Long> reactionsOf(StoredComment comment) {
+        Map<String, Long> reactions = comment.reactions();
+        long stamp = handoff.tryOptimisticRead();
+        Map<String, Long> unflushed = unflushedOf(comment);
+        if (!handoff.validate(stamp)) {
+            // A flush drained the counters meanwhile
+            stamp = handoff.readLock();
+            try {
+                unflushed = unflushedOf(comment);
+            } finally {
+                handoff.unlockRead(stamp);
+            }
+        }
+        unflushed.forEach((type, count) -> reactions.merge(type, count, Long::sum));
+        return reactions;
+    }
+
+    @Scheduled(fixedDelayString = "${reactions.flush.interval.ms}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<Long, Map<String, Long>> batch = new HashMap<>();
+            long stamp = handoff.writeLock();
+            try {
+                for (PendingReactions pending : retired) {
+                    pending.drainInto(batch);
+                }
+
+                List<PendingReactions> nowRetired = new ArrayList<>();
+                pendingByCommentId.forEach((commentId, pending) -> {
+                    if (!pending.drainInto(batch) && pendingByCommentId.remove(commentId, pending)) {
+                        // Idle for a whole interval; stop tracking it
+                        nowRetired.add(pending);
+                    }
+                });
+                retired = nowRetired;
+                flushing = flushingOf(batch);
+            } finally {
+                handoff.unlockWrite(stamp);
+            }
+
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                commentRepository.addReactions(batch);
+                flushing = Map.of();
+            } catch (IOException e) {
+                log.error("Could not persist reactions for {} comments, retrying on the next flush", batch.size(), e);
+                stamp = handoff.writeLock();
+                try {
+                    batch.forEach((commentId, reactions) -> reactions.forEach((type, count) ->
+                            pendingByCommentId.computeIfAbsent(commentId, id -> new PendingReactions(id)).counter(type).add(count)));
+                    flushing = Map.of();
+                } finally {
+                    handoff.unlockWrite(stamp);
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        // The second pass picks up counters retired by the first
+        flush();
+        flush();
+    }
+
+    private Map<String, Long> unflushedOf(StoredComment comment) {
+        Map<String, Long> unflushed = new HashMap<>();
+        FlushingReactions inFlight = flushing.get(comment.getCommentId());
+        // Only flushes change reactions, so a comment with another total already carries the batch
+        if (inFlight != null && inFlight.persistedTotal == comment.totalReactions()) {
+            unflushed.putAll(inFlight.counts);
+        }
+        PendingReactions pending = pendingByCommentId.get(comment.getCommentId());
+        if (pending != null) {
+            pending.counters.forEach((type, counter) -> {
+                long count = counter.sum();
+                if (count != 0) {
+                    unflushed.merge(type, count, Long::sum);
+                }
+            });
+        }
+        return unflushed;
+    }
+
+    private Map<Long, FlushingReactions> flushingOf(Map<Long, Map<String, Long>> batch) {
+        if (batch.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, FlushingReactions> inFlight = new HashMap<>();
+        batch.forEach((commentId, counts) -> commentRepository.findById(commentId).ifPresent(comment ->
+                inFlight.put(commentId, new FlushingReactions(comment.totalReactions(), counts))));
+        return inFlight;
+    }
+
+    /**
+     * Counts being written by the current flush, and the total of the comment they are added to.
+     */
+    private static final class FlushingReactions {
+        private final long persistedTotal;
+        private final Map<String, Long> counts;
+
+        private FlushingReactions(long persistedTotal, Map<String, Long> counts) {
+            this.persistedTotal = persistedTotal;
+            this.counts = counts;
+        }
+    }
+
+    private static final class PendingReactions {
+        private final long commentId;
+        private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+        private PendingReactions(long commentId) {
+            this.commentId = commentId;
+        }
+
+        private LongAdder counter(String type) {
+            return counters.computeIfAbsent(type, t -> new LongAdder());
+        }
+
+        /**
+         * Moves the pending counts into the batch. Returns whether there was anything to move.
+         */
+        private boolean drainInto(Map<Long, Map<String, Long>> batch) {
+            boolean drained = false;
+            for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+                long count = entry.getValue().sumThenReset();
+                if (count != 0) {
+                    batch.computeIfAbsent(commentId, id -> new HashMap<>()).merge(entry.getKey(), count, Long::sum);
+                    drained = true;
+                }
+            }
+            return drained;
+        }
+    }
+}
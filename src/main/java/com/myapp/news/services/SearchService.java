@@ -0,0 +1,380 @@
+package com.myapp.news.services;
+
+import com.myapp.news.dtos.NewsArticle;
+import com.myapp.news.dtos.SearchHit;
+import com.myapp.news.dtos.SearchResults;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.NewsArticleRepository;
+import com.myapp.news.repositories.StoredComment;
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over article titles and contents and comment texts, kept current
+ * through the stores' change listeners. Each term maps to a posting list of primitive arrays
+ * sorted by document number, so a posting costs eight bytes. Queries walk the posting lists of
+ * their terms side by side and keep only the best hits in a bounded heap, scored with BM25;
+ * title terms count three times.
+ */
+@Service
+public class SearchService {
+
+    public static final String ARTICLE = "article";
+    public static final String COMMENT = "comment";
+
+    private static final byte ARTICLE_DOC = 1;
+    private static final byte COMMENT_DOC = 2;
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final Set<String> STOP_WORDS = Set.of("a", "an", "and", "are", "as", "at", "be", "by", "for",
+            "from", "has", "in", "is", "it", "of", "on", "or", "that", "the", "this", "to", "was", "were", "with");
+    private static final int MAX_TOKEN_LENGTH = 40;
+    private static final int MAX_QUERY_TERMS = 16;
+    private static final int TITLE_WEIGHT = 3;
+
+    // BM25 parameters
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final NewsArticleRepository newsArticleRepository;
+    private final CommentRepository commentRepository;
+    private final CommentService commentService;
+
+    private final Map<String, Postings> postingsByTerm = new HashMap<>();
+    private final Map<Long, Integer> articleDocs = new HashMap<>();
+    private final Map<Long, Integer> commentDocs = new HashMap<>();
+
+    // Per document number; numbers of deleted documents are reused
+    private byte[] docTypes = new byte[1024];
+    private long[] docEntityIds = new long[1024];
+    private int[] docLengths = new int[1024];
+    private int nextDocId;
+    private int[] freeDocIds = new int[16];
+    private int freeDocCount;
+    private int liveDocs;
+    private long totalLength;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public SearchService(NewsArticleRepository newsArticleRepository, CommentRepository commentRepository,
+                         CommentService commentService) {
+        this.newsArticleRepository = newsArticleRepository;
+        this.commentRepository = commentRepository;
+        this.commentService = commentService;
+    }
+
+    @PostConstruct
+    public void load() {
+        newsArticleRepository.onArticleChanged(this::articleChanged);
+        commentRepository.onCommentChanged(this::commentChanged);
+        for (NewsArticle article : newsArticleRepository.findAll()) {
+            articleChanged(null, article);
+        }
+        for (StoredComment comment : commentRepository.findAll()) {
+            commentChanged(CommentRepository.ChangeKind.CREATED, null, comment);
+        }
+    }
+
+    /**
+     * The hits ranked {@code offset} to {@code offset + limit}, best first, for documents matching
+     * any of the query's terms. {@code type} limits the hits to articles or comments when not null.
+     */
+    public SearchResults search(String query, String type, int offset, int limit) {
+        List<String> terms = new ArrayList<>(queryTerms(query));
+        byte typeFilter = ARTICLE.equals(type) ? ARTICLE_DOC : COMMENT.equals(type) ? COMMENT_DOC : 0;
+
+        List<ScoredDoc> ranked = new ArrayList<>();
+        int totalHits = 0;
+        lock.readLock().lock();
+        try {
+            terms.removeIf(term -> !postingsByTerm.containsKey(term));
+            int termCount = terms.size();
+            Postings[] postings = new Postings[termCount];
+            double[] idf = new double[termCount];
+            for (int i = 0; i < termCount; i++) {
+                postings[i] = postingsByTerm.get(terms.get(i));
+                idf[i] = Math.log(1 + (liveDocs - postings[i].size + 0.5) / (postings[i].size + 0.5));
+            }
+            double averageLength = liveDocs == 0 ? 1 : (double) totalLength / liveDocs;
+
+            PriorityQueue<ScoredDoc> best = new PriorityQueue<>(ScoredDoc.WORST_FIRST);
+            int keep = offset + limit;
+            int[] positions = new int[termCount];
+            while (true) {
+                // The next document on any of the posting lists
+                int docId = Integer.MAX_VALUE;
+                for (int i = 0; i < termCount; i++) {
+                    if (positions[i] < postings[i].size) {
+                        docId = Math.min(docId, postings[i].docIds[positions[i]]);
+                    }
+                }
+                if (docId == Integer.MAX_VALUE) {
+                    break;
+                }
+
+                double score = 0;
+                double lengthNorm = K1 * (1 - B + B * docLengths[docId] / averageLength);
+                for (int i = 0; i < termCount; i++) {
+                    if (positions[i] < postings[i].size && postings[i].docIds[positions[i]] == docId) {
+                        int frequency = postings[i].frequencies[positions[i]++];
+                        score += idf[i] * frequency * (K1 + 1) / (frequency + lengthNorm);
+                    }
+                }
+                if (typeFilter != 0 && docTypes[docId] != typeFilter) {
+                    continue;
+                }
+
+                totalHits++;
+                ScoredDoc scored = new ScoredDoc(docId, docTypes[docId], docEntityIds[docId], score);
+                if (best.size() < keep) {
+                    best.add(scored);
+                } else if (ScoredDoc.WORST_FIRST.compare(scored, best.peek()) > 0) {
+                    best.poll();
+                    best.add(scored);
+                }
+            }
+            ranked.addAll(best);
+        } finally {
+            lock.readLock().unlock();
+        }
+        ranked.sort(ScoredDoc.WORST_FIRST.reversed());
+
+        // Documents are loaded outside the lock; ones deleted in the meantime are left out
+        List<SearchHit> hits = new ArrayList<>(limit);
+        for (ScoredDoc scored : ranked.subList(Math.min(offset, ranked.size()), ranked.size())) {
+            SearchHit hit = new SearchHit();
+            hit.setId(scored.entityId);
+            hit.setScore(scored.score);
+            if (scored.type == ARTICLE_DOC) {
+                Optional<NewsArticle> article = newsArticleRepository.findById(scored.entityId);
+                if (article.isEmpty()) {
+                    continue;
+                }
+                hit.setType(ARTICLE);
+                hit.setArticle(article.get());
+            } else {
+                Optional<StoredComment> comment = commentRepository.findById(scored.entityId);
+                if (comment.isEmpty()) {
+                    continue;
+                }
+                hit.setType(COMMENT);
+                hit.setComment(commentService.toResponse(comment.get()));
+            }
+            hits.add(hit);
+        }
+
+        SearchResults results = new SearchResults();
+        results.setQuery(query);
+        results.setTotalHits(totalHits);
+        results.setHits(hits);
+        return results;
+    }
+
+    /**
+     * The distinct terms a query is matched on, at most 16.
+     */
+    public static Set<String> queryTerms(String query) {
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        addTerms(query, 1, frequencies);
+        Set<String> terms = new LinkedHashSet<>();
+        for (String term : frequencies.keySet()) {
+            if (terms.size() == MAX_QUERY_TERMS) {
+                break;
+            }
+            terms.add(term);
+        }
+        return terms;
+    }
+
+    private void articleChanged(NewsArticle previous, NewsArticle current) {
+        if (previous != null && current != null && Objects.equals(previous.getTitle(), current.getTitle())
+                && Objects.equals(previous.getContent(), current.getContent())) {
+            return;
+        }
+        long articleId = current != null ? current.getNewsArticleId() : previous.getNewsArticleId();
+        reindex(articleDocs, ARTICLE_DOC, articleId, articleTerms(previous), articleTerms(current));
+    }
+
+    private void commentChanged(CommentRepository.ChangeKind kind, StoredComment previous, StoredComment current) {
+        // Reactions replace the stored comment too; only a new text matters here
+        if (previous != null && current != null && Objects.equals(previous.getText(), current.getText())) {
+            return;
+        }
+        long commentId = current != null ? current.getCommentId() : previous.getCommentId();
+        reindex(commentDocs, COMMENT_DOC, commentId, commentTerms(previous), commentTerms(current));
+    }
+
+    private void reindex(Map<Long, Integer> docs, byte type, long entityId,
+                         Map<String, Integer> previousTerms, Map<String, Integer> currentTerms) {
+        lock.writeLock().lock();
+        try {
+            Integer docId = docs.get(entityId);
+            if (docId != null && previousTerms != null) {
+                previousTerms.keySet().forEach(term -> {
+                    Postings postings = postingsByTerm.get(term);
+                    if (postings != null && postings.remove(docId) && postings.size == 0) {
+                        postingsByTerm.remove(term);
+                    }
+                });
+                totalLength -= docLengths[docId];
+            }
+
+            if (currentTerms == null) {
+                if (docId != null) {
+                    docs.remove(entityId);
+                    freeDoc(docId);
+                }
+                return;
+            }
+
+            int doc = docId != null ? docId : allocateDoc(type, entityId);
+            docs.put(entityId, doc);
+            int length = 0;
+            for (Map.Entry<String, Integer> term : currentTerms.entrySet()) {
+                postingsByTerm.computeIfAbsent(term.getKey(), t -> new Postings()).put(doc, term.getValue());
+                length += term.getValue();
+            }
+            docLengths[doc] = length;
+            totalLength += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int allocateDoc(byte type, long entityId) {
+        int docId;
+        if (freeDocCount > 0) {
+            docId = freeDocIds[--freeDocCount];
+        } else {
+            docId = nextDocId++;
+            if (docId == docTypes.length) {
+                int capacity = docTypes.length * 2;
+                docTypes = Arrays.copyOf(docTypes, capacity);
+                docEntityIds = Arrays.copyOf(docEntityIds, capacity);
+                docLengths = Arrays.copyOf(docLengths, capacity);
+            }
+        }
+        docTypes[docId] = type;
+        docEntityIds[docId] = entityId;
+        liveDocs++;
+        return docId;
+    }
+
+    private void freeDoc(int docId) {
+        docTypes[docId] = 0;
+        docLengths[docId] = 0;
+        if (freeDocCount == freeDocIds.length) {
+            freeDocIds = Arrays.copyOf(freeDocIds, freeDocCount * 2);
+        }
+        freeDocIds[freeDocCount++] = docId;
+        liveDocs--;
+    }
+
+    private static Map<String, Integer> articleTerms(NewsArticle article) {
+        if (article == null) {
+            return null;
+        }
+        Map<String, Integer> frequencies = new HashMap<>();
+        addTerms(article.getTitle(), TITLE_WEIGHT, frequencies);
+        addTerms(article.getContent(), 1, frequencies);
+        return frequencies;
+    }
+
+    private static Map<String, Integer> commentTerms(StoredComment comment) {
+        if (comment == null) {
+            return null;
+        }
+        Map<String, Integer> frequencies = new HashMap<>();
+        addTerms(comment.getText(), 1, frequencies);
+        return frequencies;
+    }
+
+    private static void addTerms(String text, int weight, Map<String, Integer> frequencies) {
+        if (text == null) {
+            return;
+        }
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (token.length() > 1 && token.length() <= MAX_TOKEN_LENGTH && !STOP_WORDS.contains(token)) {
+                frequencies.merge(token, weight, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Documents containing a term with their (weighted) term frequencies, sorted by document number.
+     */
+    private static final class Postings {
+        private int[] docIds = new int[2];
+        private int[] frequencies = new int[2];
+        private int size;
+
+        private void put(int docId, int frequency) {
+            int index = Arrays.binarySearch(docIds, 0, size, docId);
+            if (index >= 0) {
+                frequencies[index] = frequency;
+                return;
+            }
+            index = -index - 1;
+            if (size == docIds.length) {
+                int capacity = size + (size >> 1) + 1;
+                docIds = Arrays.copyOf(docIds, capacity);
+                frequencies = Arrays.copyOf(frequencies, capacity);
+            }
+            System.arraycopy(docIds, index, docIds, index + 1, size - index);
+            System.arraycopy(frequencies, index, frequencies, index + 1, size - index);
+            docIds[index] = docId;
+            frequencies[index] = frequency;
+            size++;
+        }
+
+        private boolean remove(int docId) {
+            int index = Arrays.binarySearch(docIds, 0, size, docId);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(docIds, index + 1, docIds, index, size - index - 1);
+            System.arraycopy(frequencies, index + 1, frequencies, index, size - index - 1);
+            size--;
+            if (size > 0 && size < docIds.length / 4) {
+                docIds = Arrays.copyOf(docIds, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            return true;
+        }
+    }
+
+    private static final class ScoredDoc {
+        // Lowest score first; on a tie the later document counts as worse
+        private static final Comparator<ScoredDoc> WORST_FIRST = Comparator
+                .comparingDouble((ScoredDoc doc) -> doc.score)
+                .thenComparingInt(doc -> -doc.docId);
+
+        private final int docId;
+        private final byte type;
+        private final long entityId;
+        private final double score;
+
+        private ScoredDoc(int docId, byte type, long entityId, double score) {
+            this.docId = docId;
+            this.type = type;
+            this.entityId = entityId;
+            this.score = score;
+        }
+    }
+}
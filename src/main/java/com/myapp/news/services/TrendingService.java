@@ -0,0 +1,307 @@
+package com.myapp.news.services;
+
+import com.myapp.news.dtos.NewsArticle;
+import com.myapp.news.dtos.TrendingArticle;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.NewsArticleRepository;
+import com.myapp.news.repositories.StoredComment;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ranks articles by recent comment and reaction activity. Every committed comment and every
+ * flushed batch of reactions adds its weight to the article's counter for the current time bucket;
+ * only articles with activity inside the longest window are tracked at all. The top articles of
+ * each window are recomputed from those counters periodically, so a query only copies out the
+ * first entries of a ready ranking.
+ *
+ * <p>Within a window, activity is weighted by {@code 0.5^(age / half-life)}, so of two articles with
+ * the same activity the one whose activity is more recent ranks higher. A half-life of 0 turns
+ * decay off.
+ */
+@Service
+public class TrendingService {
+
+    private static final Comparator<Ranked> BEST_FIRST = Comparator
+            .comparingDouble((Ranked ranked) -> ranked.score).reversed()
+            .thenComparingLong(ranked -> ranked.articleId);
+
+    private final CommentRepository commentRepository;
+    private final NewsArticleRepository newsArticleRepository;
+    private final long bucketMillis;
+    private final int bucketCount;
+    private final double commentWeight;
+    private final double reactionWeight;
+    private final int topSize;
+    // Decay factor by age in buckets, shared by all windows
+    private final double[] decayByAge;
+    private final Map<String, Window> windowsByLabel = new LinkedHashMap<>();
+
+    private final Map<Long, ArticleActivity> activityByArticleId = new ConcurrentHashMap<>();
+
+    public TrendingService(CommentRepository commentRepository, NewsArticleRepository newsArticleRepository,
+                           @Value("${trending.windows}") String[] windows,
+                           @Value("${trending.bucket.seconds}") long bucketSeconds,
+                           @Value("${trending.half-life}") String halfLife,
+                           @Value("${trending.comment.weight}") double commentWeight,
+                           @Value("${trending.reaction.weight}") double reactionWeight,
+                           @Value("${trending.top.size}") int topSize) {
+        this.commentRepository = commentRepository;
+        this.newsArticleRepository = newsArticleRepository;
+        this.bucketMillis = bucketSeconds * 1000;
+        this.commentWeight = commentWeight;
+        this.reactionWeight = reactionWeight;
+        this.topSize = topSize;
+
+        long longest = 0;
+        for (String label : windows) {
+            long millis = parseDuration(label.trim());
+            if (millis < bucketMillis) {
+                throw new IllegalArgumentException("Trending window " + label + " is shorter than a bucket");
+            }
+            windowsByLabel.put(label.trim(), new Window((int) ((millis + bucketMillis - 1) / bucketMillis)));
+            longest = Math.max(longest, millis);
+        }
+        this.bucketCount = (int) ((longest + bucketMillis - 1) / bucketMillis);
+
+        long halfLifeMillis = parseDuration(halfLife.trim());
+        this.decayByAge = new double[bucketCount];
+        for (int age = 0; age < bucketCount; age++) {
+            decayByAge[age] = halfLifeMillis == 0 ? 1 : Math.pow(0.5, (double) age * bucketMillis / halfLifeMillis);
+        }
+    }
+
+    @PostConstruct
+    public void load() {
+        commentRepository.onCommentChanged(this::commentChanged);
+        newsArticleRepository.onArticleChanged((previous, current) -> {
+            if (current == null) {
+                activityByArticleId.remove(previous.getNewsArticleId());
+            }
+        });
+
+        // Seed the windows from the comments' own timestamps; reactions carry none
+        long now = currentBucket();
+        for (Iterator<StoredComment> comments = commentRepository.iterateAll(); comments.hasNext(); ) {
+            StoredComment comment = comments.next();
+            long bucket = comment.getCommentedOn() / bucketMillis;
+            if (bucket <= now && now - bucket < bucketCount) {
+                record(comment.getNewsArticleId(), bucket, commentWeight);
+            }
+        }
+        refresh();
+    }
+
+    public Set<String> windows() {
+        return windowsByLabel.keySet();
+    }
+
+    public int maxLimit() {
+        return topSize;
+    }
+
+    /**
+     * The most active articles in the window, best first, as of the last refresh. Articles
+     * deleted since then are left out.
+     */
+    public List<TrendingArticle> trending(String window, int limit) {
+        List<Ranked> top = windowsByLabel.get(window).top;
+        List<TrendingArticle> trending = new ArrayList<>(Math.min(limit, top.size()));
+        for (Ranked ranked : top) {
+            if (trending.size() == limit) {
+                break;
+            }
+            Optional<NewsArticle> article = newsArticleRepository.findById(ranked.articleId);
+            if (article.isPresent()) {
+                TrendingArticle entry = new TrendingArticle();
+                entry.setArticle(article.get());
+                entry.setScore(ranked.score);
+                trending.add(entry);
+            }
+        }
+        return trending;
+    }
+
+    /**
+     * Recomputes the rankings. Costs O(active articles * buckets), independent of the number of comments.
+     */
+    @Scheduled(fixedDelayString = "${trending.refresh.interval.ms}", initialDelayString = "${trending.refresh.interval.ms}")
+    public void refresh() {
+        long now = currentBucket();
+        List<PriorityQueue<Ranked>> heaps = new ArrayList<>(windowsByLabel.size());
+        for (int i = 0; i < windowsByLabel.size(); i++) {
+            heaps.add(new PriorityQueue<>(BEST_FIRST.reversed()));
+        }
+
+        activityByArticleId.forEach((articleId, activity) -> {
+            if (activity.isIdleSince(now - bucketCount)) {
+                // Atomic with record(), so activity arriving meanwhile is not dropped with it
+                activityByArticleId.computeIfPresent(articleId,
+                        (id, current) -> current.isIdleSince(now - bucketCount) ? null : current);
+                return;
+            }
+            int i = 0;
+            for (Window window : windowsByLabel.values()) {
+                double score = activity.score(now, window.buckets, decayByAge);
+                PriorityQueue<Ranked> heap = heaps.get(i++);
+                if (score > 0) {
+                    heap.add(new Ranked(articleId, score));
+                    if (heap.size() > topSize) {
+                        heap.poll();
+                    }
+                }
+            }
+        });
+
+        int i = 0;
+        for (Window window : windowsByLabel.values()) {
+            List<Ranked> top = new ArrayList<>(heaps.get(i++));
+            top.sort(BEST_FIRST);
+            window.top = top;
+        }
+    }
+
+    private void commentChanged(CommentRepository.ChangeKind kind, StoredComment previous, StoredComment current) {
+        // Undoing a failed write is no new activity, not even when a comment whose delete failed comes back
+        if (current == null || kind == CommentRepository.ChangeKind.RESTORED) {
+            return;
+        }
+        double weight = kind == CommentRepository.ChangeKind.CREATED ? commentWeight : 0;
+        long addedReactions = current.totalReactions() - (previous == null ? 0 : previous.totalReactions());
+        if (addedReactions > 0) {
+            weight += addedReactions * reactionWeight;
+        }
+        if (weight > 0) {
+            record(current.getNewsArticleId(), currentBucket(), weight);
+        }
+    }
+
+    private void record(long articleId, long bucket, double weight) {
+        activityByArticleId.compute(articleId, (id, activity) -> {
+            ArticleActivity recorded = activity == null ? new ArticleActivity(bucketCount) : activity;
+            recorded.add(bucket, weight);
+            return recorded;
+        });
+    }
+
+    private long currentBucket() {
+        return System.currentTimeMillis() / bucketMillis;
+    }
+
+    /**
+     * Parses durations such as {@code 90s}, {@code 15m}, {@code 1h} or {@code 7d} into milliseconds.
+     * A bare {@code 0} is accepted too.
+     */
+    static long parseDuration(String value) {
+        if (value.equals("0")) {
+            return 0;
+        }
+        if (value.length() < 2) {
+            throw new IllegalArgumentException("Not a duration: " + value);
+        }
+        long amount = Long.parseLong(value.substring(0, value.length() - 1));
+        switch (value.toLowerCase(Locale.ROOT).charAt(value.length() - 1)) {
+            case 's': return amount * 1000;
+            case 'm': return amount * 60_000;
+            case 'h': return amount * 3_600_000;
+            case 'd': return amount * 86_400_000;
+            default: throw new IllegalArgumentException("Not a duration: " + value);
+        }
+    }
+
+    private static final class Window {
+        private final int buckets;
+        private volatile List<Ranked> top = List.of();
+
+        private Window(int buckets) {
+            this.buckets = buckets;
+        }
+    }
+
+    private static final class Ranked {
+        private final long articleId;
+        private final double score;
+
+        private Ranked(long articleId, double score) {
+            this.articleId = articleId;
+            this.score = score;
+        }
+    }
+
+    /**
+     * One article's activity as a ring of time buckets covering the longest window. A slot is
+     * reused once its bucket has fallen out of the ring.
+     */
+    private static final class ArticleActivity {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final double[] weights;
+        private final long[] bucketOfSlot;
+        private long latestBucket = -1;
+
+        private ArticleActivity(int bucketCount) {
+            weights = new double[bucketCount];
+            // -1 marks an unused slot; it is older than any window
+            bucketOfSlot = new long[bucketCount];
+            Arrays.fill(bucketOfSlot, -1);
+        }
+
+        private void add(long bucket, double weight) {
+            lock.lock();
+            try {
+                int slot = (int) (bucket % weights.length);
+                if (bucketOfSlot[slot] != bucket) {
+                    if (bucketOfSlot[slot] > bucket) {
+                        return; // older than anything the ring still covers
+                    }
+                    bucketOfSlot[slot] = bucket;
+                    weights[slot] = 0;
+                }
+                weights[slot] += weight;
+                latestBucket = Math.max(latestBucket, bucket);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean isIdleSince(long bucket) {
+            lock.lock();
+            try {
+                return latestBucket <= bucket;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private double score(long now, int windowBuckets, double[] decayByAge) {
+            lock.lock();
+            try {
+                double score = 0;
+                for (int slot = 0; slot < weights.length; slot++) {
+                    long age = now - bucketOfSlot[slot];
+                    if (age >= 0 && age < windowBuckets) {
+                        score += weights[slot] * decayByAge[(int) age];
+                    }
+                }
+                return score;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
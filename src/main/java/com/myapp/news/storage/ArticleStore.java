@@ -0,0 +1,24 @@
+package com.myapp.news.storage;
+
+import com.myapp.news.dtos.NewsArticle;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Where news articles are persisted. Like {@link CommentStore}, it is read once at startup and
+ * written through by the repository, which serializes the calls.
+ */
+public interface ArticleStore {
+
+    List<NewsArticle> readArticles() throws IOException;
+
+    /**
+     * Makes the changes durable. They map article ids to the new article, or to null for a
+     * deleted article. {@code articles} supplies all articles after the changes, in id order,
+     * for stores that rewrite everything.
+     */
+    void writeArticles(Map<Long, NewsArticle> changes, Supplier<List<NewsArticle>> articles) throws IOException;
+}
@@ -0,0 +1,85 @@
+package com.myapp.news.storage;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.utils.CommentJournalRecord;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where comments are persisted. The comment repository keeps every comment resident and serves
+ * all reads from its own indexes, so a store is read once at startup and afterwards only has to
+ * make each batch of changes durable. Calls are serialized by the repository.
+ */
+public interface CommentStore {
+
+    /**
+     * The stored comments the changes of {@link #readCommentChanges()} apply to. Comments written
+     * by older versions may still embed their author.
+     */
+    List<Comment> readComments() throws IOException;
+
+    /**
+     * Changes not yet folded into {@link #readComments()}, in the order they were made.
+     */
+    List<CommentJournalRecord> readCommentChanges() throws IOException;
+
+    /**
+     * Starts making the changes durable, after those of every earlier call. Callers queue the
+     * write while holding their own lock and wait on the result after releasing it, so that
+     * concurrent writes can share a flush. When this throws, the changes were not written, or
+     * only in part by a store that spreads them over several files.
+     */
+    PendingWrite writeComments(List<CommentJournalRecord> changes) throws IOException;
+
+    /**
+     * Called with writers held off. Returns the rest of the compaction, which is run once writers
+     * are admitted again on the comments as they were at this point, or null when the store has
+     * nothing to compact. Those comments include writes still being flushed, so a store must not
+     * let the compaction cover a write before it knows that the write succeeded.
+     */
+    Compaction startCompaction() throws IOException;
+
+    /**
+     * Why the store accepts no more writes, or null while it does. A store that can no longer
+     * trust what it wrote stays failed until the application is restarted.
+     */
+    default IOException failure() {
+        return null;
+    }
+
+    interface Compaction {
+        void complete(List<Comment> comments) throws IOException;
+    }
+
+    /**
+     * A write on its way to durable storage. {@link #await()} returns once it is there, and
+     * throws if it could not be written; the changes may then or may not survive a restart.
+     * A {@link PartialWriteException} means that only the changes it names were not written.
+     */
+    interface PendingWrite {
+
+        PendingWrite DONE = () -> { };
+
+        void await() throws IOException;
+    }
+
+    /**
+     * Thrown by {@link PendingWrite#await()} when some of the changes were written and the others not.
+     */
+    class PartialWriteException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<CommentJournalRecord> failedChanges;
+
+        public PartialWriteException(List<CommentJournalRecord> failedChanges, IOException cause) {
+            super("Only part of the comment changes could be written", cause);
+            this.failedChanges = failedChanges;
+        }
+
+        public List<CommentJournalRecord> getFailedChanges() {
+            return failedChanges;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.myapp.news.storage;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Reports the comment store as down once it has stopped accepting writes. Reads are still served
+ * from memory, but every comment write fails until the application is restarted.
+ */
+@Component
+public class CommentStoreHealthIndicator implements HealthIndicator {
+
+    private final CommentStore store;
+
+    public CommentStoreHealthIndicator(CommentStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Health health() {
+        IOException failure = store.failure();
+        if (failure == null) {
+            return Health.up().build();
+        }
+        return Health.down(failure)
+                .withDetail("writes", "rejected until restart")
+                .build();
+    }
+}
@@ -0,0 +1,313 @@
+package com.myapp.news.storage;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.NewsArticle;
+import com.myapp.news.dtos.User;
+import com.myapp.news.utils.CommentJournalRecord;
+import com.myapp.news.utils.CommentJsonFileHandler;
+import jakarta.annotation.PostConstruct;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A backend on an embedded H2 database file in {@code comments.data.dir}. Every write is one
+ * transaction, and each change touches only its own rows, so the cost of a write does not grow
+ * with the amount of data. Comments are indexed by article and time, by author and by parent,
+ * so the database can also be queried directly for reporting. On the first start the bundled
+ * seed comments are imported.
+ */
+@Component
+@ConditionalOnProperty(name = "news.storage.backend", havingValue = "h2")
+public class EmbeddedDatabaseStorage implements CommentStore, UserStore, ArticleStore {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final List<String> SCHEMA = List.of(
+            "CREATE TABLE IF NOT EXISTS users (user_id BIGINT PRIMARY KEY, user_name VARCHAR, email_address VARCHAR, "
+                    + "avatar_url VARCHAR, user_profile_pic_url VARCHAR)",
+            "CREATE TABLE IF NOT EXISTS news_articles (news_article_id BIGINT PRIMARY KEY, title VARCHAR, content CLOB, "
+                    + "posted_on TIMESTAMP, last_modified TIMESTAMP, author_id BIGINT, author VARCHAR)",
+            "CREATE INDEX IF NOT EXISTS news_articles_author_idx ON news_articles (author_id)",
+            "CREATE TABLE IF NOT EXISTS comments (comment_id BIGINT PRIMARY KEY, news_article_id BIGINT NOT NULL, "
+                    + "author_id BIGINT, parent_comment_id BIGINT, commented_on TIMESTAMP, comment_text CLOB, reactions VARCHAR)",
+            "CREATE INDEX IF NOT EXISTS comments_article_idx ON comments (news_article_id, commented_on)",
+            "CREATE INDEX IF NOT EXISTS comments_commented_on_idx ON comments (commented_on)",
+            "CREATE INDEX IF NOT EXISTS comments_author_idx ON comments (author_id)",
+            "CREATE INDEX IF NOT EXISTS comments_parent_idx ON comments (parent_comment_id)");
+
+    private static final String SELECT_COMMENTS = "SELECT comment_id, news_article_id, author_id, parent_comment_id, "
+            + "commented_on, comment_text, reactions FROM comments ORDER BY comment_id";
+    private static final String MERGE_COMMENT = "MERGE INTO comments (comment_id, news_article_id, author_id, "
+            + "parent_comment_id, commented_on, comment_text, reactions) KEY (comment_id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_COMMENT = "DELETE FROM comments WHERE comment_id = ?";
+
+    private static final String SELECT_USERS = "SELECT user_id, user_name, email_address, avatar_url, "
+            + "user_profile_pic_url FROM users ORDER BY user_id";
+    private static final String MERGE_USER = "MERGE INTO users (user_id, user_name, email_address, avatar_url, "
+            + "user_profile_pic_url) KEY (user_id) VALUES (?, ?, ?, ?, ?)";
+    private static final String DELETE_USER = "DELETE FROM users WHERE user_id = ?";
+
+    private static final String SELECT_ARTICLES = "SELECT news_article_id, title, content, posted_on, last_modified, "
+            + "author FROM news_articles ORDER BY news_article_id";
+    private static final String MERGE_ARTICLE = "MERGE INTO news_articles (news_article_id, title, content, posted_on, "
+            + "last_modified, author_id, author) KEY (news_article_id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_ARTICLE = "DELETE FROM news_articles WHERE news_article_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CommentJsonFileHandler commentFileHandler;
+
+    // Set when the schema did not exist yet, so the seed comments are imported once
+    private boolean newDatabase;
+
+    public EmbeddedDatabaseStorage(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                   CommentJsonFileHandler commentFileHandler) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.commentFileHandler = commentFileHandler;
+    }
+
+    @PostConstruct
+    public void createSchema() throws IOException {
+        try {
+            newDatabase = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES "
+                    + "WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME = 'COMMENTS'", Integer.class) == 0;
+            SCHEMA.forEach(jdbcTemplate::execute);
+        } catch (DataAccessException e) {
+            throw new IOException("Could not create the database schema", e);
+        }
+    }
+
+    @Override
+    public List<Comment> readComments() throws IOException {
+        if (newDatabase) {
+            List<Comment> seed = commentFileHandler.readCommentsFromJsonFile();
+            inTransaction(jdbc -> jdbc.batchUpdate(MERGE_COMMENT, seed, seed.size(), EmbeddedDatabaseStorage::bindComment));
+            newDatabase = false;
+            // Still with their embedded authors, which the repository moves to the user store
+            return seed;
+        }
+        try {
+            return jdbcTemplate.query(SELECT_COMMENTS, (rs, rowNum) -> {
+                Comment comment = new Comment();
+                comment.setCommentId(rs.getLong("comment_id"));
+                comment.setNewsArticleId(rs.getLong("news_article_id"));
+                comment.setAuthorId(rs.getObject("author_id", Long.class));
+                comment.setParentCommentId(rs.getObject("parent_comment_id", Long.class));
+                comment.setCommentedOn(toDate(rs.getTimestamp("commented_on")));
+                comment.setText(rs.getString("comment_text"));
+                comment.setReactions(fromJson(rs, "reactions", new TypeReference<Map<String, Long>>() {}));
+                return comment;
+            });
+        } catch (DataAccessException e) {
+            throw new IOException("Could not read comments", e);
+        }
+    }
+
+    @Override
+    public List<CommentJournalRecord> readCommentChanges() {
+        // Every change is applied to the tables when it is written
+        return new ArrayList<>();
+    }
+
+    @Override
+    public PendingWrite writeComments(List<CommentJournalRecord> changes) throws IOException {
+        // Committed right away; the database does its own grouping of log writes
+        inTransaction(jdbc -> {
+            // Consecutive changes of the same kind go in one batch; the order between kinds is kept
+            int start = 0;
+            while (start < changes.size()) {
+                boolean delete = isDelete(changes.get(start));
+                int end = start + 1;
+                while (end < changes.size() && isDelete(changes.get(end)) == delete) {
+                    end++;
+                }
+                List<CommentJournalRecord> run = changes.subList(start, end);
+                if (delete) {
+                    jdbc.batchUpdate(DELETE_COMMENT, run, run.size(), (ps, change) -> ps.setLong(1, change.getCommentId()));
+                } else {
+                    jdbc.batchUpdate(MERGE_COMMENT, run, run.size(), (ps, change) -> bindComment(ps, change.getComment()));
+                }
+                start = end;
+            }
+        });
+        return PendingWrite.DONE;
+    }
+
+    @Override
+    public Compaction startCompaction() {
+        return null;
+    }
+
+    @Override
+    public List<User> readUsers() throws IOException {
+        try {
+            return jdbcTemplate.query(SELECT_USERS, (rs, rowNum) -> {
+                User user = new User();
+                user.setUserId(rs.getLong("user_id"));
+                user.setUserName(rs.getString("user_name"));
+                user.setEmailAddress(rs.getString("email_address"));
+                user.setAvatarUrl(rs.getString("avatar_url"));
+                user.setUserProfilePicUrl(rs.getString("user_profile_pic_url"));
+                return user;
+            });
+        } catch (DataAccessException e) {
+            throw new IOException("Could not read users", e);
+        }
+    }
+
+    @Override
+    public void writeUsers(Map<Long, User> changes, Supplier<List<User>> users) throws IOException {
+        List<User> merged = new ArrayList<>();
+        List<Long> deleted = new ArrayList<>();
+        changes.forEach((userId, user) -> {
+            if (user == null) {
+                deleted.add(userId);
+            } else {
+                merged.add(user);
+            }
+        });
+        inTransaction(jdbc -> {
+            if (!deleted.isEmpty()) {
+                jdbc.batchUpdate(DELETE_USER, deleted, deleted.size(), (ps, userId) -> ps.setLong(1, userId));
+            }
+            if (merged.isEmpty()) {
+                return;
+            }
+            jdbc.batchUpdate(MERGE_USER, merged, merged.size(), (ps, user) -> {
+                ps.setLong(1, user.getUserId());
+                ps.setString(2, user.getUserName());
+                ps.setString(3, user.getEmailAddress());
+                ps.setString(4, user.getAvatarUrl());
+                ps.setString(5, user.getUserProfilePicUrl());
+            });
+        });
+    }
+
+    @Override
+    public List<NewsArticle> readArticles() throws IOException {
+        try {
+            return jdbcTemplate.query(SELECT_ARTICLES, (rs, rowNum) -> {
+                NewsArticle article = new NewsArticle();
+                article.setNewsArticleId(rs.getLong("news_article_id"));
+                article.setTitle(rs.getString("title"));
+                article.setContent(rs.getString("content"));
+                article.setPostedOn(toDate(rs.getTimestamp("posted_on")));
+                article.setLastModified(toDate(rs.getTimestamp("last_modified")));
+                article.setAuthor(fromJson(rs, "author", new TypeReference<User>() {}));
+                return article;
+            });
+        } catch (DataAccessException e) {
+            throw new IOException("Could not read news articles", e);
+        }
+    }
+
+    @Override
+    public void writeArticles(Map<Long, NewsArticle> changes, Supplier<List<NewsArticle>> articles) throws IOException {
+        List<NewsArticle> merged = new ArrayList<>();
+        List<Long> deleted = new ArrayList<>();
+        changes.forEach((articleId, article) -> {
+            if (article == null) {
+                deleted.add(articleId);
+            } else {
+                merged.add(article);
+            }
+        });
+        inTransaction(jdbc -> {
+            if (!deleted.isEmpty()) {
+                jdbc.batchUpdate(DELETE_ARTICLE, deleted, deleted.size(), (ps, articleId) -> ps.setLong(1, articleId));
+            }
+            if (merged.isEmpty()) {
+                return;
+            }
+            jdbc.batchUpdate(MERGE_ARTICLE, merged, merged.size(), (ps, article) -> {
+                ps.setLong(1, article.getNewsArticleId());
+                ps.setString(2, article.getTitle());
+                ps.setString(3, article.getContent());
+                ps.setTimestamp(4, toTimestamp(article.getPostedOn()));
+                ps.setTimestamp(5, toTimestamp(article.getLastModified()));
+                if (article.getAuthor() == null) {
+                    ps.setNull(6, Types.BIGINT);
+                } else {
+                    ps.setLong(6, article.getAuthor().getUserId());
+                }
+                ps.setString(7, toJson(article.getAuthor()));
+            });
+        });
+    }
+
+    private void inTransaction(Consumer<JdbcTemplate> work) throws IOException {
+        try {
+            transactionTemplate.executeWithoutResult(status -> work.accept(jdbcTemplate));
+        } catch (DataAccessException | TransactionException e) {
+            throw new IOException("Could not write to the database", e);
+        }
+    }
+
+    private static void bindComment(PreparedStatement ps, Comment comment) throws SQLException {
+        ps.setLong(1, comment.getCommentId());
+        ps.setLong(2, comment.getNewsArticleId());
+        Long authorId = comment.getAuthorId() != null ? comment.getAuthorId()
+                : comment.getAuthor() != null ? Long.valueOf(comment.getAuthor().getUserId()) : null;
+        ps.setObject(3, authorId, Types.BIGINT);
+        ps.setObject(4, comment.getParentCommentId(), Types.BIGINT);
+        ps.setTimestamp(5, toTimestamp(comment.getCommentedOn()));
+        ps.setString(6, comment.getText());
+        ps.setString(7, toJson(comment.getReactions()));
+    }
+
+    private static boolean isDelete(CommentJournalRecord change) {
+        return change.getOperation() == CommentJournalRecord.Operation.DELETE;
+    }
+
+    private static String toJson(Object value) throws SQLException {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Could not serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private static <T> T fromJson(ResultSet rs, String column, TypeReference<T> type) throws SQLException {
+        String json = rs.getString(column);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Could not parse " + column, e);
+        }
+    }
+
+    private static Timestamp toTimestamp(Date date) {
+        return date == null ? null : new Timestamp(date.getTime());
+    }
+
+    private static Date toDate(Timestamp timestamp) {
+        return timestamp == null ? null : new Date(timestamp.getTime());
+    }
+}
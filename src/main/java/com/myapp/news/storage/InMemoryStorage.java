@@ -0,0 +1,68 @@
+package com.myapp.news.storage;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.NewsArticle;
+import com.myapp.news.dtos.User;
+import com.myapp.news.utils.CommentJournalRecord;
+import com.myapp.news.utils.CommentJsonFileHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A backend that persists nothing: every start begins with the bundled seed comments and no
+ * users or articles beyond their authors. Meant for demos, tests and benchmarks.
+ */
+@Component
+@ConditionalOnProperty(name = "news.storage.backend", havingValue = "memory")
+public class InMemoryStorage implements CommentStore, UserStore, ArticleStore {
+
+    private final CommentJsonFileHandler commentFileHandler;
+
+    public InMemoryStorage(CommentJsonFileHandler commentFileHandler) {
+        this.commentFileHandler = commentFileHandler;
+    }
+
+    @Override
+    public List<Comment> readComments() throws IOException {
+        return commentFileHandler.readCommentsFromJsonFile();
+    }
+
+    @Override
+    public List<CommentJournalRecord> readCommentChanges() {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public PendingWrite writeComments(List<CommentJournalRecord> changes) {
+        return PendingWrite.DONE;
+    }
+
+    @Override
+    public Compaction startCompaction() {
+        return null;
+    }
+
+    @Override
+    public List<User> readUsers() {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void writeUsers(Map<Long, User> changes, Supplier<List<User>> users) {
+    }
+
+    @Override
+    public List<NewsArticle> readArticles() {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void writeArticles(Map<Long, NewsArticle> changes, Supplier<List<NewsArticle>> articles) {
+    }
+}
@@ -0,0 +1,401 @@
+package com.myapp.news.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.NewsArticle;
+import com.myapp.news.dtos.User;
+import com.myapp.news.utils.ArticleJsonFileHandler;
+import com.myapp.news.utils.CommentJournal;
+import com.myapp.news.utils.CommentJournalRecord;
+import com.myapp.news.utils.CommentJsonFileHandler;
+import com.myapp.news.utils.NewsMetrics;
+import com.myapp.news.utils.UserJsonFileHandler;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * The default backend: files in {@code comments.data.dir}. Users and articles are one file each,
+ * rewritten on every change.
+ *
+ * <p>Comments are split by article into {@code comments.segments} hash buckets. Every segment has
+ * its own snapshot and its own append-only journal with its own writer, so a write goes to the
+ * journal of its article's segment only, writes to different segments are flushed in parallel,
+ * and concurrent writes to one segment share a flush. Compaction only rewrites the snapshots of
+ * segments whose journal has records. A small manifest records the segment count the files were
+ * written with; when the configured count differs, or when only the unsegmented files of older
+ * versions exist, the comments are redistributed once at startup.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "news.storage.backend", havingValue = "json", matchIfMissing = true)
+public class JsonFileStorage implements CommentStore, UserStore, ArticleStore {
+
+    private static final String MANIFEST_FILE_NAME = "comments-manifest.json";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Path dataDir;
+    private final int segmentCount;
+    private final String snapshotFormat;
+    private final String fsyncPolicy;
+    private final long batchWindowMillis;
+    private final int batchMaxRecords;
+    private final NewsMetrics metrics;
+    // The unsegmented snapshot of older versions, and the bundled seed
+    private final CommentJsonFileHandler commentFileHandler;
+    private final UserJsonFileHandler userFileHandler;
+    private final ArticleJsonFileHandler articleFileHandler;
+
+    private List<Segment> segments;
+    // Comments just redistributed over the segments, handed out once instead of reading them back
+    private List<Comment> redistributed;
+
+    public JsonFileStorage(@Value("${comments.data.dir}") String dataDir,
+                           @Value("${comments.segments}") int segmentCount,
+                           @Value("${comments.snapshot.format}") String snapshotFormat,
+                           @Value("${comments.journal.fsync}") String fsyncPolicy,
+                           @Value("${comments.journal.batch.window.ms}") long batchWindowMillis,
+                           @Value("${comments.journal.batch.max.records}") int batchMaxRecords,
+                           NewsMetrics metrics, CommentJsonFileHandler commentFileHandler,
+                           UserJsonFileHandler userFileHandler, ArticleJsonFileHandler articleFileHandler) {
+        if (segmentCount < 1) {
+            throw new IllegalArgumentException("comments.segments must be at least 1");
+        }
+        this.dataDir = Paths.get(dataDir);
+        this.segmentCount = segmentCount;
+        this.snapshotFormat = snapshotFormat;
+        this.fsyncPolicy = fsyncPolicy;
+        this.batchWindowMillis = batchWindowMillis;
+        this.batchMaxRecords = batchMaxRecords;
+        this.metrics = metrics;
+        this.commentFileHandler = commentFileHandler;
+        this.userFileHandler = userFileHandler;
+        this.articleFileHandler = articleFileHandler;
+    }
+
+    /**
+     * Opens the segments of the manifest, redistributing the comments first if they were
+     * written unsegmented or with another segment count.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        Path manifestFile = dataDir.resolve(MANIFEST_FILE_NAME);
+        if (!Files.exists(manifestFile)) {
+            // Older versions kept one snapshot and one journal; without a snapshot this is the seed
+            CommentJournal journal = openJournal(dataDir);
+            try {
+                redistribute(apply(commentFileHandler.readComments(), journal.replay()));
+                journal.rotate();
+                journal.discardRotated();
+            } finally {
+                journal.close();
+            }
+            commentFileHandler.deleteSnapshots();
+            return;
+        }
+
+        int writtenCount = objectMapper.readValue(manifestFile.toFile(), Manifest.class).segmentCount;
+        List<Segment> written = openSegments(writtenCount);
+        if (writtenCount == segmentCount) {
+            segments = written;
+            return;
+        }
+
+        log.info("Redistributing comments from {} to {} segments", writtenCount, segmentCount);
+        try {
+            List<Comment> comments = new ArrayList<>();
+            List<CommentJournalRecord> changes = new ArrayList<>();
+            for (Segment segment : written) {
+                comments.addAll(segment.readComments());
+                changes.addAll(segment.journal.replay());
+            }
+            redistribute(apply(comments, changes));
+        } finally {
+            for (Segment segment : written) {
+                segment.journal.close();
+            }
+        }
+        deleteRecursively(segmentsDir(writtenCount));
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.journal.close();
+        }
+    }
+
+    @Override
+    public List<Comment> readComments() throws IOException {
+        if (redistributed != null) {
+            List<Comment> comments = redistributed;
+            redistributed = null;
+            return comments;
+        }
+        List<Comment> comments = new ArrayList<>();
+        for (Segment segment : segments) {
+            comments.addAll(segment.readComments());
+        }
+        return comments;
+    }
+
+    @Override
+    public List<CommentJournalRecord> readCommentChanges() throws IOException {
+        List<CommentJournalRecord> changes = new ArrayList<>();
+        for (Segment segment : segments) {
+            changes.addAll(segment.journal.replay());
+        }
+        return changes;
+    }
+
+    /**
+     * Queues each change to the journal of its article's segment. A change spanning several
+     * segments is flushed by each of them independently, so it may fail in some segments only;
+     * the write then fails with a {@link PartialWriteException} naming the changes that were
+     * not written. It throws right away only when no segment accepted its changes.
+     */
+    @Override
+    public PendingWrite writeComments(List<CommentJournalRecord> changes) throws IOException {
+        Map<Segment, List<CommentJournalRecord>> changesBySegment = new LinkedHashMap<>();
+        for (CommentJournalRecord change : changes) {
+            changesBySegment.computeIfAbsent(segmentOf(change.articleId()), segment -> new ArrayList<>()).add(change);
+        }
+
+        List<List<CommentJournalRecord>> queuedChanges = new ArrayList<>(changesBySegment.size());
+        List<CompletableFuture<Void>> flushes = new ArrayList<>(changesBySegment.size());
+        IOException rejected = null;
+        for (Map.Entry<Segment, List<CommentJournalRecord>> entry : changesBySegment.entrySet()) {
+            queuedChanges.add(entry.getValue());
+            try {
+                flushes.add(entry.getKey().journal.appendAll(entry.getValue()));
+            } catch (IOException e) {
+                flushes.add(CompletableFuture.failedFuture(e));
+                rejected = e;
+            }
+        }
+        if (rejected != null && flushes.stream().allMatch(CompletableFuture::isCompletedExceptionally)) {
+            throw rejected;
+        }
+        return () -> {
+            List<CommentJournalRecord> failedChanges = new ArrayList<>();
+            IOException failure = null;
+            for (int i = 0; i < flushes.size(); i++) {
+                try {
+                    awaitFlush(flushes.get(i));
+                } catch (InterruptedIOException e) {
+                    // Says nothing about the write, which may still succeed
+                    throw e;
+                } catch (IOException e) {
+                    failedChanges.addAll(queuedChanges.get(i));
+                    failure = failure == null ? e : failure;
+                }
+            }
+            if (failure != null) {
+                throw failedChanges.size() == changes.size() ? failure : new PartialWriteException(failedChanges, failure);
+            }
+        };
+    }
+
+    /**
+     * Rotates the journal of every segment that has records, once everything queued to it is
+     * flushed: the comments handed to the compaction include every queued write, and a write
+     * that is still to fail must not end up in a snapshot. A segment whose journal failed is
+     * left alone; its journal rejects all writes from then on, and the next start replays it.
+     */
+    @Override
+    public Compaction startCompaction() throws IOException {
+        List<Segment> dirty = new ArrayList<>();
+        for (Segment segment : segments) {
+            try {
+                segment.journal.awaitFlushed();
+            } catch (IOException e) {
+                log.warn("Not compacting comment segment {}, its journal failed", segments.indexOf(segment));
+                continue;
+            }
+            if (segment.journal.hasPendingRecords()) {
+                segment.journal.rotate();
+                dirty.add(segment);
+            }
+        }
+        if (dirty.isEmpty()) {
+            return null;
+        }
+        return comments -> {
+            Map<Segment, List<Comment>> commentsBySegment = new LinkedHashMap<>();
+            dirty.forEach(segment -> commentsBySegment.put(segment, new ArrayList<>()));
+            for (Comment comment : comments) {
+                List<Comment> segmentComments = commentsBySegment.get(segmentOf(comment.getNewsArticleId()));
+                if (segmentComments != null) {
+                    segmentComments.add(comment);
+                }
+            }
+            for (Map.Entry<Segment, List<Comment>> entry : commentsBySegment.entrySet()) {
+                entry.getKey().snapshot.writeComments(entry.getValue());
+                // Only reached once the snapshot is in place; otherwise the rotated journal is replayed on the next start
+                entry.getKey().journal.discardRotated();
+            }
+        };
+    }
+
+    /**
+     * The failure of the first segment whose journal failed. Writes to the other segments still succeed.
+     */
+    @Override
+    public IOException failure() {
+        for (Segment segment : segments) {
+            IOException failure = segment.journal.failure();
+            if (failure != null) {
+                return failure;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<User> readUsers() throws IOException {
+        return userFileHandler.readUsers();
+    }
+
+    @Override
+    public void writeUsers(Map<Long, User> changes, Supplier<List<User>> users) throws IOException {
+        userFileHandler.writeUsers(users.get());
+    }
+
+    @Override
+    public List<NewsArticle> readArticles() throws IOException {
+        return articleFileHandler.readArticles();
+    }
+
+    @Override
+    public void writeArticles(Map<Long, NewsArticle> changes, Supplier<List<NewsArticle>> articles) throws IOException {
+        articleFileHandler.writeArticles(articles.get());
+    }
+
+    private Segment segmentOf(long articleId) {
+        return segments.get(Math.floorMod(Long.hashCode(articleId), segments.size()));
+    }
+
+    /**
+     * Writes the comments to fresh segments of the configured count and switches the manifest
+     * to them. Until the manifest is replaced, a restart still finds the previous files.
+     */
+    private void redistribute(List<Comment> comments) throws IOException {
+        Path dir = segmentsDir(segmentCount);
+        // Left over from a redistribution that did not finish
+        deleteRecursively(dir);
+
+        List<Segment> created = openSegments(segmentCount);
+        List<List<Comment>> commentsBySegment = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            commentsBySegment.add(new ArrayList<>());
+        }
+        for (Comment comment : comments) {
+            commentsBySegment.get(Math.floorMod(Long.hashCode(comment.getNewsArticleId()), segmentCount)).add(comment);
+        }
+        for (int i = 0; i < segmentCount; i++) {
+            created.get(i).snapshot.writeComments(commentsBySegment.get(i));
+        }
+
+        Manifest manifest = new Manifest();
+        manifest.segmentCount = segmentCount;
+        byte[] content = objectMapper.writeValueAsBytes(manifest);
+        CommentJsonFileHandler.replaceFile(dataDir.resolve(MANIFEST_FILE_NAME), out -> out.write(content));
+
+        segments = created;
+        redistributed = comments;
+    }
+
+    private List<Segment> openSegments(int count) {
+        List<Segment> opened = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Path dir = segmentsDir(count).resolve(String.format("segment-%03d", i));
+            opened.add(new Segment(new CommentJsonFileHandler(dir.toString(), snapshotFormat, metrics), openJournal(dir)));
+        }
+        return opened;
+    }
+
+    private CommentJournal openJournal(Path dir) {
+        return new CommentJournal(dir, fsyncPolicy, batchWindowMillis, batchMaxRecords, metrics);
+    }
+
+    private Path segmentsDir(int count) {
+        return dataDir.resolve("comment-segments-" + count);
+    }
+
+    /**
+     * The comments after the changes, in order of first appearance.
+     */
+    private static List<Comment> apply(List<Comment> comments, List<CommentJournalRecord> changes) {
+        Map<Long, Comment> commentsById = new LinkedHashMap<>();
+        comments.forEach(comment -> commentsById.put(comment.getCommentId(), comment));
+        for (CommentJournalRecord change : changes) {
+            if (change.getOperation() == CommentJournalRecord.Operation.DELETE) {
+                commentsById.remove(change.getCommentId());
+            } else {
+                commentsById.put(change.getCommentId(), change.getComment());
+            }
+        }
+        return new ArrayList<>(commentsById.values());
+    }
+
+    private static void awaitFlush(CompletableFuture<Void> flushed) throws IOException {
+        try {
+            flushed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the comment journal");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ioException
+                    ? ioException : new IOException(e.getCause());
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static final class Segment {
+        private final CommentJsonFileHandler snapshot;
+        private final CommentJournal journal;
+
+        private Segment(CommentJsonFileHandler snapshot, CommentJournal journal) {
+            this.snapshot = snapshot;
+            this.journal = journal;
+        }
+
+        private List<Comment> readComments() throws IOException {
+            // Every segment is created with a snapshot; never fall back to the seed for one
+            return snapshot.hasSnapshot() ? snapshot.readComments() : new ArrayList<>();
+        }
+    }
+
+    private static final class Manifest {
+        public int segmentCount;
+    }
+}
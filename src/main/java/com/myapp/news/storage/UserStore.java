@@ -0,0 +1,24 @@
+package com.myapp.news.storage;
+
+import com.myapp.news.dtos.User;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Where users are persisted. Like {@link CommentStore}, it is read once at startup and written
+ * through by the repository, which serializes the calls.
+ */
+public interface UserStore {
+
+    List<User> readUsers() throws IOException;
+
+    /**
+     * Makes the changes durable. They map user ids to the new profile, or to null for a deleted
+     * user. {@code users} supplies all users after the changes, in id order, for stores that
+     * rewrite everything.
+     */
+    void writeUsers(Map<Long, User> changes, Supplier<List<User>> users) throws IOException;
+}
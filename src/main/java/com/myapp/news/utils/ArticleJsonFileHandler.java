@@ -0,0 +1,52 @@
+package com.myapp.news.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.myapp.news.dtos.NewsArticle;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and replaces the article file. Like the user file, every change rewrites the whole
+ * file, which is replaced atomically.
+ */
+@Component
+public class ArticleJsonFileHandler {
+
+    private static final String ARTICLES_FILE_NAME = "articles.json";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final Path articlesFile;
+
+    public ArticleJsonFileHandler(@Value("${comments.data.dir}") String dataDir) {
+        this.articlesFile = Paths.get(dataDir).resolve(ARTICLES_FILE_NAME);
+    }
+
+    /**
+     * The stored articles, or none when no article has been stored yet.
+     */
+    public List<NewsArticle> readArticles() throws IOException {
+        if (!Files.exists(articlesFile)) {
+            return new ArrayList<>();
+        }
+        try (InputStream in = Files.newInputStream(articlesFile)) {
+            return objectMapper.readValue(in, new TypeReference<List<NewsArticle>>() {});
+        }
+    }
+
+    public void writeArticles(List<NewsArticle> articles) throws IOException {
+        byte[] content = objectMapper.writeValueAsBytes(articles);
+        CommentJsonFileHandler.replaceFile(articlesFile, out -> out.write(content));
+    }
+}
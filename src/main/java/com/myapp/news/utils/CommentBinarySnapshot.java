@@ -0,0 +1,331 @@
+package com.myapp.news.utils;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.User;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary snapshot of the comment dataset.
+ *
+ * <p>Layout (big-endian). Every section size follows from the header counts, so no section
+ * offsets are stored:
+ * <pre>
+ * header        magic "NLCS", version, commentCount n, reactionCount r, authorCount a, stringCount s (int each)
+ * commentId     long[n]
+ * newsArticleId long[n]
+ * commentedOn   long[n]   epoch millis, Long.MIN_VALUE when absent
+ * parentId      long[n]   parentCommentId, Long.MIN_VALUE when absent (version 2 and later)
+ * authorId      long[n]   Long.MIN_VALUE when absent (version 3 and later)
+ * author        int[n]    index into the author table, -1 when absent (versions 1 and 2)
+ * text          int[n]    index into the string dictionary, -1 when absent
+ * reactionStart int[n+1]  offset table into the reaction columns
+ * reactionType  int[r]    string index
+ * reactionCount long[r]
+ * userId        long[a]   the author table: empty from version 3 on, when authors live in the user store
+ * userStrings   int[a*4]  avatarUrl, userProfilePicUrl, userName, emailAddress
+ * stringStart   int[s+1]  offset table into the string data
+ * stringData    UTF-8 bytes
+ * </pre>
+ * Repeated values (reaction names, identical texts) are stored once.
+ * Older versions, with embedded authors and without threaded replies, are still read.
+ */
+public final class CommentBinarySnapshot {
+
+    public static final int MAGIC = 0x4E4C4353; // "NLCS"
+    public static final int VERSION = 3;
+
+    private static final int HEADER_SIZE = 6 * Integer.BYTES;
+    private static final int USER_STRING_COUNT = 4;
+
+    private CommentBinarySnapshot() {
+    }
+
+    /**
+     * Writes the comments as stored, with their author's id only; of an embedded author only
+     * the id is kept.
+     */
+    public static void write(List<Comment> comments, OutputStream target) throws IOException {
+        StringDictionary strings = new StringDictionary();
+
+        int n = comments.size();
+        int[] textRefs = new int[n];
+        int[] reactionStart = new int[n + 1];
+        List<Integer> reactionTypes = new ArrayList<>();
+        List<Long> reactionCounts = new ArrayList<>();
+
+        for (int i = 0; i < n; i++) {
+            Comment comment = comments.get(i);
+            textRefs[i] = strings.ref(comment.getText());
+            reactionStart[i] = reactionTypes.size();
+            if (comment.getReactions() != null) {
+                for (Map.Entry<String, Long> reaction : comment.getReactions().entrySet()) {
+                    reactionTypes.add(strings.ref(reaction.getKey()));
+                    reactionCounts.add(reaction.getValue() == null ? 0L : reaction.getValue());
+                }
+            }
+        }
+        reactionStart[n] = reactionTypes.size();
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(target, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(n);
+        out.writeInt(reactionTypes.size());
+        out.writeInt(0);
+        out.writeInt(strings.size());
+
+        for (Comment comment : comments) {
+            out.writeLong(comment.getCommentId());
+        }
+        for (Comment comment : comments) {
+            out.writeLong(comment.getNewsArticleId());
+        }
+        for (Comment comment : comments) {
+            out.writeLong(comment.getCommentedOn() == null ? Long.MIN_VALUE : comment.getCommentedOn().getTime());
+        }
+        for (Comment comment : comments) {
+            out.writeLong(comment.getParentCommentId() == null ? Long.MIN_VALUE : comment.getParentCommentId());
+        }
+        for (Comment comment : comments) {
+            out.writeLong(authorId(comment));
+        }
+        for (int ref : textRefs) {
+            out.writeInt(ref);
+        }
+        for (int start : reactionStart) {
+            out.writeInt(start);
+        }
+        for (int type : reactionTypes) {
+            out.writeInt(type);
+        }
+        for (long count : reactionCounts) {
+            out.writeLong(count);
+        }
+        strings.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Maps the snapshot file into memory and checks its header. The reader decodes comments
+     * from the mapping, one by index or all at once, without copying the file to the heap first.
+     */
+    public static Reader open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot larger than 2 GB is not supported: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Reader(buffer);
+        }
+    }
+
+    /**
+     * Decodes every comment of the snapshot. The resident comment store holds them all, so
+     * loading it decodes the whole file at startup.
+     */
+    public static List<Comment> read(Path file) throws IOException {
+        return open(file).readAll();
+    }
+
+    private static long authorId(Comment comment) {
+        if (comment.getAuthorId() != null) {
+            return comment.getAuthorId();
+        }
+        return comment.getAuthor() == null ? Long.MIN_VALUE : comment.getAuthor().getUserId();
+    }
+
+    public static final class Reader {
+
+        private final ByteBuffer buffer;
+        private final int commentCount;
+        private final int authorCount;
+        private final int stringCount;
+
+        private final int commentIdOffset;
+        private final int articleIdOffset;
+        private final int commentedOnOffset;
+        private final int parentIdOffset; // -1 in version 1 snapshots
+        private final int authorOffset;
+        private final boolean authorIds; // version 3 and later: author ids instead of author table references
+        private final int textOffset;
+        private final int reactionStartOffset;
+        private final int reactionTypeOffset;
+        private final int reactionCountOffset;
+        private final int userIdOffset;
+        private final int userStringsOffset;
+        private final int stringStartOffset;
+        private final int stringDataOffset;
+
+        private final User[] authorCache;
+
+        private Reader(ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a comment snapshot");
+            }
+            int version = buffer.getInt(4);
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported comment snapshot version " + version);
+            }
+            commentCount = buffer.getInt(8);
+            int reactionCount = buffer.getInt(12);
+            authorCount = buffer.getInt(16);
+            stringCount = buffer.getInt(20);
+
+            commentIdOffset = HEADER_SIZE;
+            articleIdOffset = commentIdOffset + Long.BYTES * commentCount;
+            commentedOnOffset = articleIdOffset + Long.BYTES * commentCount;
+            if (version >= 2) {
+                parentIdOffset = commentedOnOffset + Long.BYTES * commentCount;
+                authorOffset = parentIdOffset + Long.BYTES * commentCount;
+            } else {
+                parentIdOffset = -1;
+                authorOffset = commentedOnOffset + Long.BYTES * commentCount;
+            }
+            authorIds = version >= 3;
+            textOffset = authorOffset + (authorIds ? Long.BYTES : Integer.BYTES) * commentCount;
+            reactionStartOffset = textOffset + Integer.BYTES * commentCount;
+            reactionTypeOffset = reactionStartOffset + Integer.BYTES * (commentCount + 1);
+            reactionCountOffset = reactionTypeOffset + Integer.BYTES * reactionCount;
+            userIdOffset = reactionCountOffset + Long.BYTES * reactionCount;
+            userStringsOffset = userIdOffset + Long.BYTES * authorCount;
+            stringStartOffset = userStringsOffset + Integer.BYTES * USER_STRING_COUNT * authorCount;
+            stringDataOffset = stringStartOffset + Integer.BYTES * (stringCount + 1);
+
+            if (stringDataOffset > buffer.limit()
+                    || stringDataOffset + buffer.getInt(stringStartOffset + Integer.BYTES * stringCount) > buffer.limit()) {
+                throw new IOException("Truncated comment snapshot");
+            }
+            authorCache = new User[authorCount];
+        }
+
+        public int size() {
+            return commentCount;
+        }
+
+        public long commentId(int index) {
+            return buffer.getLong(commentIdOffset + Long.BYTES * index);
+        }
+
+        public long newsArticleId(int index) {
+            return buffer.getLong(articleIdOffset + Long.BYTES * index);
+        }
+
+        public Comment get(int index) {
+            Comment comment = new Comment();
+            comment.setCommentId(commentId(index));
+            comment.setNewsArticleId(newsArticleId(index));
+
+            long commentedOn = buffer.getLong(commentedOnOffset + Long.BYTES * index);
+            comment.setCommentedOn(commentedOn == Long.MIN_VALUE ? null : new Date(commentedOn));
+
+            if (parentIdOffset >= 0) {
+                long parentId = buffer.getLong(parentIdOffset + Long.BYTES * index);
+                comment.setParentCommentId(parentId == Long.MIN_VALUE ? null : parentId);
+            }
+
+            if (authorIds) {
+                long authorId = buffer.getLong(authorOffset + Long.BYTES * index);
+                comment.setAuthorId(authorId == Long.MIN_VALUE ? null : authorId);
+            } else {
+                int authorRef = buffer.getInt(authorOffset + Integer.BYTES * index);
+                comment.setAuthor(authorRef < 0 ? null : author(authorRef));
+            }
+            comment.setText(string(buffer.getInt(textOffset + Integer.BYTES * index)));
+
+            int start = buffer.getInt(reactionStartOffset + Integer.BYTES * index);
+            int end = buffer.getInt(reactionStartOffset + Integer.BYTES * (index + 1));
+            Map<String, Long> reactions = new HashMap<>();
+            for (int r = start; r < end; r++) {
+                reactions.put(string(buffer.getInt(reactionTypeOffset + Integer.BYTES * r)),
+                        buffer.getLong(reactionCountOffset + Long.BYTES * r));
+            }
+            comment.setReactions(reactions);
+            return comment;
+        }
+
+        public List<Comment> readAll() {
+            List<Comment> comments = new ArrayList<>(commentCount);
+            for (int i = 0; i < commentCount; i++) {
+                comments.add(get(i));
+            }
+            return comments;
+        }
+
+        // Embedded authors of version 1 and 2 snapshots, shared between the comments decoded by this reader
+        private User author(int ref) {
+            User author = authorCache[ref];
+            if (author == null) {
+                author = new User();
+                author.setUserId(buffer.getLong(userIdOffset + Long.BYTES * ref));
+                int refs = userStringsOffset + Integer.BYTES * USER_STRING_COUNT * ref;
+                author.setAvatarUrl(string(buffer.getInt(refs)));
+                author.setUserProfilePicUrl(string(buffer.getInt(refs + Integer.BYTES)));
+                author.setUserName(string(buffer.getInt(refs + 2 * Integer.BYTES)));
+                author.setEmailAddress(string(buffer.getInt(refs + 3 * Integer.BYTES)));
+                authorCache[ref] = author;
+            }
+            return author;
+        }
+
+        private String string(int ref) {
+            if (ref < 0) {
+                return null;
+            }
+            if (ref >= stringCount) {
+                throw new IllegalStateException("String reference out of range: " + ref);
+            }
+            int start = buffer.getInt(stringStartOffset + Integer.BYTES * ref);
+            int end = buffer.getInt(stringStartOffset + Integer.BYTES * (ref + 1));
+            byte[] utf8 = new byte[end - start];
+            buffer.get(stringDataOffset + start, utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class StringDictionary {
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final List<byte[]> values = new ArrayList<>();
+
+        private int ref(String value) {
+            if (value == null) {
+                return -1;
+            }
+            return refs.computeIfAbsent(value, v -> {
+                values.add(v.getBytes(StandardCharsets.UTF_8));
+                return values.size() - 1;
+            });
+        }
+
+        private int size() {
+            return values.size();
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] value : values) {
+                offset += value.length;
+                out.writeInt(offset);
+            }
+            for (byte[] value : values) {
+                out.write(value);
+            }
+        }
+    }
+}
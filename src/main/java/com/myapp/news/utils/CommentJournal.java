@@ -0,0 +1,417 @@
+package com.myapp.news.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myapp.news.dtos.Comment;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only log of comment mutations, one JSON record per line. Each append costs only
+ * the size of the change. The log is folded into the snapshot by compaction: {@link #rotate()}
+ * sets the current log aside, the caller writes a snapshot, then {@link #discardRotated()}
+ * drops the old log.
+ *
+ * <p>Appends are queued and written by a single writer thread, in the order they were queued.
+ * Whatever has queued up while the previous flush was in progress goes out with one write and,
+ * depending on the fsync policy, one sync: {@code always} flushes as soon as there is anything
+ * to write, {@code batched} first waits up to {@code comments.journal.batch.window.ms} for more
+ * (or until {@code comments.journal.batch.max.records} are queued), and {@code off} never syncs,
+ * leaving it to the operating system. The future returned by {@link #appendAll(List)} completes
+ * once its flush is done.
+ *
+ * <p>A failed flush fails every append queued with it or after it, and the journal then rejects
+ * all further appends until the application is restarted: after a failed write or sync, what was
+ * written before can no longer be trusted to be on disk, and appending more could leave a record
+ * behind a torn one. Nothing is retried. {@link #failure()} reports the cause, which the health
+ * endpoint shows as DOWN; the live log is replayed and any torn record truncated on the next start.
+ *
+ * <p>Every comment segment has its own journal, and so its own writer thread.
+ */
+@Slf4j
+public class CommentJournal {
+
+    public enum FsyncPolicy { ALWAYS, BATCHED, OFF }
+
+    private static final String JOURNAL_FILE_NAME = "comments.journal";
+    private static final String ROTATED_FILE_NAME = "comments.journal.compacting";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .addMixIn(Comment.class, CommentStorageMixIn.class);
+
+    private final Path journalFile;
+    private final Path rotatedFile;
+    private final FsyncPolicy fsyncPolicy;
+    private final long batchWindowNanos;
+    private final int batchMaxRecords;
+
+    private final Timer flushTimer;
+    private final Timer appendTimer;
+    private final Timer replayTimer;
+    private final DistributionSummary bytesWritten;
+    private final DistributionSummary recordsPerFlush;
+
+    // Not a monitor: file I/O under synchronized would pin a virtual thread's carrier
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private FileChannel channel;
+    private long recordCount;
+
+    // Appends waiting for the writer thread, guarded by queueLock
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition queued = queueLock.newCondition();
+    private final Condition flushDone = queueLock.newCondition();
+    private List<PendingAppend> queue = new ArrayList<>();
+    private int queuedRecords;
+    // Appends queued and appends flushed so far, for awaitFlushed()
+    private long queuedAppends;
+    private long flushedAppends;
+    private IOException failure;
+    private boolean closed;
+
+    private final Thread writer;
+
+    public CommentJournal(Path dir, String fsyncPolicy, long batchWindowMillis, int batchMaxRecords, NewsMetrics metrics) {
+        this.journalFile = dir.resolve(JOURNAL_FILE_NAME);
+        this.rotatedFile = dir.resolve(ROTATED_FILE_NAME);
+        this.fsyncPolicy = FsyncPolicy.valueOf(fsyncPolicy.trim().toUpperCase(Locale.ROOT));
+        this.batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(batchWindowMillis);
+        this.batchMaxRecords = batchMaxRecords;
+
+        String policy = this.fsyncPolicy.name().toLowerCase(Locale.ROOT);
+        this.flushTimer = metrics.timer("news.comments.journal.flush", "Time to write and sync one group of queued journal batches", "fsync", policy);
+        this.appendTimer = metrics.timer("news.comments.journal.append", "Time from queuing a journal batch until its flush is done", "fsync", policy);
+        this.replayTimer = metrics.timer("news.comments.journal.replay", "Time to read and parse the journal at startup");
+        this.bytesWritten = metrics.bytes("news.comments.journal.written", "Size of journal flushes written");
+        this.recordsPerFlush = metrics.summary("news.comments.journal.flush.records", "Journal records written by one flush");
+
+        this.writer = new Thread(this::writeQueued, "comment-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Reads every record that is not yet part of the snapshot: a log left over from an
+     * interrupted compaction first, then the live log.
+     */
+    public List<CommentJournalRecord> replay() throws IOException {
+        lock.lock();
+        try {
+            long start = System.nanoTime();
+            List<CommentJournalRecord> records = new ArrayList<>();
+            readRecords(rotatedFile, records);
+            recordCount = readRecords(journalFile, records);
+            replayTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues the records to be written after everything queued before them, all in the same
+     * flush. Throws right away if an earlier flush failed or the journal is closed.
+     */
+    public CompletableFuture<Void> appendAll(List<CommentJournalRecord> records) throws IOException {
+        if (records.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        for (CommentJournalRecord record : records) {
+            lines.write(objectMapper.writeValueAsBytes(record));
+            lines.write('\n');
+        }
+        PendingAppend append = new PendingAppend(lines.toByteArray(), records.size());
+
+        queueLock.lock();
+        try {
+            if (failure != null) {
+                throw new IOException("The comment journal failed earlier and accepts no more records", failure);
+            }
+            if (closed) {
+                throw new IOException("The comment journal is closed");
+            }
+            queue.add(append);
+            queuedRecords += records.size();
+            queuedAppends++;
+            queued.signal();
+        } finally {
+            queueLock.unlock();
+        }
+        return append.flushed;
+    }
+
+    /**
+     * The error of the flush that failed, after which no more appends are accepted, or null.
+     */
+    public IOException failure() {
+        queueLock.lock();
+        try {
+            return failure;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until everything queued so far is flushed, so that the records of the log are all
+     * that was appended. Throws if a flush failed, before or while waiting.
+     */
+    public void awaitFlushed() throws IOException {
+        queueLock.lock();
+        try {
+            long target = queuedAppends;
+            while (flushedAppends < target && failure == null) {
+                flushDone.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw new IOException("The comment journal failed and holds fewer records than were appended", failure);
+            }
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Whether there is anything a compaction would fold into the snapshot.
+     */
+    public boolean hasPendingRecords() {
+        lock.lock();
+        try {
+            return recordCount > 0 || Files.exists(rotatedFile);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a fresh log. Records appended from now on are not covered by the snapshot
+     * the caller is about to write. Must be called while writers are excluded.
+     */
+    public void rotate() throws IOException {
+        lock.lock();
+        try {
+            closeChannel();
+            if (Files.exists(rotatedFile)) {
+                // A previous compaction did not finish; keep its records and add the live ones
+                try (FileChannel rotated = FileChannel.open(rotatedFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    if (Files.exists(journalFile)) {
+                        ByteBuffer live = ByteBuffer.wrap(Files.readAllBytes(journalFile));
+                        while (live.hasRemaining()) {
+                            rotated.write(live);
+                        }
+                    }
+                    rotated.force(true);
+                }
+                Files.deleteIfExists(journalFile);
+            } else if (Files.exists(journalFile)) {
+                Files.move(journalFile, rotatedFile);
+            }
+            recordCount = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void discardRotated() throws IOException {
+        lock.lock();
+        try {
+            Files.deleteIfExists(rotatedFile);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes what is queued, then stops the writer and closes the log.
+     */
+    public void close() throws IOException {
+        queueLock.lock();
+        try {
+            closed = true;
+            queued.signal();
+        } finally {
+            queueLock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        lock.lock();
+        try {
+            closeChannel();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeQueued() {
+        while (true) {
+            List<PendingAppend> appends;
+            queueLock.lock();
+            try {
+                while (queue.isEmpty() && !closed) {
+                    queued.awaitUninterruptibly();
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+                if (fsyncPolicy == FsyncPolicy.BATCHED) {
+                    // Give concurrent writers a moment to join this flush
+                    long remaining = batchWindowNanos;
+                    while (queuedRecords < batchMaxRecords && !closed && remaining > 0) {
+                        try {
+                            remaining = queued.awaitNanos(remaining);
+                        } catch (InterruptedException e) {
+                            break;
+                        }
+                    }
+                }
+                appends = queue;
+                queue = new ArrayList<>();
+                queuedRecords = 0;
+            } finally {
+                queueLock.unlock();
+            }
+
+            try {
+                flush(appends);
+                long now = System.nanoTime();
+                for (PendingAppend append : appends) {
+                    appendTimer.record(now - append.queuedAt, TimeUnit.NANOSECONDS);
+                    append.flushed.complete(null);
+                }
+                queueLock.lock();
+                try {
+                    flushedAppends += appends.size();
+                    flushDone.signalAll();
+                } finally {
+                    queueLock.unlock();
+                }
+            } catch (IOException e) {
+                log.error("Could not write to the comment journal; rejecting all further writes", e);
+                queueLock.lock();
+                try {
+                    failure = e;
+                    appends.addAll(queue);
+                    queue.clear();
+                    queuedRecords = 0;
+                    flushDone.signalAll();
+                } finally {
+                    queueLock.unlock();
+                }
+                appends.forEach(append -> append.flushed.completeExceptionally(e));
+            }
+        }
+    }
+
+    /**
+     * Writes the appends with one gathering write and, unless fsync is off, one sync.
+     */
+    private void flush(List<PendingAppend> appends) throws IOException {
+        long start = System.nanoTime();
+        ByteBuffer[] contents = new ByteBuffer[appends.size()];
+        long bytes = 0;
+        int records = 0;
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = ByteBuffer.wrap(appends.get(i).content);
+            bytes += appends.get(i).content.length;
+            records += appends.get(i).records;
+        }
+
+        lock.lock();
+        try {
+            FileChannel out = openChannel();
+            long remaining = bytes;
+            while (remaining > 0) {
+                remaining -= out.write(contents);
+            }
+            if (fsyncPolicy != FsyncPolicy.OFF) {
+                out.force(false);
+            }
+            recordCount += records;
+        } finally {
+            lock.unlock();
+        }
+
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        bytesWritten.record(bytes);
+        recordsPerFlush.record(records);
+    }
+
+    private long readRecords(Path file, List<CommentJournalRecord> records) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        byte[] content = Files.readAllBytes(file);
+        long count = 0;
+        int lineStart = 0;
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] != '\n') {
+                continue;
+            }
+            String line = new String(content, lineStart, i - lineStart, StandardCharsets.UTF_8);
+            records.add(objectMapper.readValue(line, CommentJournalRecord.class));
+            count++;
+            lineStart = i + 1;
+        }
+
+        // Anything after the last complete record is a write torn by a crash
+        if (lineStart < content.length) {
+            log.warn("Truncating {} bytes of incomplete journal data in {}", content.length - lineStart, file);
+            try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncate.truncate(lineStart);
+                truncate.force(true);
+            }
+        }
+        return count;
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel == null) {
+            Files.createDirectories(journalFile.getParent());
+            channel = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private static final class PendingAppend {
+        private final byte[] content;
+        private final int records;
+        private final long queuedAt = System.nanoTime();
+        private final CompletableFuture<Void> flushed = new CompletableFuture<>();
+
+        private PendingAppend(byte[] content, int records) {
+            this.content = content;
+            this.records = records;
+        }
+    }
+}
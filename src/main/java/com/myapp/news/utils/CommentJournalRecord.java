@@ -0,0 +1,55 @@
+package com.myapp.news.utils;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.myapp.news.dtos.Comment;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * One line of the comment journal. Create and update records carry the full comment as it
+ * was after the change, so replaying a record more than once leaves the same state.
+ */
+@Getter
+@Setter
+public class CommentJournalRecord {
+
+    public enum Operation { CREATE, UPDATE, DELETE }
+
+    private Operation operation;
+    private long commentId;
+    private Comment comment;
+    // Only on delete records, which carry no comment; tells the segment. Missing in older journals
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long newsArticleId;
+
+    public static CommentJournalRecord created(Comment comment) {
+        return of(Operation.CREATE, comment);
+    }
+
+    public static CommentJournalRecord updated(Comment comment) {
+        return of(Operation.UPDATE, comment);
+    }
+
+    public static CommentJournalRecord deleted(long commentId, long newsArticleId) {
+        CommentJournalRecord record = new CommentJournalRecord();
+        record.setOperation(Operation.DELETE);
+        record.setCommentId(commentId);
+        record.setNewsArticleId(newsArticleId);
+        return record;
+    }
+
+    /**
+     * The article of the changed comment.
+     */
+    public long articleId() {
+        return comment != null ? comment.getNewsArticleId() : newsArticleId;
+    }
+
+    private static CommentJournalRecord of(Operation operation, Comment comment) {
+        CommentJournalRecord record = new CommentJournalRecord();
+        record.setOperation(operation);
+        record.setCommentId(comment.getCommentId());
+        record.setComment(comment);
+        return record;
+    }
+}
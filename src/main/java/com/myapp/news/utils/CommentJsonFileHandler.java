@@ -6,14 +6,24 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.type.CollectionType;
 import com.fasterxml.jackson.databind.type.TypeFactory;
 import com.myapp.news.dtos.Comment;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Component
@@ -23,26 +33,139 @@ public class CommentJsonFileHandler {
             private String commentsFilePath;
 
             private static final ObjectMapper objectMapper = new ObjectMapper()
-            .enable(SerializationFeature.INDENT_OUTPUT);
+            .enable(SerializationFeature.INDENT_OUTPUT)
+            .addMixIn(Comment.class, CommentStorageMixIn.class);
 
+    private static final String JSON_SNAPSHOT_FILE_NAME = "comments-snapshot.json";
+    private static final String BINARY_SNAPSHOT_FILE_NAME = "comments-snapshot.bin";
 
-    private final String jsonFilePath = "classpath:comments.json";
+    private final Path jsonSnapshotFile;
+    private final Path binarySnapshotFile;
+    private final boolean binarySnapshots;
 
+    private final Timer parseTimer;
+    private final Timer serializeTimer;
+    private final DistributionSummary bytesRead;
+    private final DistributionSummary bytesWritten;
+
+    public CommentJsonFileHandler(@Value("${comments.data.dir}") String dataDir,
+                                  @Value("${comments.snapshot.format}") String snapshotFormat,
+                                  NewsMetrics metrics) {
+        Path dir = Paths.get(dataDir);
+        this.jsonSnapshotFile = dir.resolve(JSON_SNAPSHOT_FILE_NAME);
+        this.binarySnapshotFile = dir.resolve(BINARY_SNAPSHOT_FILE_NAME);
+        this.binarySnapshots = "binary".equalsIgnoreCase(snapshotFormat);
+
+        String format = binarySnapshots ? "binary" : "json";
+        this.parseTimer = metrics.timer("news.comments.snapshot.parse", "Time to read and parse the comment snapshot", "format", format);
+        this.serializeTimer = metrics.timer("news.comments.snapshot.serialize", "Time to serialize and write the comment snapshot", "format", format);
+        this.bytesRead = metrics.bytes("news.comments.snapshot.read", "Size of comment snapshots read");
+        this.bytesWritten = metrics.bytes("news.comments.snapshot.written", "Size of comment snapshots written");
+    }
+
+    /**
+     * Reads the latest compacted snapshot, in the configured format if there is one and in
+     * the other format otherwise, falling back to the bundled seed file when no snapshot has
+     * been written yet. Switching the format therefore converts the data on the next compaction.
+     */
     public List<Comment> readComments() throws IOException {
-        Resource resource = new ClassPathResource(jsonFilePath);
-        File jsonFile = resource.getFile();
+        Path preferred = binarySnapshots ? binarySnapshotFile : jsonSnapshotFile;
+        Path other = binarySnapshots ? jsonSnapshotFile : binarySnapshotFile;
+        Path snapshotFile = Files.exists(preferred) ? preferred : other;
+
+        if (!Files.exists(snapshotFile)) {
+            return readCommentsFromJsonFile();
+        }
+
+        long start = System.nanoTime();
+        List<Comment> comments = snapshotFile.equals(binarySnapshotFile)
+                ? CommentBinarySnapshot.read(binarySnapshotFile)
+                : readJson(jsonSnapshotFile);
+        parseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        bytesRead.record(Files.size(snapshotFile));
+        return comments;
+    }
+
+    public boolean hasSnapshot() {
+        return Files.exists(jsonSnapshotFile) || Files.exists(binarySnapshotFile);
+    }
+
+    public void deleteSnapshots() throws IOException {
+        Files.deleteIfExists(jsonSnapshotFile);
+        Files.deleteIfExists(binarySnapshotFile);
+    }
+
+    /**
+     * Replaces the snapshot. The new content is written to a temporary file and synced
+     * before being moved over the old one, so a crash never leaves a half-written snapshot.
+     */
+    public void writeComments(List<Comment> comments) throws IOException {
+        long start = System.nanoTime();
+        Path snapshotFile;
+        if (binarySnapshots) {
+            snapshotFile = binarySnapshotFile;
+            writeBinary(comments, binarySnapshotFile);
+            Files.deleteIfExists(jsonSnapshotFile);
+        } else {
+            snapshotFile = jsonSnapshotFile;
+            writeJson(comments, jsonSnapshotFile);
+            Files.deleteIfExists(binarySnapshotFile);
+        }
+        serializeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        bytesWritten.record(Files.size(snapshotFile));
+    }
+
+    /**
+     * Converts a JSON snapshot to the binary format. Authors embedded in older JSON files are
+     * reduced to their ids, so their profiles must already be in the user store.
+     */
+    public static void convertJsonToBinary(Path jsonFile, Path binaryFile) throws IOException {
+        writeBinary(readJson(jsonFile), binaryFile);
+    }
 
+    public static void convertBinaryToJson(Path binaryFile, Path jsonFile) throws IOException {
+        writeJson(CommentBinarySnapshot.read(binaryFile), jsonFile);
+    }
+
+    private static List<Comment> readJson(Path jsonFile) throws IOException {
         TypeFactory typeFactory = objectMapper.getTypeFactory();
         CollectionType collectionType = typeFactory.constructCollectionType(List.class, Comment.class);
 
-        return objectMapper.readValue(jsonFile, collectionType);
+        return objectMapper.readValue(jsonFile.toFile(), collectionType);
     }
 
-    public void writeComments(List<Comment> comments) throws IOException {
-        Resource resource = new ClassPathResource(jsonFilePath);
-        File jsonFile = resource.getFile();
+    private static void writeJson(List<Comment> comments, Path jsonFile) throws IOException {
+        byte[] content = objectMapper.writeValueAsBytes(comments);
+        replaceFile(jsonFile, out -> out.write(content));
+    }
+
+    private static void writeBinary(List<Comment> comments, Path binaryFile) throws IOException {
+        replaceFile(binaryFile, out -> CommentBinarySnapshot.write(comments, out));
+    }
+
+    /**
+     * Replaces the file with the content through a synced temporary file, so readers find either
+     * the old or the new content.
+     */
+    public static void replaceFile(Path file, ContentWriter writer) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tempFile = parent.resolve(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = Channels.newOutputStream(channel);
+            writer.writeTo(out);
+            out.flush();
+            channel.force(true);
+        }
+
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
-        objectMapper.writeValue(jsonFile, comments);
+    @FunctionalInterface
+    public interface ContentWriter {
+        void writeTo(OutputStream out) throws IOException;
     }
 
     public List<Comment> readCommentsFromJsonFile() throws IOException {
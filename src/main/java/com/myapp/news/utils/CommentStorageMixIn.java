@@ -0,0 +1,23 @@
+package com.myapp.news.utils;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.myapp.news.dtos.User;
+
+/**
+ * How the snapshot and journal mappers see a {@link com.myapp.news.dtos.Comment}: comments are
+ * stored with their author's id only, whereas the API hides the id and shows the joined author.
+ * Embedded authors in older files are still read.
+ */
+abstract class CommentStorageMixIn {
+
+    // Un-ignoring alone is not enough: Jackson drops a property any of whose accessors is ignored
+    // unless one is explicitly included
+    @JsonIgnore(false)
+    @JsonProperty
+    private Long authorId;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private User author;
+}
@@ -0,0 +1,43 @@
+package com.myapp.news.utils;
+
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.NewsArticleRepository;
+import com.myapp.news.repositories.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dataset size gauges. Values are read from the stores at scrape time only.
+ */
+@Component
+public class DatasetMetrics implements MeterBinder {
+
+    private final CommentRepository commentRepository;
+    private final NewsArticleRepository newsArticleRepository;
+    private final UserRepository userRepository;
+
+    public DatasetMetrics(CommentRepository commentRepository, NewsArticleRepository newsArticleRepository,
+                          UserRepository userRepository) {
+        this.commentRepository = commentRepository;
+        this.newsArticleRepository = newsArticleRepository;
+        this.userRepository = userRepository;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("news.dataset.size", commentRepository, CommentRepository::count)
+                .description("Number of stored entities")
+                .tag("entity", "comment")
+                .register(registry);
+        Gauge.builder("news.dataset.size", newsArticleRepository, NewsArticleRepository::count)
+                .description("Number of stored entities")
+                .tag("entity", "article")
+                .register(registry);
+        Gauge.builder("news.dataset.size", userRepository, UserRepository::count)
+                .description("Number of stored entities")
+                .tag("entity", "user")
+                .register(registry);
+    }
+}
@@ -0,0 +1,69 @@
+package com.myapp.news.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Factory for the application's own meters, scraped through /actuator/prometheus alongside
+ * the per-endpoint http.server.requests timers. Callers create their meters once and keep
+ * them, so recording on the request path is a lock-free update.
+ */
+@Component
+public class NewsMetrics {
+
+    private final MeterRegistry registry;
+    private final DistributionSummary articleComments;
+
+    public NewsMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.articleComments = DistributionSummary.builder("news.article.comments")
+                .description("Comments on an article at the time its comments were requested")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Metrics that are recorded but never exported, for code running outside the application context.
+     */
+    public static NewsMetrics detached() {
+        return new NewsMetrics(new SimpleMeterRegistry());
+    }
+
+    public Timer timer(String name, String description, String... tags) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public DistributionSummary bytes(String name, String description, String... tags) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit("bytes")
+                .tags(tags)
+                .register(registry);
+    }
+
+    public DistributionSummary summary(String name, String description, String... tags) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .tags(tags)
+                .register(registry);
+    }
+
+    public Counter counter(String name, String description, String... tags) {
+        return Counter.builder(name)
+                .description(description)
+                .tags(tags)
+                .register(registry);
+    }
+
+    public void recordArticleComments(int commentCount) {
+        articleComments.record(commentCount);
+    }
+}
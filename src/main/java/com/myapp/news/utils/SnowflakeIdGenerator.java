@@ -0,0 +1,98 @@
+package com.myapp.news.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Time-ordered 64-bit ids that several instances allocate without coordinating: 41 bits of
+ * milliseconds since 2024-01-01, a 10-bit node id ({@code news.node.id}, distinct per instance) and
+ * a 12-bit sequence within the millisecond. Ids of one node strictly increase, and ids of
+ * different nodes never collide.
+ *
+ * <p>When the clock steps back, the node keeps counting from the last millisecond it used rather
+ * than reusing one, running ahead of the clock until it catches up. A step back of more than
+ * {@code news.ids.max-clock-skew.ms} is refused instead: allocation fails until the clock has
+ * caught up again. The repositories report the ids they load from this node's storage, so a
+ * restart with a clock behind the node's last persisted id is caught too. Ids that arrive in
+ * requests are never reported: one forged id from the future would stop allocation for good.
+ */
+@Slf4j
+@Component
+public class SnowflakeIdGenerator {
+
+    private static final long EPOCH_MILLIS = 1704067200000L; // 2024-01-01T00:00:00Z
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+    private final long maxClockSkewMillis;
+    private final LongSupplier clock;
+
+    // The last millisecond and sequence handed out, as (millis << SEQUENCE_BITS) | sequence
+    private final AtomicLong last = new AtomicLong();
+
+    @Autowired
+    public SnowflakeIdGenerator(@Value("${news.node.id}") int nodeId,
+                                @Value("${news.ids.max-clock-skew.ms}") long maxClockSkewMillis) {
+        this(nodeId, maxClockSkewMillis, System::currentTimeMillis);
+    }
+
+    SnowflakeIdGenerator(int nodeId, long maxClockSkewMillis, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("news.node.id must be between 0 and " + MAX_NODE_ID + ", not " + nodeId);
+        }
+        this.nodeId = nodeId;
+        this.maxClockSkewMillis = maxClockSkewMillis;
+        this.clock = clock;
+    }
+
+    public long nextId() {
+        while (true) {
+            long previous = last.get();
+            long previousMillis = previous >>> SEQUENCE_BITS;
+            long now = clock.getAsLong() - EPOCH_MILLIS;
+
+            long next;
+            if (now > previousMillis) {
+                next = now << SEQUENCE_BITS;
+            } else if (previousMillis - now > maxClockSkewMillis) {
+                throw new IllegalStateException("The clock is " + (previousMillis - now)
+                        + " ms behind the last id allocated on node " + nodeId + "; refusing to allocate ids");
+            } else {
+                // The next sequence number, or the next millisecond once the sequence is used up
+                next = previous + 1;
+            }
+
+            if (last.compareAndSet(previous, next)) {
+                return ((next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | (next & MAX_SEQUENCE);
+            }
+        }
+    }
+
+    /**
+     * Makes sure an id read back from storage is never allocated again. Only ids of this node
+     * matter; ids of other nodes, and the counter-based ids of older versions, cannot collide.
+     * An id more than the allowed clock skew ahead of the clock cannot have been allocated here;
+     * it is logged and ignored rather than allowed to stop allocation.
+     */
+    public void observe(long id) {
+        if (id < 0 || ((id >>> SEQUENCE_BITS) & MAX_NODE_ID) != nodeId) {
+            return;
+        }
+        long millis = id >>> (NODE_BITS + SEQUENCE_BITS);
+        long now = clock.getAsLong() - EPOCH_MILLIS;
+        if (millis - now > maxClockSkewMillis) {
+            log.warn("Ignoring id {} of node {}: it is {} ms ahead of the clock", id, nodeId, millis - now);
+            return;
+        }
+        last.accumulateAndGet((millis << SEQUENCE_BITS) | (id & MAX_SEQUENCE), Math::max);
+    }
+}
@@ -0,0 +1,52 @@
+package com.myapp.news.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.myapp.news.dtos.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and replaces the user file. Users change rarely, so every change rewrites the whole
+ * file; like the comment snapshot it is replaced atomically.
+ */
+@Component
+public class UserJsonFileHandler {
+
+    private static final String USERS_FILE_NAME = "users.json";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final Path usersFile;
+
+    public UserJsonFileHandler(@Value("${comments.data.dir}") String dataDir) {
+        this.usersFile = Paths.get(dataDir).resolve(USERS_FILE_NAME);
+    }
+
+    /**
+     * The stored users, or none when no user has been stored yet.
+     */
+    public List<User> readUsers() throws IOException {
+        if (!Files.exists(usersFile)) {
+            return new ArrayList<>();
+        }
+        try (InputStream in = Files.newInputStream(usersFile)) {
+            return objectMapper.readValue(in, new TypeReference<List<User>>() {});
+        }
+    }
+
+    public void writeUsers(List<User> users) throws IOException {
+        byte[] content = objectMapper.writeValueAsBytes(users);
+        CommentJsonFileHandler.replaceFile(usersFile, out -> out.write(content));
+    }
+}
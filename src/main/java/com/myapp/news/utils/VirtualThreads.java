@@ -0,0 +1,55 @@
+package com.myapp.news.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to Java 21 virtual threads from code compiled for Java 17. Every method fails with
+ * {@link IllegalStateException} on a runtime without virtual thread support.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Equivalent of {@code Executors.newVirtualThreadPerTaskExecutor()}.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw unsupported(e);
+        }
+    }
+
+    /**
+     * Equivalent of {@code Thread.ofVirtual().name(prefix, 0).factory()}.
+     */
+    public static ThreadFactory threadFactory(String prefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw unsupported(e);
+        }
+    }
+
+    private static IllegalStateException unsupported(Exception cause) {
+        return new IllegalStateException("Virtual threads need Java 21 or later, running on "
+                + System.getProperty("java.version"), cause);
+    }
+}
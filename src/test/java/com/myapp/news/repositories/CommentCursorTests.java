@@ -0,0 +1,75 @@
+package com.myapp.news.repositories;
+
+import com.myapp.news.dtos.Comment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommentCursorTests {
+
+    @Test
+    void rendersAsMillisAndId() {
+        assertEquals("1700000000000,42", new CommentCursor(1700000000000L, 42).toString());
+    }
+
+    @Test
+    void parsesWhatItRenders() {
+        CommentCursor cursor = new CommentCursor(1700000000000L, 42);
+
+        assertEquals(cursor, CommentCursor.parse(cursor.toString()));
+    }
+
+    @Test
+    void acceptsIsoInstantsAndSpaces() {
+        CommentCursor cursor = CommentCursor.parse("2023-11-14T22:13:20Z , 42");
+
+        assertEquals(1700000000000L, cursor.getCommentedOn());
+        assertEquals(42, cursor.getCommentId());
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        for (String value : List.of("", "42", "abc,42", "1700000000000,", "1700000000000,x", ",42", "-5,42")) {
+            assertThrows(IllegalArgumentException.class, () -> CommentCursor.parse(value), value);
+        }
+    }
+
+    @Test
+    void ordersNewestFirstThenByDescendingId() {
+        CommentCursor newest = new CommentCursor(3000, 1);
+        CommentCursor laterId = new CommentCursor(2000, 9);
+        CommentCursor earlierId = new CommentCursor(2000, 5);
+        CommentCursor oldest = new CommentCursor(1000, 7);
+        List<CommentCursor> cursors = new ArrayList<>(List.of(oldest, earlierId, newest, laterId));
+
+        Collections.sort(cursors);
+
+        assertEquals(List.of(newest, laterId, earlierId, oldest), cursors);
+        assertEquals(0, earlierId.compareTo(new CommentCursor(2000, 5)));
+    }
+
+    @Test
+    void isTakenFromTheComment() {
+        Comment comment = new Comment();
+        comment.setCommentId(42);
+        comment.setCommentedOn(new Date(1700000000000L));
+
+        assertEquals(new CommentCursor(1700000000000L, 42), CommentCursor.of(comment));
+
+        comment.setCommentedOn(null);
+        assertEquals(new CommentCursor(0, 42), CommentCursor.of(comment));
+    }
+
+    @Test
+    void cursorsOfDifferentCommentsDiffer() {
+        assertTrue(!new CommentCursor(1000, 1).equals(new CommentCursor(1000, 2)));
+        assertTrue(!new CommentCursor(1000, 1).equals(new CommentCursor(1001, 1)));
+    }
+}
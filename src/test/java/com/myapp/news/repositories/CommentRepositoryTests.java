@@ -0,0 +1,366 @@
+package com.myapp.news.repositories;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.User;
+import com.myapp.news.storage.CommentStore;
+import com.myapp.news.storage.JsonFileStorage;
+import com.myapp.news.storage.UserStore;
+import com.myapp.news.utils.ArticleJsonFileHandler;
+import com.myapp.news.utils.CommentJournal;
+import com.myapp.news.utils.CommentJournalRecord;
+import com.myapp.news.utils.CommentJsonFileHandler;
+import com.myapp.news.utils.NewsMetrics;
+import com.myapp.news.utils.SnowflakeIdGenerator;
+import com.myapp.news.utils.UserJsonFileHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommentRepositoryTests {
+
+    private static final long ARTICLE = 10;
+
+    private final ControlledStore store = new ControlledStore();
+    private CommentRepository repository;
+
+    @BeforeEach
+    void load() throws IOException {
+        SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1, 1000);
+        UserRepository userRepository = new UserRepository(store, idGenerator);
+        userRepository.load();
+        repository = new CommentRepository(store, userRepository, idGenerator);
+        repository.load();
+    }
+
+    @Test
+    void aWriteIsVisibleBeforeItIsDurable() throws IOException {
+        StagedWrite<Optional<StoredComment>> created = repository.stageCreate(comment(ARTICLE, "text"));
+
+        assertEquals(1, repository.countByArticleId(ARTICLE));
+
+        store.succeed(0);
+        assertEquals("text", created.await().get().getText());
+    }
+
+    @Test
+    void undoesACreateThatCouldNotBeWritten() throws IOException {
+        StagedWrite<Optional<StoredComment>> created = repository.stageCreate(comment(ARTICLE, "text"));
+        long commentId = repository.findByArticleId(ARTICLE).get(0).getCommentId();
+        ResourceVersion version = repository.commentsVersion(ARTICLE);
+
+        store.fail(0);
+
+        assertThrows(IOException.class, created::await);
+        assertFalse(repository.findById(commentId).isPresent());
+        assertEquals(0, repository.countByArticleId(ARTICLE));
+        assertFalse(version.toETag().equals(repository.commentsVersion(ARTICLE).toETag()));
+    }
+
+    @Test
+    void undoesAnUpdateThatCouldNotBeWritten() throws IOException {
+        long commentId = createDurably("original");
+
+        StagedWrite<?> updated = repository.stageUpdateText(commentId, "edited");
+        store.fail(1);
+
+        assertThrows(IOException.class, updated::await);
+        assertEquals("original", repository.findById(commentId).get().getText());
+    }
+
+    @Test
+    void undoesFailedWritesReportedInAnyOrder() throws IOException {
+        long commentId = createDurably("original");
+        StagedWrite<?> first = repository.stageUpdateText(commentId, "first");
+        StagedWrite<?> second = repository.stageUpdateText(commentId, "second");
+
+        // The later write is the one reported first; the earlier one has not been undone yet
+        store.fail(2);
+        assertThrows(IOException.class, second::await);
+        assertEquals("first", repository.findById(commentId).get().getText());
+
+        store.fail(1);
+        assertThrows(IOException.class, first::await);
+        assertEquals("original", repository.findById(commentId).get().getText());
+    }
+
+    @Test
+    void keepsTheLatestStateUntilItsOwnWriteFails() throws IOException {
+        long commentId = createDurably("original");
+        StagedWrite<?> first = repository.stageUpdateText(commentId, "first");
+        StagedWrite<?> second = repository.stageUpdateText(commentId, "second");
+
+        store.fail(1);
+        assertThrows(IOException.class, first::await);
+        assertEquals("second", repository.findById(commentId).get().getText());
+
+        store.fail(2);
+        assertThrows(IOException.class, second::await);
+        assertEquals("original", repository.findById(commentId).get().getText());
+    }
+
+    @Test
+    void restoresACommentWhoseDeleteCouldNotBeWritten() throws IOException {
+        long commentId = createDurably("original");
+
+        StagedWrite<Boolean> deleted = repository.stageDelete(commentId);
+        assertFalse(repository.findById(commentId).isPresent());
+        store.fail(1);
+
+        assertThrows(IOException.class, deleted::await);
+        assertEquals("original", repository.findById(commentId).get().getText());
+        assertEquals(1, repository.countByArticleId(ARTICLE));
+    }
+
+    @Test
+    void undoesOnlyTheChangesThatAPartialWriteReportsFailed() throws IOException {
+        StagedWrite<List<Optional<StoredComment>>> created = repository.stageCreateAll(List.of(
+                comment(ARTICLE, "written"), comment(ARTICLE + 1, "lost")));
+        List<CommentJournalRecord> changes = store.changes.get(0);
+
+        store.flushes.get(0).completeExceptionally(new CommentStore.PartialWriteException(
+                List.of(changes.get(1)), new IOException("disk full")));
+
+        assertThrows(IOException.class, created::await);
+        assertEquals(1, repository.countByArticleId(ARTICLE));
+        assertEquals(0, repository.countByArticleId(ARTICLE + 1));
+    }
+
+    @Test
+    void undoesReactionsThatCouldNotBeWritten() throws IOException {
+        long commentId = createDurably("original");
+        store.failNextWrites = true;
+
+        assertThrows(IOException.class, () -> repository.addReactions(Map.of(commentId, Map.of("like", 2L))));
+        assertEquals(0L, repository.findById(commentId).get().totalReactions());
+    }
+
+    @Test
+    void aNewCommentStartsWithoutTheReactionsItWasPostedWith() throws IOException {
+        Comment posted = comment(ARTICLE, "text");
+        posted.setReactions(new HashMap<>(Map.of("made-up-reaction", 1_000_000L, "like", 5L)));
+
+        StagedWrite<Optional<StoredComment>> created = repository.stageCreate(posted);
+        store.succeed(0);
+
+        assertEquals(0L, created.await().get().totalReactions());
+        assertNull(store.changes.get(0).get(0).getComment().getReactions());
+        assertFalse(ReactionTypes.contains("made-up-reaction"));
+    }
+
+    @Test
+    void commentsOfABatchStartWithoutReactions() throws IOException {
+        Comment posted = comment(ARTICLE, "text");
+        posted.setReactions(new HashMap<>(Map.of("another-made-up-reaction", 3L)));
+
+        StagedWrite<List<Optional<StoredComment>>> created = repository.stageCreateAll(List.of(posted));
+        store.succeed(0);
+
+        assertEquals(0L, created.await().get(0).get().totalReactions());
+        assertFalse(ReactionTypes.contains("another-made-up-reaction"));
+    }
+
+    @Test
+    void rejectsAReplyWhoseParentIsGone() throws IOException {
+        long parentId = createDurably("parent");
+        Comment reply = comment(ARTICLE, "reply");
+        reply.setParentCommentId(parentId);
+        // Deleted after the caller checked the parent, but before the reply is stored
+        repository.stageDelete(parentId);
+        store.succeed(1);
+
+        StagedWrite<Optional<StoredComment>> created = repository.stageCreate(reply);
+
+        assertTrue(created.await().isEmpty());
+        assertEquals(0, repository.countByArticleId(ARTICLE));
+        assertEquals(2, store.changes.size());
+    }
+
+    @Test
+    void rejectsOnlyTheRepliesOfABatchWhoseParentIsGone() throws IOException {
+        long parentId = createDurably("parent");
+        repository.stageDelete(parentId);
+        store.succeed(1);
+        Comment orphan = comment(ARTICLE, "orphan");
+        orphan.setParentCommentId(parentId);
+
+        StagedWrite<List<Optional<StoredComment>>> created = repository.stageCreateAll(List.of(
+                comment(ARTICLE, "first"), orphan, comment(ARTICLE, "last")));
+        store.succeed(2);
+
+        List<Optional<StoredComment>> createdComments = created.await();
+        assertEquals("first", createdComments.get(0).get().getText());
+        assertTrue(createdComments.get(1).isEmpty());
+        assertEquals("last", createdComments.get(2).get().getText());
+        assertEquals(2, store.changes.get(2).size());
+        assertEquals(2, repository.countByArticleId(ARTICLE));
+    }
+
+    @Test
+    void aCompactionLeavesOutAWriteThatFailsWhileItStarts(@TempDir Path dir) throws Exception {
+        Files.writeString(dir.resolve("comments-manifest.json"), "{\"segmentCount\":1}");
+        Path segment = dir.resolve("comment-segments-1").resolve("segment-000");
+        // Left by a compaction that did not finish, so the next one has something to fold in
+        CommentJournal journal = new CommentJournal(segment, "always", 0, 1, NewsMetrics.detached());
+        Comment written = comment(ARTICLE, "written");
+        written.setCommentId(1);
+        journal.appendAll(List.of(CommentJournalRecord.created(written))).get();
+        journal.rotate();
+        journal.close();
+        // The live journal cannot be created, so the next flush fails
+        Path journalFile = segment.resolve("comments.journal");
+        Files.createSymbolicLink(journalFile, Files.createFile(dir.resolve("not-a-directory")).resolve("journal"));
+
+        JsonFileStorage storage = jsonStorage(dir);
+        CommentRepository onDisk = repository(storage);
+        StagedWrite<Optional<StoredComment>> lost = onDisk.stageCreate(comment(ARTICLE, "lost"));
+        onDisk.compact();
+
+        assertThrows(IOException.class, lost::await);
+        storage.close();
+        Files.deleteIfExists(journalFile);
+        storage = jsonStorage(dir);
+        List<StoredComment> restarted = repository(storage).findByArticleId(ARTICLE);
+        storage.close();
+        assertEquals(1, restarted.size());
+        assertEquals("written", restarted.get(0).getText());
+    }
+
+    @Test
+    void pagesFollowTheCursorNewestFirst() throws IOException {
+        List<Comment> comments = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Comment comment = comment(ARTICLE, "comment " + i);
+            comment.setCommentedOn(new Date(1000L * (i % 3)));
+            comments.add(comment);
+        }
+        StagedWrite<List<Optional<StoredComment>>> created = repository.stageCreateAll(comments);
+        store.succeed(0);
+        created.await();
+
+        List<StoredComment> seen = new ArrayList<>();
+        CommentCursor after = null;
+        List<StoredComment> page;
+        do {
+            page = repository.findByArticleIdAfter(ARTICLE, after, 2);
+            seen.addAll(page);
+            after = page.isEmpty() ? after : page.get(page.size() - 1).cursor();
+        } while (page.size() == 2);
+
+        assertEquals(repository.findByArticleId(ARTICLE), seen);
+        for (int i = 1; i < seen.size(); i++) {
+            assertTrue(seen.get(i - 1).cursor().compareTo(seen.get(i).cursor()) < 0);
+        }
+        assertEquals(5, seen.size());
+    }
+
+    private long createDurably(String text) throws IOException {
+        StagedWrite<Optional<StoredComment>> created = repository.stageCreate(comment(ARTICLE, text));
+        store.succeed(store.flushes.size() - 1);
+        return created.await().get().getCommentId();
+    }
+
+    private static JsonFileStorage jsonStorage(Path dir) throws IOException {
+        NewsMetrics metrics = NewsMetrics.detached();
+        JsonFileStorage storage = new JsonFileStorage(dir.toString(), 1, "json", "always", 0, 1, metrics,
+                new CommentJsonFileHandler(dir.toString(), "json", metrics),
+                new UserJsonFileHandler(dir.toString()), new ArticleJsonFileHandler(dir.toString()));
+        storage.open();
+        return storage;
+    }
+
+    private static CommentRepository repository(JsonFileStorage storage) throws IOException {
+        SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1, 1000);
+        UserRepository userRepository = new UserRepository(storage, idGenerator);
+        userRepository.load();
+        CommentRepository repository = new CommentRepository(storage, userRepository, idGenerator);
+        repository.load();
+        return repository;
+    }
+
+    private static Comment comment(long articleId, String text) {
+        Comment comment = new Comment();
+        comment.setNewsArticleId(articleId);
+        comment.setText(text);
+        return comment;
+    }
+
+    /**
+     * Queues every write until the test completes it.
+     */
+    private static final class ControlledStore implements CommentStore, UserStore {
+
+        private final List<List<CommentJournalRecord>> changes = new ArrayList<>();
+        private final List<CompletableFuture<Void>> flushes = new ArrayList<>();
+        private boolean failNextWrites;
+
+        void succeed(int write) {
+            flushes.get(write).complete(null);
+        }
+
+        void fail(int write) {
+            flushes.get(write).completeExceptionally(new IOException("Could not write"));
+        }
+
+        @Override
+        public List<Comment> readComments() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<CommentJournalRecord> readCommentChanges() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public PendingWrite writeComments(List<CommentJournalRecord> written) {
+            CompletableFuture<Void> flushed = new CompletableFuture<>();
+            if (failNextWrites) {
+                flushed.completeExceptionally(new IOException("Could not write"));
+            }
+            changes.add(written);
+            flushes.add(flushed);
+            return () -> {
+                try {
+                    flushed.get();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                } catch (ExecutionException e) {
+                    throw (IOException) e.getCause();
+                }
+            };
+        }
+
+        @Override
+        public Compaction startCompaction() {
+            return null;
+        }
+
+        @Override
+        public List<User> readUsers() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void writeUsers(Map<Long, User> changes, Supplier<List<User>> users) {
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.myapp.news.repositories;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResourceVersionTests {
+
+    @Test
+    void givesOutTheDateOnceItsSecondIsOver() {
+        long earlier = System.currentTimeMillis() - 1000;
+
+        assertEquals(earlier, ResourceVersion.settledLastModified(earlier));
+        assertEquals(earlier, ResourceVersion.settledLastModified(new Date(earlier)));
+    }
+
+    @Test
+    void withholdsTheDateWithinTheSecondOfTheChange() {
+        ResourceVersion version = ResourceVersion.next();
+        long now = System.currentTimeMillis();
+
+        // Unless the second just turned over, which leaves the date settled
+        assertTrue(version.settledLastModified() == -1 || version.getLastModified() / 1000 < now / 1000);
+        assertEquals(-1, ResourceVersion.settledLastModified(now + 1000));
+    }
+
+    @Test
+    void hasNoDateForAnUndatedResource() {
+        assertEquals(-1, ResourceVersion.settledLastModified(null));
+    }
+
+    @Test
+    void neverReusesAnETag() {
+        assertNotEquals(ResourceVersion.next().toETag(), ResourceVersion.next().toETag());
+        assertNotEquals(ResourceVersion.INITIAL.toETag(), ResourceVersion.next().toETag());
+    }
+}
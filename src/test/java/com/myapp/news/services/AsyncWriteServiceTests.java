@@ -0,0 +1,146 @@
+package com.myapp.news.services;
+
+import com.myapp.news.repositories.StagedWrite;
+import com.myapp.news.utils.NewsMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncWriteServiceTests {
+
+    private final List<AsyncWriteService> services = new ArrayList<>();
+    private final CountDownLatch applying = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void close() {
+        release.countDown();
+        services.forEach(AsyncWriteService::close);
+    }
+
+    @Test
+    void answersWith503AndRetryAfterWhenTheBufferIsFull() throws Exception {
+        AsyncWriteService service = service(true, 2);
+        CompletableFuture<ResponseEntity<String>> blocking = service.submit(null, this::blockingWrite);
+        // The writer thread has taken the first write out of the buffer and is stuck applying it
+        assertTrue(applying.await(5, TimeUnit.SECONDS));
+        CompletableFuture<ResponseEntity<String>> second = service.submit(null, () -> written("second"));
+        CompletableFuture<ResponseEntity<String>> third = service.submit(null, () -> written("third"));
+
+        ResponseEntity<String> rejected = service.submit(null, () -> written("fourth")).get();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), rejected.getStatusCode().value());
+        assertEquals("3", rejected.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertFalse(second.isDone());
+
+        release.countDown();
+        assertEquals("blocking", blocking.get(5, TimeUnit.SECONDS).getBody());
+        assertEquals("second", second.get(5, TimeUnit.SECONDS).getBody());
+        assertEquals("third", third.get(5, TimeUnit.SECONDS).getBody());
+    }
+
+    @Test
+    void acceptsWritesAgainOnceTheBufferDrains() throws Exception {
+        AsyncWriteService service = service(true, 1);
+        CompletableFuture<ResponseEntity<String>> blocking = service.submit(null, this::blockingWrite);
+        assertTrue(applying.await(5, TimeUnit.SECONDS));
+        CompletableFuture<ResponseEntity<String>> buffered = service.submit(null, () -> written("buffered"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                service.submit(null, () -> written("rejected")).get().getStatusCode().value());
+
+        release.countDown();
+        blocking.get(5, TimeUnit.SECONDS);
+        buffered.get(5, TimeUnit.SECONDS);
+
+        ResponseEntity<String> retried = service.submit(null, () -> written("retried")).get(5, TimeUnit.SECONDS);
+        assertEquals("retried", retried.getBody());
+    }
+
+    @Test
+    void acknowledgesAcceptedWritesBeforeTheyAreApplied() throws Exception {
+        AsyncWriteService service = service(true, 2);
+
+        ResponseEntity<String> accepted = service.submit("accepted", this::blockingWrite).get(5, TimeUnit.SECONDS);
+
+        assertEquals(HttpStatus.ACCEPTED.value(), accepted.getStatusCode().value());
+    }
+
+    @Test
+    void rejectsUnknownAcknowledgements() throws Exception {
+        AsyncWriteService service = service(true, 2);
+
+        ResponseEntity<String> response = service.submit("eventually", () -> written("x")).get();
+
+        assertEquals(HttpStatus.BAD_REQUEST.value(), response.getStatusCode().value());
+    }
+
+    @Test
+    void answersAFailedWriteWith500() throws Exception {
+        AsyncWriteService service = service(true, 2);
+
+        ResponseEntity<String> response = service.<String>submit(null, () -> {
+            throw new IOException("disk full");
+        }).get(5, TimeUnit.SECONDS);
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR.value(), response.getStatusCode().value());
+    }
+
+    @Test
+    void keepsWritingAfterAWriteFailsWithAnError() throws Exception {
+        AsyncWriteService service = service(true, 2);
+
+        CompletableFuture<ResponseEntity<String>> failed = service.<String>submit(null, () -> {
+            throw new StackOverflowError();
+        });
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(StackOverflowError.class, failure.getCause());
+
+        ResponseEntity<String> next = service.submit(null, () -> written("next")).get(5, TimeUnit.SECONDS);
+        assertEquals("next", next.getBody());
+    }
+
+    @Test
+    void appliesWritesInlineWhenDisabled() throws Exception {
+        AsyncWriteService service = service(false, 2);
+        CompletableFuture<ResponseEntity<String>> response = service.submit(null, () -> written("inline"));
+
+        assertTrue(response.isDone());
+        assertEquals("inline", response.get().getBody());
+    }
+
+    private AsyncWriteService service(boolean enabled, int bufferSize) {
+        AsyncWriteService service = new AsyncWriteService(enabled, "durable", bufferSize, 1, 3, NewsMetrics.detached());
+        services.add(service);
+        return service;
+    }
+
+    private StagedWrite<ResponseEntity<String>> blockingWrite() {
+        applying.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return written("blocking");
+    }
+
+    private static StagedWrite<ResponseEntity<String>> written(String body) {
+        return StagedWrite.done(ResponseEntity.ok(body));
+    }
+}
@@ -0,0 +1,166 @@
+package com.myapp.news.services;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.User;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.ResourceVersion;
+import com.myapp.news.repositories.UserRepository;
+import com.myapp.news.storage.CommentStore;
+import com.myapp.news.storage.UserStore;
+import com.myapp.news.utils.CommentJournalRecord;
+import com.myapp.news.utils.SnowflakeIdGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CommentPageCacheTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private CommentRepository repository;
+
+    @BeforeEach
+    void load() throws IOException {
+        SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1, 1000);
+        DiscardingStore store = new DiscardingStore();
+        UserRepository userRepository = new UserRepository(store, idGenerator);
+        userRepository.load();
+        repository = new CommentRepository(store, userRepository, idGenerator);
+        repository.load();
+    }
+
+    @Test
+    void servesAPageOnlyForTheVersionItWasRenderedFrom() throws IOException {
+        CommentPageCache cache = new CommentPageCache(repository, registry, 8000, 4);
+        CommentPageCache.Key key = key(1, "page=1");
+        ResourceVersion rendered = repository.commentsVersion(1);
+        cache.put(key, rendered, body(100));
+
+        assertArrayEquals(body(100), cache.get(key, rendered));
+
+        repository.create(comment(1));
+        assertNull(cache.get(key, rendered));
+        assertNull(cache.get(key, repository.commentsVersion(1)));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedPagesToStayWithinTheSize() {
+        CommentPageCache cache = new CommentPageCache(repository, registry, 8000, 1);
+        for (int page = 1; page <= 8; page++) {
+            cache.put(key(1, "page=" + page), repository.commentsVersion(1), body(1000));
+        }
+        // Used most recently, so the next put evicts page 2 instead
+        assertNotNull(cache.get(key(1, "page=1"), repository.commentsVersion(1)));
+
+        cache.put(key(1, "page=9"), repository.commentsVersion(1), body(1000));
+
+        assertEquals(8, cache.size());
+        assertEquals(8000, cache.bytes());
+        assertNotNull(cache.get(key(1, "page=1"), repository.commentsVersion(1)));
+        assertNull(cache.get(key(1, "page=2"), repository.commentsVersion(1)));
+        assertEquals(1.0, registry.get("cache.evictions").tag("cause", "size").counter().count());
+    }
+
+    @Test
+    void doesNotCacheAPageTooLargeForItsStripe() {
+        CommentPageCache cache = new CommentPageCache(repository, registry, 8000, 2);
+
+        cache.put(key(1, "page=1"), repository.commentsVersion(1), body(501));
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void dropsOnlyThePagesOfTheArticleWhoseCommentsChanged() throws IOException {
+        CommentPageCache cache = new CommentPageCache(repository, registry, 80000, 4);
+        for (long article = 1; article <= 8; article++) {
+            cache.put(key(article, "page=1"), repository.commentsVersion(article), body(100));
+            cache.put(key(article, "page=2"), repository.commentsVersion(article), body(100));
+        }
+
+        repository.create(comment(3));
+
+        assertEquals(14, cache.size());
+        assertEquals(1400, cache.bytes());
+        assertNull(cache.get(key(3, "page=1"), repository.commentsVersion(3)));
+        for (long article = 1; article <= 8; article++) {
+            if (article != 3) {
+                assertNotNull(cache.get(key(article, "page=2"), repository.commentsVersion(article)));
+            }
+        }
+        assertEquals(2.0, registry.get("cache.evictions").tag("cause", "invalidated").counter().count());
+    }
+
+    @Test
+    void ignoresAPageRenderedBeforeTheCommentsChanged() throws IOException {
+        CommentPageCache cache = new CommentPageCache(repository, registry, 8000, 4);
+        ResourceVersion rendered = repository.commentsVersion(1);
+        repository.create(comment(1));
+
+        cache.put(key(1, "page=1"), rendered, body(100));
+
+        assertEquals(0, cache.size());
+    }
+
+    private static CommentPageCache.Key key(long articleId, String query) {
+        return new CommentPageCache.Key(articleId, query, "1");
+    }
+
+    private static byte[] body(int length) {
+        byte[] body = new byte[length];
+        body[0] = (byte) length;
+        return body;
+    }
+
+    private static Comment comment(long articleId) {
+        Comment comment = new Comment();
+        comment.setNewsArticleId(articleId);
+        comment.setText("text");
+        return comment;
+    }
+
+    /**
+     * Takes every write as done without keeping it.
+     */
+    private static final class DiscardingStore implements CommentStore, UserStore {
+
+        @Override
+        public List<Comment> readComments() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<CommentJournalRecord> readCommentChanges() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public PendingWrite writeComments(List<CommentJournalRecord> changes) {
+            return PendingWrite.DONE;
+        }
+
+        @Override
+        public Compaction startCompaction() {
+            return null;
+        }
+
+        @Override
+        public List<User> readUsers() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void writeUsers(Map<Long, User> changes, Supplier<List<User>> users) {
+        }
+    }
+}
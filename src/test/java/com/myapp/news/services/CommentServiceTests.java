@@ -0,0 +1,121 @@
+package com.myapp.news.services;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.User;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.UserRepository;
+import com.myapp.news.storage.CommentStore;
+import com.myapp.news.storage.UserStore;
+import com.myapp.news.utils.CommentJournalRecord;
+import com.myapp.news.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CommentServiceTests {
+
+    private static final long ARTICLE = 10;
+
+    private CommentRepository comments;
+    private UserRepository users;
+    private CommentService service;
+
+    @BeforeEach
+    void load() throws IOException {
+        SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1, 1000);
+        DiscardingStore store = new DiscardingStore();
+        users = new UserRepository(store, idGenerator);
+        users.load();
+        comments = new CommentRepository(store, users, idGenerator);
+        comments.load();
+        service = new CommentService(comments, new ReactionService(comments, new String[] {"like"}), users);
+    }
+
+    @Test
+    void acceptsATopLevelCommentWithText() {
+        assertNull(service.checkNew(comment("text")));
+    }
+
+    @Test
+    void rejectsACommentWithoutText() {
+        assertEquals("Comment text is missing", service.checkNew(comment(null)));
+        assertEquals("Comment text is missing", service.checkNew(null));
+    }
+
+    @Test
+    void rejectsAReplyToAMissingOrForeignParent() throws IOException {
+        Comment reply = comment("reply");
+        reply.setParentCommentId(42L);
+        assertEquals("Parent comment 42 does not exist", service.checkNew(reply));
+
+        Comment elsewhere = comment("parent");
+        elsewhere.setNewsArticleId(ARTICLE + 1);
+        long parentId = comments.create(elsewhere).get().getCommentId();
+        reply.setParentCommentId(parentId);
+        assertEquals("Parent comment " + parentId + " belongs to another article", service.checkNew(reply));
+    }
+
+    @Test
+    void rejectsAnUnknownAuthor() throws IOException {
+        Comment comment = comment("text");
+        User author = new User();
+        author.setUserId(7);
+        comment.setAuthor(author);
+        assertEquals("Author 7 does not exist", service.checkNew(comment));
+
+        User known = new User();
+        known.setUserName("known");
+        comment.setAuthor(users.create(known));
+        assertNull(service.checkNew(comment));
+    }
+
+    private static Comment comment(String text) {
+        Comment comment = new Comment();
+        comment.setNewsArticleId(ARTICLE);
+        comment.setText(text);
+        return comment;
+    }
+
+    /**
+     * Takes every write as done without keeping it.
+     */
+    private static final class DiscardingStore implements CommentStore, UserStore {
+
+        @Override
+        public List<Comment> readComments() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<CommentJournalRecord> readCommentChanges() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public PendingWrite writeComments(List<CommentJournalRecord> changes) {
+            return PendingWrite.DONE;
+        }
+
+        @Override
+        public Compaction startCompaction() {
+            return null;
+        }
+
+        @Override
+        public List<User> readUsers() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void writeUsers(Map<Long, User> changes, Supplier<List<User>> users) {
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.myapp.news.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.User;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.StoredComment;
+import com.myapp.news.repositories.UserRepository;
+import com.myapp.news.storage.CommentStore;
+import com.myapp.news.storage.UserStore;
+import com.myapp.news.utils.CommentJournalRecord;
+import com.myapp.news.utils.SnowflakeIdGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+class CommentStreamServiceTests {
+
+    private static final long ARTICLE = 1;
+    private static final long OTHER_ARTICLE = 2;
+
+    private CommentRepository comments;
+    private BlockingCommentService commentService;
+    private CommentStreamService streams;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void load() throws IOException {
+        SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1, 1000);
+        DiscardingStore store = new DiscardingStore();
+        UserRepository users = new UserRepository(store, idGenerator);
+        users.load();
+        comments = new CommentRepository(store, users, idGenerator);
+        comments.load();
+        commentService = new BlockingCommentService(comments, users);
+        streams = stream(2, 10);
+        mockMvc = MockMvcBuilders.standaloneSetup(new StreamController(streams)).build();
+    }
+
+    @AfterEach
+    void close() {
+        commentService.release();
+        streams.close();
+    }
+
+    @Test
+    void sendsTheChangesOfTheSubscribedArticleOnly() throws Exception {
+        MockHttpServletResponse response = subscribe(null);
+        // Each change is awaited, so that none is coalesced with the next
+        comment(OTHER_ARTICLE, "elsewhere");
+        StoredComment created = comment(ARTICLE, "first");
+        awaitEvents(response, 1);
+        comments.updateText(created.getCommentId(), "edited");
+        awaitEvents(response, 2);
+        comments.delete(created.getCommentId());
+
+        List<String> events = awaitEvents(response, 3);
+
+        assertEquals(CommentStreamService.CREATED, name(events.get(0)));
+        assertTrue(events.get(0).contains("first"));
+        assertEquals(CommentStreamService.UPDATED, name(events.get(1)));
+        assertTrue(events.get(1).contains("edited"));
+        assertEquals(CommentStreamService.DELETED, name(events.get(2)));
+        assertTrue(events.stream().noneMatch(event -> event.contains("elsewhere")));
+    }
+
+    @Test
+    void coalescesTheChangesBufferedWhileASendIsInProgress() throws Exception {
+        MockHttpServletResponse response = subscribe(null);
+        commentService.blockNextRender();
+        comment(ARTICLE, "first");
+        commentService.awaitBlocked();
+
+        StoredComment second = comment(ARTICLE, "second");
+        comments.updateText(second.getCommentId(), "second, edited");
+        comments.addReactions(Map.of(second.getCommentId(), Map.of("like", 1L)));
+        StoredComment third = comment(ARTICLE, "third");
+        comments.delete(third.getCommentId());
+        commentService.release();
+
+        List<String> events = awaitEvents(response, 2);
+        assertEquals(CommentStreamService.CREATED, name(events.get(1)));
+        assertTrue(events.get(1).contains("second, edited"));
+        // Nothing of the comment that came and went before the subscriber saw it
+        Thread.sleep(100);
+        assertEquals(2, events(response).size());
+    }
+
+    @Test
+    void sendsAResyncInsteadOfTheEventsOfAFullBuffer() throws Exception {
+        MockHttpServletResponse response = subscribe(null);
+        commentService.blockNextRender();
+        comment(ARTICLE, "first");
+        commentService.awaitBlocked();
+
+        for (int i = 0; i < 3; i++) {
+            comment(ARTICLE, "missed " + i);
+        }
+        commentService.release();
+        assertEquals(CommentStreamService.RESYNC, name(awaitEvents(response, 2).get(1)));
+        comment(ARTICLE, "after");
+
+        List<String> events = awaitEvents(response, 3);
+        assertTrue(events.get(2).contains("after"));
+        assertTrue(events.stream().noneMatch(event -> event.contains("missed")));
+    }
+
+    @Test
+    void startsAClientThatMissedChangesWithAResync() throws Exception {
+        String current = comments.commentsVersion(ARTICLE).toETag();
+        comment(ARTICLE, "missed");
+
+        MockHttpServletResponse response = subscribe(current);
+
+        List<String> events = awaitEvents(response, 1);
+        assertEquals(CommentStreamService.RESYNC, name(events.get(0)));
+        assertTrue(events.get(0).contains("id:" + comments.commentsVersion(ARTICLE).toETag()));
+    }
+
+    @Test
+    void refusesSubscribersBeyondTheMaximum() {
+        CommentStreamService limited = stream(2, 1);
+        try {
+            assertNotNull(limited.subscribe(ARTICLE, null));
+            assertNull(limited.subscribe(OTHER_ARTICLE, null));
+        } finally {
+            limited.close();
+        }
+    }
+
+    private CommentStreamService stream(int bufferSize, int maxSubscribers) {
+        return new CommentStreamService(comments, commentService, new ObjectMapper(), new SimpleMeterRegistry(),
+                bufferSize, maxSubscribers, 60000, 10000, 1, false);
+    }
+
+    private MockHttpServletResponse subscribe(String lastEventId) throws Exception {
+        var stream = get("/articles/{articleId}/comments/stream", ARTICLE);
+        if (lastEventId != null) {
+            stream.header("Last-Event-ID", lastEventId);
+        }
+        return mockMvc.perform(stream).andExpect(request().asyncStarted()).andReturn().getResponse();
+    }
+
+    private StoredComment comment(long articleId, String text) throws IOException {
+        Comment comment = new Comment();
+        comment.setNewsArticleId(articleId);
+        comment.setText(text);
+        return comments.create(comment).orElseThrow();
+    }
+
+    /**
+     * Waits until the stream holds at least the given number of events.
+     */
+    private static List<String> awaitEvents(MockHttpServletResponse response, int count) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        List<String> events = events(response);
+        while (events.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            events = events(response);
+        }
+        assertTrue(events.size() >= count, "Expected " + count + " events but got " + events);
+        return events;
+    }
+
+    /**
+     * The named events written so far, without heartbeats.
+     */
+    private static List<String> events(MockHttpServletResponse response) throws IOException {
+        List<String> events = new ArrayList<>();
+        for (String event : response.getContentAsString().split("\n\n")) {
+            if (event.contains("event:")) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private static String name(String event) {
+        for (String line : event.split("\n")) {
+            if (line.startsWith("event:")) {
+                return line.substring("event:".length());
+            }
+        }
+        return null;
+    }
+
+    @RestController
+    private static final class StreamController {
+
+        private final CommentStreamService streams;
+
+        private StreamController(CommentStreamService streams) {
+            this.streams = streams;
+        }
+
+        @GetMapping("/articles/{articleId}/comments/stream")
+        public SseEmitter stream(@PathVariable long articleId,
+                                 @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
+            return streams.subscribe(articleId, lastEventId);
+        }
+    }
+
+    /**
+     * Holds up the next comment render on the sender thread until the test releases it, so that
+     * changes pile up in the subscriber's buffer meanwhile.
+     */
+    private static final class BlockingCommentService extends CommentService {
+
+        private volatile CountDownLatch blocked;
+        private volatile CountDownLatch released = new CountDownLatch(0);
+
+        private BlockingCommentService(CommentRepository comments, UserRepository users) {
+            super(comments, new ReactionService(comments, new String[] {"like"}), users);
+        }
+
+        private void blockNextRender() {
+            blocked = new CountDownLatch(1);
+            released = new CountDownLatch(1);
+        }
+
+        private void awaitBlocked() throws InterruptedException {
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        }
+
+        private void release() {
+            released.countDown();
+        }
+
+        @Override
+        public Comment toResponse(StoredComment comment) {
+            CountDownLatch block = blocked;
+            if (block != null && block.getCount() > 0) {
+                block.countDown();
+                try {
+                    released.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.toResponse(comment);
+        }
+    }
+
+    /**
+     * Takes every write as done without keeping it.
+     */
+    private static final class DiscardingStore implements CommentStore, UserStore {
+
+        @Override
+        public List<Comment> readComments() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<CommentJournalRecord> readCommentChanges() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public PendingWrite writeComments(List<CommentJournalRecord> changes) {
+            return PendingWrite.DONE;
+        }
+
+        @Override
+        public Compaction startCompaction() {
+            return null;
+        }
+
+        @Override
+        public List<User> readUsers() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void writeUsers(Map<Long, User> changes, Supplier<List<User>> users) {
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.myapp.news.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.NewsArticle;
+import com.myapp.news.dtos.User;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.NewsArticleRepository;
+import com.myapp.news.repositories.UserRepository;
+import com.myapp.news.storage.ArticleStore;
+import com.myapp.news.storage.CommentStore;
+import com.myapp.news.storage.UserStore;
+import com.myapp.news.utils.CommentJournalRecord;
+import com.myapp.news.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExportServiceTests {
+
+    private static final long ARTICLE = 10;
+    private static final Instant NOON = Instant.parse("2024-05-01T12:00:00Z");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private CommentRepository comments;
+    private UserRepository users;
+    private ExportService exports;
+
+    @BeforeEach
+    void load() throws IOException {
+        SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1, 1000);
+        DiscardingStore store = new DiscardingStore();
+        users = new UserRepository(store, idGenerator);
+        users.load();
+        comments = new CommentRepository(store, users, idGenerator);
+        comments.load();
+        NewsArticleRepository articles = new NewsArticleRepository(store, idGenerator);
+        articles.load();
+        CommentService commentService = new CommentService(comments, new ReactionService(comments, new String[] {"like"}), users);
+        // Indented like the application's mapper may be; an export still keeps each record on one line
+        exports = new ExportService(comments, articles, users, commentService,
+                new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT));
+    }
+
+    @Test
+    void writesOneRecordPerLine() throws IOException {
+        comment(ARTICLE, "first", NOON);
+        comment(ARTICLE, "second\nline", NOON);
+
+        String ndjson = export(exports.exportComments(null, null, null, false));
+
+        assertTrue(ndjson.endsWith("\n"));
+        List<String> lines = List.of(ndjson.split("\n"));
+        assertEquals(2, lines.size());
+        assertEquals(Set.of("first", "second\nline"), lines.stream()
+                .map(this::parse)
+                .map(node -> node.get("text").asText())
+                .collect(Collectors.toSet()));
+    }
+
+    @Test
+    void exportsOnlyTheCommentsOfTheArticlePostedInTheRange() throws IOException {
+        comment(ARTICLE, "before", NOON.minusSeconds(1));
+        comment(ARTICLE, "from", NOON);
+        comment(ARTICLE, "within", NOON.plusSeconds(30));
+        comment(ARTICLE, "to", NOON.plusSeconds(60));
+        comment(ARTICLE + 1, "elsewhere", NOON);
+
+        String ndjson = export(exports.exportComments(ARTICLE, NOON, NOON.plusSeconds(60), false));
+
+        assertEquals(Set.of("from", "within"), texts(ndjson));
+    }
+
+    @Test
+    void writesNothingWhenNoRecordMatches() throws IOException {
+        comment(ARTICLE, "text", NOON);
+
+        assertEquals("", export(exports.exportComments(ARTICLE + 1, null, null, false)));
+    }
+
+    @Test
+    void compressesTheSameLinesWhenAsked() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            comment(ARTICLE, "comment " + i, NOON);
+        }
+        for (int i = 0; i < 3; i++) {
+            User user = new User();
+            user.setUserName("user " + i);
+            users.create(user);
+        }
+
+        assertArrayEquals(bytes(exports.exportComments(null, null, null, false)),
+                gunzip(bytes(exports.exportComments(null, null, null, true))));
+        byte[] plainUsers = bytes(exports.exportUsers(false));
+        assertEquals(3, new String(plainUsers, StandardCharsets.UTF_8).split("\n").length);
+        assertArrayEquals(plainUsers, gunzip(bytes(exports.exportUsers(true))));
+    }
+
+    private void comment(long articleId, String text, Instant commentedOn) throws IOException {
+        Comment comment = new Comment();
+        comment.setNewsArticleId(articleId);
+        comment.setText(text);
+        comment.setCommentedOn(Date.from(commentedOn));
+        comments.create(comment);
+    }
+
+    private Set<String> texts(String ndjson) {
+        return ndjson.lines().map(this::parse).map(node -> node.get("text").asText()).collect(Collectors.toSet());
+    }
+
+    private JsonNode parse(String line) {
+        try {
+            return objectMapper.readTree(line);
+        } catch (IOException e) {
+            throw new AssertionError("Not a JSON line: " + line, e);
+        }
+    }
+
+    private static String export(StreamingResponseBody body) throws IOException {
+        return new String(bytes(body), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(StreamingResponseBody body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Takes every write as done without keeping it.
+     */
+    private static final class DiscardingStore implements CommentStore, UserStore, ArticleStore {
+
+        @Override
+        public List<Comment> readComments() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<CommentJournalRecord> readCommentChanges() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public PendingWrite writeComments(List<CommentJournalRecord> changes) {
+            return PendingWrite.DONE;
+        }
+
+        @Override
+        public Compaction startCompaction() {
+            return null;
+        }
+
+        @Override
+        public List<User> readUsers() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void writeUsers(Map<Long, User> changes, Supplier<List<User>> users) {
+        }
+
+        @Override
+        public List<NewsArticle> readArticles() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void writeArticles(Map<Long, NewsArticle> changes, Supplier<List<NewsArticle>> articles) {
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.myapp.news.services;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.User;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.StoredComment;
+import com.myapp.news.repositories.UserRepository;
+import com.myapp.news.storage.CommentStore;
+import com.myapp.news.storage.UserStore;
+import com.myapp.news.utils.CommentJournalRecord;
+import com.myapp.news.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReactionServiceTests {
+
+    private final BlockingStore store = new BlockingStore();
+    private CommentRepository repository;
+    private ReactionService reactions;
+    private StoredComment comment;
+
+    @BeforeEach
+    void load() throws IOException {
+        SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1, 1000);
+        UserRepository userRepository = new UserRepository(store, idGenerator);
+        userRepository.load();
+        repository = new CommentRepository(store, userRepository, idGenerator);
+        repository.load();
+        reactions = new ReactionService(repository, new String[] {"like", "love"});
+
+        Comment posted = new Comment();
+        posted.setNewsArticleId(10);
+        posted.setText("text");
+        comment = repository.create(posted).get();
+    }
+
+    @AfterEach
+    void release() {
+        store.written.countDown();
+    }
+
+    @Test
+    void countsReactionsBeforeTheyAreFlushed() {
+        reactions.increment(comment, "like");
+        reactions.increment(comment, "like");
+        reactions.increment(comment, "love");
+
+        assertEquals(Map.of("like", 2L, "love", 1L), reactions.reactionsOf(comment));
+        assertEquals(0L, comment.totalReactions());
+    }
+
+    @Test
+    void keepsTheCountsWhileAFlushIsWritten() throws Exception {
+        reactions.increment(comment, "like");
+        reactions.increment(comment, "like");
+        store.blockWrites = true;
+
+        Thread flush = new Thread(reactions::flush);
+        flush.start();
+        assertTrue(store.writing.await(5, TimeUnit.SECONDS));
+
+        // The repository already serves the flushed counts, but the flush has not returned
+        StoredComment flushed = repository.findById(comment.getCommentId()).get();
+        assertEquals(2L, flushed.totalReactions());
+        assertEquals(Map.of("like", 2L), reactions.reactionsOf(comment));
+        assertEquals(Map.of("like", 2L), reactions.reactionsOf(flushed));
+
+        reactions.increment(flushed, "like");
+        assertEquals(Map.of("like", 3L), reactions.reactionsOf(flushed));
+
+        store.written.countDown();
+        flush.join(5000);
+        assertEquals(Map.of("like", 3L), reactions.reactionsOf(repository.findById(comment.getCommentId()).get()));
+    }
+
+    @Test
+    void keepsTheCountsOfAFailedFlushForTheNextOne() throws Exception {
+        reactions.increment(comment, "love");
+        store.failWrites = true;
+
+        reactions.flush();
+
+        StoredComment unchanged = repository.findById(comment.getCommentId()).get();
+        assertEquals(0L, unchanged.totalReactions());
+        assertEquals(Map.of("love", 1L), reactions.reactionsOf(unchanged));
+
+        store.failWrites = false;
+        reactions.flush();
+
+        StoredComment flushed = repository.findById(comment.getCommentId()).get();
+        assertEquals(1L, flushed.totalReactions());
+        assertEquals(Map.of("love", 1L), reactions.reactionsOf(flushed));
+    }
+
+    /**
+     * Writes at once, or holds the writes back until the test releases them.
+     */
+    private static final class BlockingStore implements CommentStore, UserStore {
+
+        private final CountDownLatch writing = new CountDownLatch(1);
+        private final CountDownLatch written = new CountDownLatch(1);
+        private volatile boolean blockWrites;
+        private volatile boolean failWrites;
+
+        @Override
+        public List<Comment> readComments() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<CommentJournalRecord> readCommentChanges() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public PendingWrite writeComments(List<CommentJournalRecord> changes) {
+            if (failWrites) {
+                return () -> {
+                    throw new IOException("Could not write");
+                };
+            }
+            if (!blockWrites) {
+                return PendingWrite.DONE;
+            }
+            return () -> {
+                writing.countDown();
+                try {
+                    written.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+        }
+
+        @Override
+        public Compaction startCompaction() {
+            return null;
+        }
+
+        @Override
+        public List<User> readUsers() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void writeUsers(Map<Long, User> changes, Supplier<List<User>> users) {
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.myapp.news.services;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.NewsArticle;
+import com.myapp.news.dtos.SearchHit;
+import com.myapp.news.dtos.SearchResults;
+import com.myapp.news.dtos.User;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.NewsArticleRepository;
+import com.myapp.news.repositories.UserRepository;
+import com.myapp.news.storage.ArticleStore;
+import com.myapp.news.storage.CommentStore;
+import com.myapp.news.storage.UserStore;
+import com.myapp.news.utils.CommentJournalRecord;
+import com.myapp.news.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchServiceTests {
+
+    private static final long ARTICLE = 10;
+
+    private CommentRepository comments;
+    private NewsArticleRepository articles;
+    private SearchService search;
+
+    @BeforeEach
+    void load() throws IOException {
+        SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1, 1000);
+        DiscardingStore store = new DiscardingStore();
+        UserRepository users = new UserRepository(store, idGenerator);
+        users.load();
+        comments = new CommentRepository(store, users, idGenerator);
+        comments.load();
+        articles = new NewsArticleRepository(store, idGenerator);
+        articles.load();
+        search = new SearchService(articles, comments,
+                new CommentService(comments, new ReactionService(comments, new String[] {"like"}), users));
+        search.load();
+    }
+
+    @Test
+    void ranksTheShorterOfTwoDocumentsWithTheSameTermFrequencyFirst() throws IOException {
+        long longer = comment("storm hit the coast overnight, closing roads and schools");
+        long shorter = comment("storm warning");
+
+        assertEquals(List.of(shorter, longer), ids(search.search("storm", null, 0, 10)));
+    }
+
+    @Test
+    void ranksAMatchOnARareTermAboveAMatchOnACommonOne() throws IOException {
+        long rare = comment("budget speech");
+        long common = comment("vote counted");
+        comment("vote tomorrow");
+        comment("vote early");
+
+        assertEquals(List.of(rare, common), ids(search.search("budget vote", null, 0, 2)));
+    }
+
+    @Test
+    void countsATitleTermThreeTimes() throws IOException {
+        long inContent = article("Weather", "flooding expected");
+        long inTitle = article("Flooding", "weather expected");
+
+        SearchResults results = search.search("flooding", null, 0, 10);
+
+        assertEquals(List.of(inTitle, inContent), ids(results));
+        List<SearchHit> hits = results.getHits();
+        assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+    }
+
+    @Test
+    void pagesThroughTheHitsOfOneType() throws IOException {
+        article("Harbour", "harbour news");
+        List<Long> harbour = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            harbour.add(comment("harbour " + "long ".repeat(i) + "comment"));
+        }
+
+        SearchResults page = search.search("harbour", SearchService.COMMENT, 2, 2);
+
+        assertEquals(5, page.getTotalHits());
+        assertEquals(harbour.subList(2, 4), ids(page));
+        assertEquals(6, search.search("harbour", null, 0, 10).getTotalHits());
+    }
+
+    @Test
+    void findsAnEditedCommentOnlyByItsNewText() throws IOException {
+        long commentId = comment("first draft of the opinion");
+
+        comments.updateText(commentId, "second thoughts on the opinion");
+
+        assertEquals(0, search.search("draft", null, 0, 10).getTotalHits());
+        assertEquals(List.of(commentId), ids(search.search("thoughts", null, 0, 10)));
+        assertEquals(List.of(commentId), ids(search.search("opinion", null, 0, 10)));
+    }
+
+    @Test
+    void leavesOutADeletedCommentAndReusesItsDocument() throws IOException {
+        long deleted = comment("match report");
+        comments.delete(deleted);
+
+        assertEquals(0, search.search("match", null, 0, 10).getTotalHits());
+
+        long added = comment("match preview");
+        assertEquals(List.of(added), ids(search.search("match", null, 0, 10)));
+        assertEquals(0, search.search("report", null, 0, 10).getTotalHits());
+    }
+
+    @Test
+    void followsArticleEditsAndDeletes() throws IOException {
+        long articleId = article("Local elections", "turnout was high");
+        NewsArticle changes = new NewsArticle();
+        changes.setTitle("Local results");
+        changes.setContent("turnout was high");
+
+        articles.update(articleId, changes);
+
+        assertEquals(0, search.search("elections", null, 0, 10).getTotalHits());
+        assertEquals(List.of(articleId), ids(search.search("results", SearchService.ARTICLE, 0, 10)));
+
+        articles.delete(articleId);
+
+        assertEquals(0, search.search("turnout", null, 0, 10).getTotalHits());
+    }
+
+    private static List<Long> ids(SearchResults results) {
+        return results.getHits().stream().map(SearchHit::getId).collect(Collectors.toList());
+    }
+
+    private long comment(String text) throws IOException {
+        Comment comment = new Comment();
+        comment.setNewsArticleId(ARTICLE);
+        comment.setText(text);
+        return comments.create(comment).orElseThrow().getCommentId();
+    }
+
+    private long article(String title, String content) throws IOException {
+        NewsArticle article = new NewsArticle();
+        article.setTitle(title);
+        article.setContent(content);
+        return articles.create(article).getNewsArticleId();
+    }
+
+    /**
+     * Takes every write as done without keeping it.
+     */
+    private static final class DiscardingStore implements CommentStore, UserStore, ArticleStore {
+
+        @Override
+        public List<Comment> readComments() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<CommentJournalRecord> readCommentChanges() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public PendingWrite writeComments(List<CommentJournalRecord> changes) {
+            return PendingWrite.DONE;
+        }
+
+        @Override
+        public Compaction startCompaction() {
+            return null;
+        }
+
+        @Override
+        public List<User> readUsers() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void writeUsers(Map<Long, User> changes, Supplier<List<User>> users) {
+        }
+
+        @Override
+        public List<NewsArticle> readArticles() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void writeArticles(Map<Long, NewsArticle> changes, Supplier<List<NewsArticle>> articles) {
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.myapp.news.services;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.NewsArticle;
+import com.myapp.news.dtos.TrendingArticle;
+import com.myapp.news.dtos.User;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.NewsArticleRepository;
+import com.myapp.news.repositories.StagedWrite;
+import com.myapp.news.repositories.StoredComment;
+import com.myapp.news.repositories.UserRepository;
+import com.myapp.news.storage.ArticleStore;
+import com.myapp.news.storage.CommentStore;
+import com.myapp.news.storage.UserStore;
+import com.myapp.news.utils.CommentJournalRecord;
+import com.myapp.news.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TrendingServiceTests {
+
+    private final FailingStore store = new FailingStore();
+    private CommentRepository comments;
+    private TrendingService trending;
+    private long articleId;
+
+    @BeforeEach
+    void load() throws IOException {
+        SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1, 1000);
+        UserRepository users = new UserRepository(store, idGenerator);
+        users.load();
+        comments = new CommentRepository(store, users, idGenerator);
+        comments.load();
+        NewsArticleRepository articles = new NewsArticleRepository(store, idGenerator);
+        articles.load();
+        // Weights of 3 per comment and 1 per reaction, without decay
+        trending = new TrendingService(comments, articles, new String[] {"1h"}, 300, "0", 3, 1, 10);
+        trending.load();
+
+        NewsArticle article = new NewsArticle();
+        article.setTitle("title");
+        articleId = articles.create(article).getNewsArticleId();
+    }
+
+    @Test
+    void scoresNewCommentsAndReactions() throws IOException {
+        StoredComment comment = comments.create(comment()).get();
+        comments.create(comment());
+        comments.addReactions(Map.of(comment.getCommentId(), Map.of("like", 2L)));
+
+        trending.refresh();
+
+        assertEquals(8.0, score());
+    }
+
+    @Test
+    void doesNotScoreAnEdit() throws IOException {
+        StoredComment comment = comments.create(comment()).get();
+        comments.updateText(comment.getCommentId(), "edited");
+
+        trending.refresh();
+
+        assertEquals(3.0, score());
+    }
+
+    @Test
+    void doesNotScoreACommentWhoseDeleteWasUndone() throws IOException {
+        StoredComment comment = comments.create(comment()).get();
+        store.failWrites = true;
+
+        StagedWrite<Boolean> deleted = comments.stageDelete(comment.getCommentId());
+        assertThrows(IOException.class, deleted::await);
+        trending.refresh();
+
+        assertEquals(1, comments.countByArticleId(articleId));
+        assertEquals(3.0, score());
+    }
+
+    private double score() {
+        List<TrendingArticle> top = trending.trending("1h", 10);
+        assertEquals(1, top.size());
+        return top.get(0).getScore();
+    }
+
+    private Comment comment() {
+        Comment comment = new Comment();
+        comment.setNewsArticleId(articleId);
+        comment.setText("text");
+        return comment;
+    }
+
+    /**
+     * Takes writes as done, or fails them once the test says so.
+     */
+    private static final class FailingStore implements CommentStore, UserStore, ArticleStore {
+
+        private boolean failWrites;
+
+        @Override
+        public List<Comment> readComments() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<CommentJournalRecord> readCommentChanges() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public PendingWrite writeComments(List<CommentJournalRecord> changes) {
+            if (!failWrites) {
+                return PendingWrite.DONE;
+            }
+            return () -> {
+                throw new IOException("Could not write");
+            };
+        }
+
+        @Override
+        public Compaction startCompaction() {
+            return null;
+        }
+
+        @Override
+        public List<User> readUsers() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void writeUsers(Map<Long, User> changes, Supplier<List<User>> users) {
+        }
+
+        @Override
+        public List<NewsArticle> readArticles() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void writeArticles(Map<Long, NewsArticle> changes, Supplier<List<NewsArticle>> articles) {
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.myapp.news.storage;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.User;
+import com.myapp.news.repositories.CommentRepository;
+import com.myapp.news.repositories.StoredComment;
+import com.myapp.news.repositories.UserRepository;
+import com.myapp.news.utils.CommentJsonFileHandler;
+import com.myapp.news.utils.NewsMetrics;
+import com.myapp.news.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddedDatabaseStorageTests {
+
+    private static final Date COMMENTED_ON = new Date(1700000000000L);
+
+    @TempDir
+    Path dir;
+
+    private CommentJsonFileHandler seed;
+
+    @BeforeEach
+    void bundledSeed() {
+        seed = new CommentJsonFileHandler(dir.toString(), "json", NewsMetrics.detached());
+        ReflectionTestUtils.setField(seed, "commentsFilePath", "comments.json");
+    }
+
+    @Test
+    void readsBackWhatTheInMemoryBackendHolds() throws IOException {
+        Backend memory = load(new InMemoryStorage(seed));
+        Backend database = load(database());
+        assertEquals(describe(memory), describe(database));
+
+        memory.applyChanges();
+        database.applyChanges();
+        Backend reopened = load(database());
+
+        assertEquals(describe(memory), describe(reopened));
+        assertEquals(users(memory), users(reopened));
+    }
+
+    @Test
+    void importsTheSeedOnlyOnTheFirstStart() throws IOException {
+        Backend database = load(database());
+        long seeded = database.comments.count();
+        database.comments.delete(database.comments.findAll().get(0).getCommentId());
+
+        assertEquals(seeded - 1, load(database()).comments.count());
+    }
+
+    private EmbeddedDatabaseStorage database() throws IOException {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:file:" + dir.resolve("news"), "sa", "");
+        EmbeddedDatabaseStorage storage = new EmbeddedDatabaseStorage(new JdbcTemplate(dataSource),
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)), seed);
+        storage.createSchema();
+        return storage;
+    }
+
+    private static <S extends CommentStore & UserStore> Backend load(S store) throws IOException {
+        SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1, 1000);
+        UserRepository users = new UserRepository(store, idGenerator);
+        users.load();
+        CommentRepository comments = new CommentRepository(store, users, idGenerator);
+        comments.load();
+        return new Backend(users, comments);
+    }
+
+    /**
+     * The comments without their ids, which differ between the backends for new comments, so
+     * replies name the text of their parent instead.
+     */
+    private static List<String> describe(Backend backend) {
+        Map<Long, String> texts = backend.comments.findAll().stream()
+                .collect(Collectors.toMap(StoredComment::getCommentId, StoredComment::getText));
+        return backend.comments.findAll().stream()
+                .map(comment -> comment.getNewsArticleId() + " " + comment.getAuthorId() + " "
+                        + comment.getCommentedOn() + " " + comment.getText() + " " + comment.reactions()
+                        + (comment.isReply() ? " reply to " + texts.get(comment.getParentCommentId()) : ""))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> users(Backend backend) {
+        return backend.users.findAll().stream()
+                .map(user -> user.getUserId() + " " + user.getUserName() + " " + user.getEmailAddress())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static final class Backend {
+
+        private final UserRepository users;
+        private final CommentRepository comments;
+
+        private Backend(UserRepository users, CommentRepository comments) {
+            this.users = users;
+            this.comments = comments;
+        }
+
+        /**
+         * The same edits on either backend: a new comment with a reply, an edit, reactions and a delete.
+         */
+        private void applyChanges() throws IOException {
+            List<StoredComment> seeded = comments.findAll();
+            User author = users.findById(seeded.get(0).getAuthorId()).orElseThrow();
+
+            StoredComment parent = comments.create(comment(101, author, null, "new comment")).orElseThrow();
+            Optional<StoredComment> reply = comments.create(comment(101, author, parent.getCommentId(), "new reply"));
+            assertTrue(reply.isPresent());
+            comments.updateText(seeded.get(1).getCommentId(), "edited");
+            comments.addReactions(Map.of(parent.getCommentId(), Map.of("like", 2L),
+                    seeded.get(2).getCommentId(), Map.of("sad", 1L)));
+            comments.delete(seeded.get(3).getCommentId());
+        }
+
+        private static Comment comment(long articleId, User author, Long parentCommentId, String text) {
+            Comment comment = new Comment();
+            comment.setNewsArticleId(articleId);
+            comment.setAuthor(author);
+            comment.setParentCommentId(parentCommentId);
+            comment.setCommentedOn(COMMENTED_ON);
+            comment.setText(text);
+            return comment;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.myapp.news.storage;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.utils.ArticleJsonFileHandler;
+import com.myapp.news.utils.CommentJournal;
+import com.myapp.news.utils.CommentJournalRecord;
+import com.myapp.news.utils.CommentJsonFileHandler;
+import com.myapp.news.utils.NewsMetrics;
+import com.myapp.news.utils.UserJsonFileHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonFileStorageTests {
+
+    @TempDir
+    Path dir;
+
+    private final List<JsonFileStorage> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeStorages() throws IOException {
+        for (JsonFileStorage storage : opened) {
+            storage.close();
+        }
+    }
+
+    @Test
+    void writesEachCommentToTheSegmentOfItsArticle() throws IOException {
+        JsonFileStorage storage = open(4);
+        storage.writeComments(created(1, 2, 3, 4, 5, 6, 7, 8)).await();
+
+        for (int segment = 0; segment < 4; segment++) {
+            assertTrue(Files.exists(segmentDir(4, segment).resolve("comments.journal")));
+        }
+        storage.close();
+
+        assertEquals(texts(1, 2, 3, 4, 5, 6, 7, 8), texts(open(4)));
+    }
+
+    @Test
+    void redistributesTheCommentsWhenTheSegmentCountChanges() throws IOException {
+        JsonFileStorage storage = open(2);
+        storage.writeComments(created(1, 2, 3, 4, 5)).await();
+        // Journal records not yet compacted into a snapshot move along with the rest
+        storage.writeComments(List.of(CommentJournalRecord.updated(comment(2, "edited")),
+                CommentJournalRecord.deleted(5, 5))).await();
+        storage.close();
+
+        storage = open(3);
+        Map<Long, String> redistributed = texts(storage);
+        storage.close();
+
+        Map<Long, String> expected = texts(1, 2, 3, 4);
+        expected.put(2L, "edited");
+        assertEquals(expected, redistributed);
+        assertEquals(3, manifestSegmentCount());
+        assertFalse(Files.exists(dir.resolve("comment-segments-2")));
+        // Read back from the new segments, not handed over from the redistribution
+        assertEquals(expected, texts(open(3)));
+    }
+
+    @Test
+    void redoesARedistributionThatStoppedBeforeTheManifestWasReplaced() throws IOException {
+        JsonFileStorage storage = open(2);
+        storage.writeComments(created(1, 2, 3)).await();
+        storage.close();
+        // Half-written segments of an interrupted redistribution, holding a comment that does not exist
+        CommentJsonFileHandler partial = new CommentJsonFileHandler(segmentDir(3, 0).toString(), "json", NewsMetrics.detached());
+        partial.writeComments(List.of(comment(99, "partial")));
+
+        assertEquals(texts(1, 2, 3), texts(open(3)));
+        assertEquals(3, manifestSegmentCount());
+    }
+
+    @Test
+    void keepsUsingTheSegmentsOnceTheManifestNamesThem() throws IOException {
+        JsonFileStorage storage = open(2);
+        storage.writeComments(created(1, 2, 3)).await();
+        storage.close();
+        storage = open(3);
+        storage.close();
+        // Stopped after the manifest was replaced but before the old segments were removed
+        new CommentJsonFileHandler(segmentDir(2, 0).toString(), "json", NewsMetrics.detached())
+                .writeComments(List.of(comment(99, "stale")));
+
+        assertEquals(texts(1, 2, 3), texts(open(3)));
+    }
+
+    @Test
+    void splitsTheUnsegmentedFilesOfOlderVersions() throws Exception {
+        new CommentJsonFileHandler(dir.toString(), "json", NewsMetrics.detached())
+                .writeComments(List.of(comment(1, "comment 1"), comment(2, "comment 2")));
+        CommentJournal journal = new CommentJournal(dir, "always", 0, 1, NewsMetrics.detached());
+        journal.appendAll(created(3)).get();
+        journal.close();
+
+        assertEquals(texts(1, 2, 3), texts(open(2)));
+        assertEquals(2, manifestSegmentCount());
+        assertFalse(Files.exists(dir.resolve("comments.journal")));
+        assertFalse(new CommentJsonFileHandler(dir.toString(), "json", NewsMetrics.detached()).hasSnapshot());
+    }
+
+    @Test
+    void compactsOnlyTheSegmentsWithJournalRecords() throws IOException {
+        JsonFileStorage storage = open(2);
+        long article = 1;
+        while (Math.floorMod(Long.hashCode(article), 2) != 0) {
+            article++;
+        }
+        storage.writeComments(created(article)).await();
+
+        CommentStore.Compaction compaction = storage.startCompaction();
+        compaction.complete(List.of(comment(article, "comment " + article)));
+
+        assertFalse(Files.exists(segmentDir(2, 0).resolve("comments.journal")));
+        assertTrue(new CommentJsonFileHandler(segmentDir(2, 0).toString(), "json", NewsMetrics.detached()).hasSnapshot());
+        assertNull(storage.startCompaction());
+        storage.close();
+        assertEquals(texts(article), texts(open(2)));
+    }
+
+    private JsonFileStorage open(int segments) throws IOException {
+        NewsMetrics metrics = NewsMetrics.detached();
+        CommentJsonFileHandler unsegmented = new CommentJsonFileHandler(dir.toString(), "json", metrics);
+        if (!Files.exists(dir.resolve("comments-manifest.json")) && !unsegmented.hasSnapshot()) {
+            // Start empty rather than from the bundled seed
+            unsegmented.writeComments(List.of());
+        }
+        JsonFileStorage storage = new JsonFileStorage(dir.toString(), segments, "json", "always", 0, 1, metrics,
+                unsegmented, new UserJsonFileHandler(dir.toString()), new ArticleJsonFileHandler(dir.toString()));
+        storage.open();
+        opened.add(storage);
+        return storage;
+    }
+
+    private Path segmentDir(int count, int segment) {
+        return dir.resolve("comment-segments-" + count).resolve(String.format("segment-%03d", segment));
+    }
+
+    private int manifestSegmentCount() throws IOException {
+        String manifest = Files.readString(dir.resolve("comments-manifest.json"), StandardCharsets.UTF_8);
+        return Integer.parseInt(manifest.replaceAll("\\D", ""));
+    }
+
+    /**
+     * The comments of the storage after its journal changes, by id.
+     */
+    private static Map<Long, String> texts(JsonFileStorage storage) throws IOException {
+        Map<Long, String> texts = new TreeMap<>();
+        storage.readComments().forEach(comment -> texts.put(comment.getCommentId(), comment.getText()));
+        for (CommentJournalRecord change : storage.readCommentChanges()) {
+            if (change.getOperation() == CommentJournalRecord.Operation.DELETE) {
+                texts.remove(change.getCommentId());
+            } else {
+                texts.put(change.getCommentId(), change.getComment().getText());
+            }
+        }
+        return texts;
+    }
+
+    private static Map<Long, String> texts(long... commentIds) {
+        Map<Long, String> texts = new TreeMap<>();
+        for (long commentId : commentIds) {
+            texts.put(commentId, "comment " + commentId);
+        }
+        return texts;
+    }
+
+    /**
+     * One created record per id, each comment on the article of the same number.
+     */
+    private static List<CommentJournalRecord> created(long... commentIds) {
+        List<CommentJournalRecord> records = new ArrayList<>();
+        for (long commentId : commentIds) {
+            records.add(CommentJournalRecord.created(comment(commentId, "comment " + commentId)));
+        }
+        return records;
+    }
+
+    private static Comment comment(long commentId, String text) {
+        Comment comment = new Comment();
+        comment.setCommentId(commentId);
+        comment.setNewsArticleId(commentId);
+        comment.setText(text);
+        return comment;
+    }
+}
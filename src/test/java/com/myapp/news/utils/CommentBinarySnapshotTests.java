@@ -0,0 +1,140 @@
+package com.myapp.news.utils;
+
+import com.myapp.news.dtos.Comment;
+import com.myapp.news.dtos.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommentBinarySnapshotTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsEveryField() throws IOException {
+        List<Comment> comments = List.of(
+                comment(1, 10, 1000L, null, 7L, "First", Map.of("like", 3L, "sad", 1L)),
+                comment(2, 10, 2000L, 1L, 8L, "A reply", null),
+                comment(3, 11, null, null, null, null, Map.of()));
+        Path file = dir.resolve("comments.bin");
+        CommentJsonFileHandler.replaceFile(file, out -> CommentBinarySnapshot.write(comments, out));
+
+        List<Comment> read = CommentBinarySnapshot.read(file);
+
+        assertEquals(comments.size(), read.size());
+        for (int i = 0; i < comments.size(); i++) {
+            assertSameComment(comments.get(i), read.get(i));
+        }
+    }
+
+    @Test
+    void readerDecodesSingleCommentsByIndex() throws IOException {
+        Path file = dir.resolve("comments.bin");
+        CommentJsonFileHandler.replaceFile(file, out -> CommentBinarySnapshot.write(List.of(
+                comment(5, 20, 1000L, null, 1L, "five", null),
+                comment(6, 21, 2000L, 5L, 2L, "six", Map.of("love", 4L))), out));
+
+        CommentBinarySnapshot.Reader reader = CommentBinarySnapshot.open(file);
+
+        assertEquals(2, reader.size());
+        assertEquals(6, reader.commentId(1));
+        assertEquals(21, reader.newsArticleId(1));
+        assertEquals("six", reader.get(1).getText());
+        assertEquals(4L, reader.get(1).getReactions().get("love"));
+    }
+
+    @Test
+    void keepsOnlyTheIdOfAnEmbeddedAuthor() throws IOException {
+        Comment comment = comment(1, 10, 1000L, null, null, "text", null);
+        User author = new User();
+        author.setUserId(42);
+        author.setUserName("someone");
+        comment.setAuthor(author);
+        Path file = dir.resolve("comments.bin");
+        CommentJsonFileHandler.replaceFile(file, out -> CommentBinarySnapshot.write(List.of(comment), out));
+
+        Comment read = CommentBinarySnapshot.read(file).get(0);
+
+        assertEquals(42L, read.getAuthorId());
+        assertNull(read.getAuthor());
+    }
+
+    @Test
+    void rejectsFilesThatAreNotSnapshots() throws IOException {
+        Path file = dir.resolve("comments.bin");
+        Files.write(file, "[{\"commentId\":1}]".getBytes());
+
+        assertThrows(IOException.class, () -> CommentBinarySnapshot.open(file));
+    }
+
+    @Test
+    void rejectsTruncatedSnapshots() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CommentBinarySnapshot.write(List.of(comment(1, 10, 1000L, null, 1L, "some text", null)), out);
+        byte[] content = out.toByteArray();
+        Path file = dir.resolve("comments.bin");
+        Files.write(file, Arrays.copyOf(content, content.length - 4));
+
+        assertThrows(IOException.class, () -> CommentBinarySnapshot.open(file));
+    }
+
+    @Test
+    void convertsBetweenJsonAndBinary() throws IOException {
+        List<Comment> comments = List.of(
+                comment(1, 10, 1000L, null, 7L, "First", Map.of("like", 3L)),
+                comment(2, 10, 2000L, 1L, 8L, "Second", Map.of("love", 2L, "angry", 5L)));
+        Path binary = dir.resolve("comments.bin");
+        Path json = dir.resolve("comments.json");
+        Path binaryAgain = dir.resolve("comments-again.bin");
+        CommentJsonFileHandler.replaceFile(binary, out -> CommentBinarySnapshot.write(comments, out));
+
+        CommentJsonFileHandler.convertBinaryToJson(binary, json);
+        CommentJsonFileHandler.convertJsonToBinary(json, binaryAgain);
+
+        assertTrue(Files.readString(json).contains("\"authorId\""));
+        List<Comment> read = CommentBinarySnapshot.read(binaryAgain);
+        for (int i = 0; i < comments.size(); i++) {
+            assertSameComment(comments.get(i), read.get(i));
+        }
+    }
+
+    private static void assertSameComment(Comment expected, Comment actual) {
+        assertEquals(expected.getCommentId(), actual.getCommentId());
+        assertEquals(expected.getNewsArticleId(), actual.getNewsArticleId());
+        assertEquals(expected.getCommentedOn(), actual.getCommentedOn());
+        assertEquals(expected.getParentCommentId(), actual.getParentCommentId());
+        assertEquals(expected.getAuthorId(), actual.getAuthorId());
+        assertEquals(expected.getText(), actual.getText());
+        Map<String, Long> expectedReactions = expected.getReactions() == null ? Map.of() : expected.getReactions();
+        assertEquals(expectedReactions, actual.getReactions() == null ? Map.of() : actual.getReactions());
+    }
+
+    private static Comment comment(long commentId, long articleId, Long commentedOn, Long parentId, Long authorId,
+                                   String text, Map<String, Long> reactions) {
+        Comment comment = new Comment();
+        comment.setCommentId(commentId);
+        comment.setNewsArticleId(articleId);
+        comment.setCommentedOn(commentedOn == null ? null : new Date(commentedOn));
+        comment.setParentCommentId(parentId);
+        comment.setAuthorId(authorId);
+        comment.setText(text);
+        comment.setReactions(reactions == null ? null : new LinkedHashMap<>(reactions));
+        return comment;
+    }
+}
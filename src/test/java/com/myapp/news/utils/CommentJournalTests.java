@@ -0,0 +1,252 @@
+package com.myapp.news.utils;
+
+import com.myapp.news.dtos.Comment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommentJournalTests {
+
+    @TempDir
+    Path dir;
+
+    private final List<CommentJournal> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeJournals() throws IOException {
+        for (CommentJournal journal : opened) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void replaysRecordsInTheOrderTheyWereAppended() throws Exception {
+        CommentJournal journal = open("always");
+        journal.appendAll(List.of(created(1), created(2))).get();
+        journal.appendAll(List.of(CommentJournalRecord.updated(comment(1, "edited")))).get();
+        journal.appendAll(List.of(CommentJournalRecord.deleted(2, 10))).get();
+        journal.close();
+
+        List<CommentJournalRecord> records = open("always").replay();
+
+        assertEquals(List.of(1L, 2L, 1L, 2L), commentIds(records));
+        assertEquals(CommentJournalRecord.Operation.UPDATE, records.get(2).getOperation());
+        assertEquals("edited", records.get(2).getComment().getText());
+        assertEquals(CommentJournalRecord.Operation.DELETE, records.get(3).getOperation());
+        assertEquals(10L, records.get(3).articleId());
+    }
+
+    @Test
+    void keepsTheAuthorIdOfAComment() throws Exception {
+        Comment comment = comment(1, "text");
+        comment.setAuthorId(42L);
+        CommentJournal journal = open("always");
+        journal.appendAll(List.of(CommentJournalRecord.created(comment))).get();
+        journal.close();
+
+        List<CommentJournalRecord> records = open("always").replay();
+
+        assertEquals(42L, records.get(0).getComment().getAuthorId());
+    }
+
+    @Test
+    void truncatesARecordTornByACrash() throws Exception {
+        CommentJournal journal = open("always");
+        journal.appendAll(List.of(created(1), created(2))).get();
+        journal.close();
+        Path file = dir.resolve("comments.journal");
+        long complete = Files.size(file);
+        Files.write(file, "{\"operation\":\"CREATE\",\"commentId\":3,\"comm".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        journal = open("always");
+        assertEquals(List.of(1L, 2L), commentIds(journal.replay()));
+        assertEquals(complete, Files.size(file));
+
+        // Later records are appended after the last complete one, not after the torn bytes
+        journal.appendAll(List.of(created(3))).get();
+        journal.close();
+        assertEquals(List.of(1L, 2L, 3L), commentIds(open("always").replay()));
+    }
+
+    @Test
+    void replaysTheJournalOfAnUnfinishedCompactionFirst() throws Exception {
+        CommentJournal journal = open("always");
+        journal.appendAll(List.of(created(1), created(2))).get();
+        journal.rotate();
+        journal.appendAll(List.of(created(3))).get();
+        // Stopped before the snapshot was written, so the rotated journal was never discarded
+        journal.close();
+
+        journal = open("always");
+
+        assertEquals(List.of(1L, 2L, 3L), commentIds(journal.replay()));
+        assertTrue(journal.hasPendingRecords());
+    }
+
+    @Test
+    void rotatingAgainKeepsTheRecordsOfAnUnfinishedCompaction() throws Exception {
+        CommentJournal journal = open("always");
+        journal.appendAll(List.of(created(1))).get();
+        journal.rotate();
+        journal.appendAll(List.of(created(2))).get();
+        journal.close();
+
+        journal = open("always");
+        journal.replay();
+        journal.rotate();
+        journal.appendAll(List.of(created(3))).get();
+        journal.close();
+        assertEquals(List.of(1L, 2L, 3L), commentIds(open("always").replay()));
+
+        journal = open("always");
+        journal.replay();
+        journal.discardRotated();
+        journal.close();
+        assertEquals(List.of(3L), commentIds(open("always").replay()));
+    }
+
+    @Test
+    void hasNothingPendingOnceACompactionIsDone() throws Exception {
+        CommentJournal journal = open("always");
+        journal.replay();
+        assertFalse(journal.hasPendingRecords());
+
+        journal.appendAll(List.of(created(1))).get();
+        assertTrue(journal.hasPendingRecords());
+        journal.rotate();
+        journal.discardRotated();
+
+        assertFalse(journal.hasPendingRecords());
+    }
+
+    @Test
+    void groupCommitKeepsTheOrderOfAppends() throws Exception {
+        CommentJournal journal = open("batched");
+        List<CompletableFuture<Void>> flushes = new ArrayList<>();
+        for (long id = 1; id <= 200; id++) {
+            flushes.add(journal.appendAll(List.of(created(id))));
+        }
+        for (CompletableFuture<Void> flushed : flushes) {
+            flushed.get();
+        }
+        journal.close();
+
+        List<Long> ids = commentIds(open("always").replay());
+
+        assertEquals(200, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i + 1L, ids.get(i));
+        }
+    }
+
+    @Test
+    void groupCommitKeepsTheOrderOfEachWriter() throws Exception {
+        CommentJournal journal = open("batched");
+        List<Thread> writers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int writer = 0; writer < 4; writer++) {
+            long base = writer * 1000L;
+            writers.add(new Thread(() -> {
+                try {
+                    List<CompletableFuture<Void>> flushes = new ArrayList<>();
+                    for (long id = base + 1; id <= base + 100; id++) {
+                        flushes.add(journal.appendAll(List.of(created(id))));
+                    }
+                    for (CompletableFuture<Void> flushed : flushes) {
+                        flushed.get();
+                    }
+                } catch (Exception e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(List.of(), failures);
+        journal.close();
+
+        List<Long> ids = commentIds(open("always").replay());
+
+        assertEquals(400, ids.size());
+        long[] last = new long[4];
+        for (long id : ids) {
+            int writer = (int) (id / 1000);
+            assertTrue(id > last[writer]);
+            last[writer] = id;
+        }
+    }
+
+    @Test
+    void aFailedFlushFailsItsAppendsAndEveryLaterOne() throws Exception {
+        // A file where the journal's directory should be, so the first flush cannot open the journal
+        Path notADirectory = Files.createFile(dir.resolve("segment"));
+        CommentJournal journal = new CommentJournal(notADirectory, "batched", 50, 1000, NewsMetrics.detached());
+        opened.add(journal);
+        assertNull(journal.failure());
+
+        CompletableFuture<Void> first = journal.appendAll(List.of(created(1)));
+        CompletableFuture<Void> second = journal.appendAll(List.of(created(2)));
+
+        ExecutionException firstFailure = assertThrows(ExecutionException.class, first::get);
+        assertInstanceOf(IOException.class, firstFailure.getCause());
+        ExecutionException secondFailure = assertThrows(ExecutionException.class, second::get);
+        assertInstanceOf(IOException.class, secondFailure.getCause());
+        assertNotNull(journal.failure());
+        assertThrows(IOException.class, () -> journal.appendAll(List.of(created(3))));
+    }
+
+    @Test
+    void rejectsAppendsOnceClosed() throws Exception {
+        CommentJournal journal = open("always");
+        journal.close();
+
+        assertThrows(IOException.class, () -> journal.appendAll(List.of(created(1))));
+    }
+
+    private CommentJournal open(String fsyncPolicy) {
+        CommentJournal journal = new CommentJournal(dir, fsyncPolicy, 5, 1000, NewsMetrics.detached());
+        opened.add(journal);
+        return journal;
+    }
+
+    private static CommentJournalRecord created(long commentId) {
+        return CommentJournalRecord.created(comment(commentId, "comment " + commentId));
+    }
+
+    private static Comment comment(long commentId, String text) {
+        Comment comment = new Comment();
+        comment.setCommentId(commentId);
+        comment.setNewsArticleId(10);
+        comment.setText(text);
+        return comment;
+    }
+
+    private static List<Long> commentIds(List<CommentJournalRecord> records) {
+        List<Long> ids = new ArrayList<>(records.size());
+        records.forEach(record -> ids.add(record.getCommentId()));
+        return ids;
+    }
+}
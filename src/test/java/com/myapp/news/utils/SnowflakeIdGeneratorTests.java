@@ -0,0 +1,115 @@
+package com.myapp.news.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnowflakeIdGeneratorTests {
+
+    private static final long EPOCH_MILLIS = 1704067200000L;
+    private static final int NODE = 5;
+    private static final long MAX_SKEW = 1000;
+
+    private final AtomicLong clock = new AtomicLong(EPOCH_MILLIS + 1_000_000);
+    private final SnowflakeIdGenerator generator = new SnowflakeIdGenerator(NODE, MAX_SKEW, clock::get);
+
+    @Test
+    void idsCarryTimeNodeAndSequence() {
+        long first = generator.nextId();
+        long second = generator.nextId();
+
+        assertEquals(1_000_000, millisOf(first));
+        assertEquals(NODE, nodeOf(first));
+        assertEquals(0, sequenceOf(first));
+        assertEquals(1, sequenceOf(second));
+    }
+
+    @Test
+    void sequenceRollsOverIntoTheNextMillisecond() {
+        Set<Long> ids = new HashSet<>();
+        long previous = 0;
+        for (int i = 0; i < 4097; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            ids.add(id);
+            previous = id;
+        }
+
+        assertEquals(4097, ids.size());
+        assertEquals(1_000_001, millisOf(previous));
+        assertEquals(0, sequenceOf(previous));
+    }
+
+    @Test
+    void keepsCountingWhenTheClockStepsBackWithinTheSkew() {
+        long before = generator.nextId();
+        clock.addAndGet(-MAX_SKEW);
+
+        long after = generator.nextId();
+
+        assertTrue(after > before);
+        assertEquals(millisOf(before), millisOf(after));
+    }
+
+    @Test
+    void refusesIdsWhenTheClockIsTooFarBehind() {
+        generator.nextId();
+        clock.addAndGet(-MAX_SKEW - 1);
+
+        assertThrows(IllegalStateException.class, generator::nextId);
+
+        clock.addAndGet(MAX_SKEW + 1);
+        generator.nextId();
+    }
+
+    @Test
+    void observedIdsAreNeverAllocatedAgain() {
+        long persisted = idOf(1_000_500, NODE, 7);
+        generator.observe(persisted);
+
+        assertTrue(generator.nextId() > persisted);
+    }
+
+    @Test
+    void idsOfOtherNodesAndLegacyIdsAreNotObserved() {
+        generator.observe(idOf(1_000_500, NODE + 1, 7));
+        generator.observe(42);
+
+        assertEquals(1_000_000, millisOf(generator.nextId()));
+    }
+
+    @Test
+    void idsTooFarInTheFutureAreIgnored() {
+        generator.observe(idOf(1_000_000 + MAX_SKEW + 1, NODE, 0));
+
+        assertEquals(1_000_000, millisOf(generator.nextId()));
+    }
+
+    @Test
+    void rejectsNodeIdsOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(-1, MAX_SKEW));
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID + 1, MAX_SKEW));
+    }
+
+    private static long idOf(long millis, long node, long sequence) {
+        return (millis << 22) | (node << 12) | sequence;
+    }
+
+    private static long millisOf(long id) {
+        return id >>> 22;
+    }
+
+    private static long nodeOf(long id) {
+        return (id >>> 12) & 1023;
+    }
+
+    private static long sequenceOf(long id) {
+        return id & 4095;
+    }
+}